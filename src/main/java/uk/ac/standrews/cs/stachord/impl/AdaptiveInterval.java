@@ -0,0 +1,102 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+/**
+ * An interval between repetitions of a periodic task that doubles, up to a ceiling, each time the task finds nothing to do,
+ * and returns to a floor as soon as there is activity.
+ */
+class AdaptiveInterval {
+
+    private static final int BACK_OFF_FACTOR = 2;
+
+    private long floor; // The shortest interval in ns.
+    private long ceiling; // The longest interval in ns.
+    private long current; // The current interval in ns.
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Creates an interval that starts at the floor.
+     *
+     * @param floor the shortest interval in ns
+     * @param ceiling the longest interval in ns
+     */
+    AdaptiveInterval(final long floor, final long ceiling) {
+
+        setBounds(floor, ceiling);
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the current interval.
+     * @return the current interval in ns
+     */
+    synchronized long getInterval() {
+
+        return current;
+    }
+
+    /**
+     * Returns the shortest interval.
+     * @return the shortest interval in ns
+     */
+    synchronized long getFloor() {
+
+        return floor;
+    }
+
+    /**
+     * Lengthens the interval, after the task has found nothing to do.
+     */
+    synchronized void backOff() {
+
+        current = current > ceiling / BACK_OFF_FACTOR ? ceiling : current * BACK_OFF_FACTOR;
+    }
+
+    /**
+     * Returns the interval to the floor, after activity has been seen.
+     */
+    synchronized void reset() {
+
+        current = floor;
+    }
+
+    /**
+     * Sets the range of the interval, and returns the interval to the floor.
+     *
+     * @param floor the shortest interval in ns, greater than zero
+     * @param ceiling the longest interval in ns, at least the floor
+     */
+    synchronized void setBounds(final long floor, final long ceiling) {
+
+        if (floor <= 0 || ceiling < floor) { throw new IllegalArgumentException("invalid interval range: " + floor + "ns to " + ceiling + "ns"); }
+
+        this.floor = floor;
+        this.ceiling = ceiling;
+        current = floor;
+    }
+}
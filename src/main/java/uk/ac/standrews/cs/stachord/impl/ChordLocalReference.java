@@ -55,6 +55,11 @@ public class ChordLocalReference implements IChordRemoteReference {
         return node;
     }
 
+    IChordRemoteReference getRemoteReference() {
+
+        return remote_reference;
+    }
+
     @Override
     public void ping() throws RPCException {
 
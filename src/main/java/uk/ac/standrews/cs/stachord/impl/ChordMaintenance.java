@@ -0,0 +1,619 @@
+package uk.ac.standrews.cs.stachord.impl;
+
+import uk.ac.standrews.cs.nds.p2p.interfaces.IKey;
+import uk.ac.standrews.cs.nds.p2p.keys.RingArithmetic;
+import uk.ac.standrews.cs.nds.registry.AlreadyBoundException;
+import uk.ac.standrews.cs.nds.registry.RegistryUnavailableException;
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+import uk.ac.standrews.cs.stachord.interfaces.IChordNode;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemote;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+import uk.ac.standrews.cs.utilities.archive.Diagnostic;
+import uk.ac.standrews.cs.utilities.archive.NetworkUtil;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Performs periodic maintenance of a node's ring state, either on a dedicated thread or as a sequence of rounds on an executor shared with other nodes.
+ * Predecessor checking, stabilization and finger fixing each have their own adaptive interval, which lengthens while the task finds no changes, and
+ * returns to its floor whenever a change, a failure or a notification from a new node is seen. Intervals are randomly varied, so the rounds of many
+ * nodes interleave rather than running in step. On a shared executor, each round is scheduled once the previous one has finished, so a node whose
+ * round is slow occupies at most one worker.
+ */
+final class ChordMaintenance {
+
+    private static final long DEFAULT_FLOOR = TimeUnit.SECONDS.toNanos(1); // The default shortest interval between repetitions of a task.
+    private static final long PREDECESSOR_MAINTENANCE_CEILING = TimeUnit.SECONDS.toNanos(15);
+    private static final long STABILIZATION_CEILING = TimeUnit.SECONDS.toNanos(30);
+    private static final long FINGER_TABLE_MAINTENANCE_CEILING = TimeUnit.SECONDS.toNanos(60);
+    private static final double MAINTENANCE_INTERVAL_JITTER = 0.2; // The proportion of an interval by which it is randomly varied.
+
+    private final ChordNodeImpl chord_node;
+    private final ScheduledExecutorService shared_executor; // The executor on which rounds are run, or null if they are run on a dedicated thread.
+    private final MaintenanceTask[] tasks;
+    private final AtomicLong activity_count = new AtomicLong(); // Incremented whenever activity is seen, so that a task can tell whether its run saw any.
+
+    private final AdaptiveInterval predecessor_maintenance_interval = new AdaptiveInterval(DEFAULT_FLOOR, PREDECESSOR_MAINTENANCE_CEILING);
+    private final AdaptiveInterval stabilization_interval = new AdaptiveInterval(DEFAULT_FLOOR, STABILIZATION_CEILING);
+    private final AdaptiveInterval finger_table_maintenance_interval = new AdaptiveInterval(DEFAULT_FLOOR, FINGER_TABLE_MAINTENANCE_CEILING);
+
+    private volatile boolean stopped = false;
+    private Thread maintenance_thread; // The dedicated thread, if used.
+    private ScheduledFuture<?> next_round; // The next round on the shared executor, if used.
+    private long next_round_time; // The time at which the next round on the shared executor is scheduled.
+
+    ChordMaintenance(final ChordNodeImpl chord_node, final ScheduledExecutorService shared_executor) {
+
+        this.chord_node = chord_node;
+        this.shared_executor = shared_executor;
+
+        tasks = new MaintenanceTask[]{new MaintenanceTask(predecessor_maintenance_interval) {
+
+            @Override
+            void perform() {
+
+                if (chord_node.predecessorMaintenanceEnabled()) {
+                    checkPredecessor();
+                }
+            }
+        }, new MaintenanceTask(stabilization_interval) {
+
+            @Override
+            void perform() {
+
+                if (chord_node.ownAddressMaintenanceEnabled()) {
+                    checkOwnAddress();
+                }
+
+                if (chord_node.stabilizationEnabled()) {
+                    stabilize();
+                }
+            }
+        }, new MaintenanceTask(finger_table_maintenance_interval) {
+
+            @Override
+            void perform() {
+
+                if (chord_node.fingerTableMaintenanceEnabled()) {
+                    fixNextFinger();
+                }
+            }
+        }};
+    }
+
+    synchronized void start() {
+
+        final long now = System.nanoTime();
+
+        if (shared_executor == null) {
+
+            for (final MaintenanceTask task : tasks) {
+                task.due_time = now;
+            }
+
+            maintenance_thread = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    try {
+                        while (!stopped) {
+                            performDueTasks();
+                            waitForNextDueTask();
+                        }
+                    }
+                    catch (final InterruptedException e) {
+                        // Shut down.
+                    }
+
+                    Diagnostic.trace( "maintenance thread stopping on node " + chord_node.getKey());
+                }
+            }, "chord maintenance " + chord_node.getKey());
+
+            maintenance_thread.start();
+        }
+        else {
+            // Start at a random point in the shortest interval, so that nodes created together don't perform maintenance together.
+            for (final MaintenanceTask task : tasks) {
+                task.due_time = now + (long) (ThreadLocalRandom.current().nextDouble() * task.interval.getFloor());
+            }
+            scheduleNextRound();
+        }
+    }
+
+    synchronized void shutdown() {
+
+        stopped = true;
+
+        if (maintenance_thread != null) {
+            maintenance_thread.interrupt();
+        }
+        if (next_round != null) {
+            next_round.cancel(false);
+        }
+    }
+
+    /**
+     * Records that a change, a failure or a notification from a new node has been seen, so that every task is performed again after its shortest interval.
+     */
+    synchronized void activityDetected() {
+
+        activity_count.incrementAndGet();
+
+        final long now = System.nanoTime();
+        for (final MaintenanceTask task : tasks) {
+            task.interval.reset();
+            task.due_time = Math.min(task.due_time, now + task.interval.getFloor());
+        }
+
+        if (shared_executor == null) {
+            notifyAll();
+        }
+        else if (next_round != null && nextDueTime() - next_round_time < 0 && next_round.cancel(false)) {
+
+            // The next round was scheduled for later, and hasn't started; if it had, it would pick up the new due times when it finished.
+            scheduleNextRound();
+        }
+    }
+
+    AdaptiveInterval getPredecessorMaintenanceInterval() {
+
+        return predecessor_maintenance_interval;
+    }
+
+    AdaptiveInterval getStabilizationInterval() {
+
+        return stabilization_interval;
+    }
+
+    AdaptiveInterval getFingerTableMaintenanceInterval() {
+
+        return finger_table_maintenance_interval;
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Performs the tasks that are due, and sets when each should next be performed. A task's interval is lengthened unless activity was seen while it ran.
+     */
+    private void performDueTasks() {
+
+        for (final MaintenanceTask task : tasks) {
+
+            synchronized (this) {
+                if (System.nanoTime() - task.due_time < 0) {
+                    continue;
+                }
+            }
+
+            final long activity_before = activity_count.get();
+            task.perform();
+            if (activity_count.get() == activity_before) {
+                task.interval.backOff();
+            }
+
+            synchronized (this) {
+                task.due_time = System.nanoTime() + jittered(task.interval.getInterval());
+            }
+        }
+    }
+
+    private synchronized void waitForNextDueTask() throws InterruptedException {
+
+        long wait_time = nextDueTime() - System.nanoTime();
+
+        while (!stopped && wait_time > 0) {
+            TimeUnit.NANOSECONDS.timedWait(this, wait_time);
+            wait_time = nextDueTime() - System.nanoTime();
+        }
+    }
+
+    private synchronized void scheduleNextRound() {
+
+        if (!stopped) {
+
+            next_round_time = nextDueTime();
+            try {
+                next_round = shared_executor.schedule(new Runnable() {
+
+                    @Override
+                    public void run() {
+
+                        try {
+                            performDueTasks();
+                        }
+                        finally {
+                            scheduleNextRound();
+                        }
+                    }
+                }, next_round_time - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+            catch (final RejectedExecutionException e) {
+
+                // The shared executor has been shut down while this node was still running.
+                Diagnostic.trace("shared maintenance executor shut down; maintenance stopping on node " + chord_node.getKey());
+                next_round = null;
+            }
+        }
+    }
+
+    private synchronized long nextDueTime() {
+
+        long next_due_time = tasks[0].due_time;
+        for (final MaintenanceTask task : tasks) {
+            if (task.due_time - next_due_time < 0) {
+                next_due_time = task.due_time;
+            }
+        }
+        return next_due_time;
+    }
+
+    private static long jittered(final long interval) {
+
+        final double variation = (ThreadLocalRandom.current().nextDouble() - 0.5) * MAINTENANCE_INTERVAL_JITTER;
+        return (long) ((1 + variation) * interval);
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+      * Checks whether the local address has changed, for example due to switching NIC or moving behind a NAT.
+      */
+    private void checkOwnAddress() {
+
+        if (checkNodeAddressChanged()) {
+            try {
+                handleAddressChange();
+            }
+            catch (final Exception e) {
+                Diagnostic.trace( "Error handling address change: " + e.getMessage());
+            }
+
+            chord_node.setChanged();
+            chord_node.notifyObservers(IChordNode.OWN_ADDRESS_CHANGE_EVENT);
+        }
+    }
+
+    /**
+     * Checks whether the address of this node has changed since the last check.
+     */
+    private boolean checkNodeAddressChanged() {
+
+        try {
+            final InetAddress current_address = NetworkUtil.getLocalIPv4Address();
+
+            final InetSocketAddress previous_socket_address = chord_node.getAddress();
+            final boolean address_has_changed = !current_address.equals(previous_socket_address.getAddress());
+
+            if (address_has_changed) {
+
+                Diagnostic.trace( "Address change: old : " + previous_socket_address);
+                final InetSocketAddress new_socket_address = new InetSocketAddress(current_address, previous_socket_address.getPort());
+                chord_node.setAddress(new_socket_address);
+                Diagnostic.trace("New: " + new_socket_address);
+            }
+
+            return address_has_changed;
+        }
+        catch (final UnknownHostException e) {
+            Diagnostic.trace( "couldn't find local address");
+            return true;
+        }
+    }
+
+    private void handleAddressChange() throws IOException, RPCException, AlreadyBoundException, RegistryUnavailableException, InterruptedException, TimeoutException {
+
+        chord_node.unexposeNode();
+        chord_node.exposeNode();
+
+        chord_node.initialiseSelfReference();
+        initialiseSelfSuccessorReference();
+        chord_node.recordMembershipChange(MembershipDelta.Kind.ADDRESS_CHANGED, chord_node.getSelfReference());
+
+        // Try to rejoin the ring.
+        try {
+            // First preference: rejoin the ring by binding to predecessor if we can.
+            final IChordRemoteReference predecessor = chord_node.getPredecessor();
+            if (predecessor == null) {
+                try {
+                    joinUsingFinger();
+                }
+                catch (final NoReachableNodeException e1) {
+
+                    // We don't have a predecessor and can't connect via the fingers
+                    // In this case - will never rejoin without some manual intervention (?)
+                    Diagnostic.trace("Cannot rejoin ring using predecessor (null) or finger");
+                }
+            }
+            else {
+                // Normal case
+                chord_node.join(predecessor);
+            }
+        }
+        catch (final Exception e) {
+
+            // Second preference: rejoin the ring by using a finger.
+
+            try {
+                joinUsingFinger();
+            }
+            catch (final NoReachableNodeException e1) {
+
+                // Not much else we can do here.
+                // We will try and re-join if we get another address change event.
+                Diagnostic.trace("Cannot rejoin ring using predecessor or finger");
+            }
+        }
+    }
+
+    private void initialiseSelfSuccessorReference() throws RPCException {
+
+        if (chord_node.successorIsSelf()) {
+            chord_node.setSuccessor(chord_node.getSelfReference());
+        }
+    }
+
+    /**
+     * Tries to communicate with this node's predecessor.
+     */
+    private void checkPredecessor() {
+
+        try {
+            pingPredecessor();
+        }
+        catch (final Exception e) {
+
+            activityDetected();
+            chord_node.handlePredecessorError();
+        }
+    }
+
+    /**
+     * Attempts to communicate with this node's predecessor.
+     * @throws RPCException if the attempted communication fails
+     */
+    private void pingPredecessor() throws RPCException {
+
+        final IChordRemoteReference predecessor = chord_node.getPredecessor();
+        if (predecessor != null) {
+            try {
+                predecessor.ping();
+                chord_node.getLivenessCache().record(predecessor, true);
+            }
+            catch (final RPCException e) {
+                chord_node.getLivenessCache().record(predecessor, false);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Executes the stabilization protocol.
+     */
+    private void stabilize() {
+
+        try {
+            final IChordRemoteReference successor = chord_node.getSuccessor();
+
+            // Successors that predate the combined call are stabilized with the baseline calls.
+            if (chord_node.protocolVersionOf(successor) > IChordRemote.BASELINE_PROTOCOL_VERSION) {
+                applyStabilizeResult(successor, successor.getRemote().stabilize(chord_node.getSelfReference(), chord_node.getMembershipDeltas()));
+            }
+            else {
+                stabilizeWithSeparateCalls();
+            }
+        }
+        catch (final Exception e) {
+
+            try {
+                // Error contacting successor.
+                handleSuccessorError();
+            }
+            catch (final RPCException e1) {
+                Diagnostic.trace( "error in stabilize: "+ e1);
+            }
+        }
+    }
+
+    /**
+     * Completes the stabilization protocol using the result of a single call to the successor, which has been notified and has returned its predecessor
+     * and successor list. If the successor's predecessor turns out to be a better successor for this node, the new successor is notified, and its
+     * successor list is fetched in the next round.
+     */
+    private void applyStabilizeResult(final IChordRemoteReference successor, final StabilizeResult result) throws RPCException {
+
+        chord_node.applyMembershipDeltas(result.getMembershipDeltas());
+        checkForBetterSuccessor(result.getPredecessor());
+
+        if (chord_node.getSuccessor() != successor) {
+            notifySuccessor();
+        }
+        else if (!successor.getCachedKey().equals(chord_node.getKey())) {
+            updateSuccessorList(result.getSuccessorList());
+        }
+    }
+
+    /**
+     * Executes the stabilization protocol using separate calls to the successor, for successors that don't support the combined call.
+     */
+    private void stabilizeWithSeparateCalls() throws RPCException {
+
+        // Find predecessor of this node's successor.
+        final IChordRemoteReference predecessor_of_successor = getPredecessorOfSuccessor();
+
+        // Check whether that is a better successor for this node than its current successor.
+        // This may update this node's successor pointer.
+        checkForBetterSuccessor(predecessor_of_successor);
+
+        // Notify this node's successor (which may have just changed) that this node may be its predecessor.
+        notifySuccessor();
+
+        // Update this node's successor list from its successor's.
+        refreshSuccessorList();
+    }
+
+    /**
+     * Checks whether a given potential successor would be a better successor for this node than the current successor.
+     * @param potential_successor the potential successor
+     * @throws RPCException
+     */
+    private void checkForBetterSuccessor(final IChordRemoteReference potential_successor) throws RPCException {
+
+        if (potential_successor != null) {
+
+            final IChordRemoteReference successor = chord_node.getSuccessor();
+            final IKey key_of_potential_successor = potential_successor.getCachedKey();
+
+            // Check whether the potential successor's key lies in this node's current successor's key range, and the potential successor is not the current successor.
+            if (RingArithmetic.inSegment(chord_node.getKey(), key_of_potential_successor, successor.getCachedKey()) && !key_of_potential_successor.equals(successor.getCachedKey())) {
+
+                // The potential successor is more suitable as this node's successor.
+                chord_node.setSuccessor(potential_successor);
+            }
+        }
+    }
+
+    private void notifySuccessor() throws RPCException {
+
+        assert chord_node.getSelfReference().getCachedAddress().equals(chord_node.getAddress());
+
+        final IChordRemoteReference successor = chord_node.getSuccessor();
+        final IChordRemoteReference selfReference = chord_node.getSelfReference();
+
+        //        System.out.println("node at " + selfReference.getCachedAddress() + " notifying self to " + successor.getCachedAddress());
+
+        successor.getRemote().notify(selfReference);
+    }
+
+    private void refreshSuccessorList() throws RPCException {
+
+        final IChordRemoteReference successor = chord_node.getSuccessor();
+
+        if (!successor.getCachedKey().equals(chord_node.getKey())) {
+            try {
+                updateSuccessorList(successor.getRemote().getSuccessorList());
+            }
+            catch (final Exception e) {
+                Diagnostic.trace( chord_node+ ": error calling successor "+ chord_node.getSuccessor()+ ": "+ e);
+                handleSuccessorError();
+            }
+        }
+    }
+
+    private void updateSuccessorList(final List<IChordRemoteReference> successor_list_of_successor) throws RPCException {
+
+        if (chord_node.getRealSuccessorList().refreshList(successor_list_of_successor)) {
+            chord_node.setChanged();
+            chord_node.notifyObservers(IChordNode.SUCCESSOR_LIST_CHANGE_EVENT);
+        }
+    }
+
+    /**
+     * Attempts to find a working successor from the successor list, or failing that using the predecessor or a finger.
+     * @throws RPCException
+     */
+    private void handleSuccessorError() throws RPCException {
+
+        activityDetected();
+
+        try {
+            chord_node.setSuccessor(chord_node.getRealSuccessorList().findFirstWorkingNode());
+        }
+        catch (final NoReachableNodeException e) {
+            try {
+                chord_node.join(chord_node.getPredecessor());
+            }
+            catch (final Exception e1) {
+
+                // RPCException if predecessor has failed, or NullPointerException if it's already null
+                try {
+                    joinUsingFinger();
+                }
+                catch (final NoReachableNodeException e2) {
+
+                    // Couldn't contact any known node in current ring.
+                    // Leave things as they are, in the hope that the current successor will recover.
+                }
+            }
+        }
+    }
+
+    /**
+      * Adjusts the size of the finger table to the estimated ring size, then checks the next finger, and updates the finger table entry if a better finger is available.
+      */
+    private void fixNextFinger() {
+
+        final FingerTable finger_table = chord_node.getFingerTable();
+
+        boolean changed = adjustFingerTableSize(finger_table);
+        changed = finger_table.fixNextFinger() || changed;
+
+        if (changed) {
+            chord_node.setChanged();
+            chord_node.notifyObservers(IChordNode.FINGER_TABLE_CHANGE_EVENT);
+        }
+    }
+
+    private boolean adjustFingerTableSize(final FingerTable finger_table) {
+
+        try {
+            return finger_table.adjustSize(chord_node.getRealSuccessorList().estimateRingSize());
+        }
+        catch (final RPCException e) {
+            Diagnostic.trace("error estimating ring size: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Gets the predecessor of this node's successor.
+     * @return the predecessor of this node's successor
+     * @throws RPCException if an error occurs communicating with the successor
+     */
+    private IChordRemoteReference getPredecessorOfSuccessor() throws RPCException {
+
+        return chord_node.getSuccessor().getRemote().getPredecessor();
+    }
+
+    private void joinUsingFinger() throws NoReachableNodeException, RPCException {
+
+        for (final IChordRemoteReference finger : chord_node.getFingerTable().getFingers()) {
+            if (finger != null && !finger.getCachedKey().equals(chord_node.getKey())) {
+                try {
+                    chord_node.join(finger);
+                    return;
+                }
+                catch (final RPCException e) {
+                    // Ignore and try next finger.
+                }
+            }
+        }
+        throw new NoReachableNodeException();
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    private abstract static class MaintenanceTask {
+
+        private final AdaptiveInterval interval;
+        private long due_time; // The time at which the task is next to be performed, guarded by the enclosing maintenance object.
+
+        MaintenanceTask(final AdaptiveInterval interval) {
+
+            this.interval = interval;
+        }
+
+        abstract void perform();
+    }
+}
@@ -26,6 +26,7 @@
 package uk.ac.standrews.cs.stachord.impl;
 
 import uk.ac.standrews.cs.nds.p2p.interfaces.IKey;
+import uk.ac.standrews.cs.nds.p2p.util.SHA1KeyFactory;
 import uk.ac.standrews.cs.nds.registry.AlreadyBoundException;
 import uk.ac.standrews.cs.nds.registry.RegistryUnavailableException;
 import uk.ac.standrews.cs.nds.rpc.RPCException;
@@ -35,6 +36,7 @@ import uk.ac.standrews.cs.utilities.archive.Duration;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -48,11 +50,104 @@ public final class ChordNodeFactory {
     protected static final Duration INDIVIDUAL_TIMEOUT_INTERVAL = new Duration(50, TimeUnit.SECONDS); // Timeout for individual connection attempt.
     protected static final Duration RETRY_INTERVAL = new Duration(1, TimeUnit.SECONDS); // Interval between retry of connecting to remote nodes.
 
+    private volatile int inter_finger_ratio = IChordNode.INTER_FINGER_RATIO; // Routing base of created nodes.
+    private volatile int fingers_per_level = IChordNode.FINGERS_PER_LEVEL; // Fingers in each level of created nodes' finger tables.
+    private volatile int lookup_parallelism = IChordNode.LOOKUP_PARALLELISM; // Candidates to which each lookup hop of created nodes is issued.
+    private volatile ScheduledThreadPoolExecutor maintenance_executor = null; // Executor shared by created nodes for maintenance, or null if each has its own thread.
+
     public ChordNodeFactory() {
 
         super();
     }
 
+    /**
+     * Sets the routing base of the finger tables of nodes subsequently created by this factory: the ratio between the finger target spacings
+     * of successive levels, and the number of fingers in each level. A larger ratio gives routes with fewer hops, at the cost of larger finger tables.
+     * The two are checked together, since the number of fingers per level is limited by the ratio.
+     *
+     * @param inter_finger_ratio the ratio, at least 2
+     * @param fingers_per_level the number of fingers, between 1 and one less than the ratio
+     * @throws IllegalArgumentException if the ratio or the number of fingers per level is out of range
+     */
+    public synchronized void setRoutingBase(final int inter_finger_ratio, final int fingers_per_level) {
+
+        FingerTable.checkRoutingBase(inter_finger_ratio, fingers_per_level);
+        this.inter_finger_ratio = inter_finger_ratio;
+        this.fingers_per_level = fingers_per_level;
+    }
+
+    /**
+     * Sets the ratio between the finger target spacings of successive levels of the finger tables of nodes subsequently created by this factory,
+     * keeping the current number of fingers per level.
+     *
+     * @param inter_finger_ratio the ratio, at least 2 and greater than the current number of fingers per level
+     * @throws IllegalArgumentException if the ratio is out of range
+     * @see #setRoutingBase(int, int)
+     */
+    public synchronized void setInterFingerRatio(final int inter_finger_ratio) {
+
+        setRoutingBase(inter_finger_ratio, fingers_per_level);
+    }
+
+    /**
+     * Sets the number of fingers in each level of the finger tables of nodes subsequently created by this factory, keeping the current inter-finger ratio.
+     *
+     * @param fingers_per_level the number of fingers, between 1 and one less than the current inter-finger ratio
+     * @throws IllegalArgumentException if the number of fingers per level is out of range
+     * @see #setRoutingBase(int, int)
+     */
+    public synchronized void setFingersPerLevel(final int fingers_per_level) {
+
+        setRoutingBase(inter_finger_ratio, fingers_per_level);
+    }
+
+    /**
+     * Sets the number of candidates to which each hop of an iterative lookup is issued in parallel, for nodes subsequently created by this factory.
+     *
+     * @param lookup_parallelism the number of candidates, at least 1
+     * @see IChordNode#setLookupParallelism(int)
+     */
+    public void setLookupParallelism(final int lookup_parallelism) {
+
+        if (lookup_parallelism < 1) { throw new IllegalArgumentException("lookup parallelism must be at least 1: " + lookup_parallelism); }
+        this.lookup_parallelism = lookup_parallelism;
+    }
+
+    /**
+     * Causes nodes subsequently created by this factory to perform their maintenance on a pool of threads shared between them, rather than each
+     * on its own thread. This keeps the number of threads constant when many nodes run in the same JVM, at the cost of maintenance rounds being
+     * delayed if all the shared threads are busy. If this factory already has a shared pool, it is resized rather than replaced, so nodes created
+     * before and after the call share the same threads.
+     *
+     * @param worker_count the number of threads in the pool, at least 1
+     */
+    public synchronized void useSharedMaintenance(final int worker_count) {
+
+        if (worker_count < 1) { throw new IllegalArgumentException("maintenance worker count must be at least 1: " + worker_count); }
+
+        if (maintenance_executor != null) {
+            maintenance_executor.setCorePoolSize(worker_count);
+        }
+        else {
+            final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(worker_count, new DaemonThreadFactory("chord shared maintenance"));
+            executor.setRemoveOnCancelPolicy(true); // Don't retain the pending rounds of nodes that have been shut down.
+            maintenance_executor = executor;
+        }
+    }
+
+    /**
+     * Shuts down the pool of maintenance threads shared by nodes created by this factory, if it has one. The nodes that use the pool should be shut
+     * down first, since any still running no longer perform maintenance. Nodes subsequently created by this factory perform their maintenance on
+     * their own threads, unless {@link #useSharedMaintenance(int)} is called again.
+     */
+    public synchronized void shutDownSharedMaintenance() {
+
+        if (maintenance_executor != null) {
+            maintenance_executor.shutdownNow(); // Pending rounds would otherwise run, and try to reschedule themselves, after shutdown.
+            maintenance_executor = null;
+        }
+    }
+
     /**
      * Creates a new Chord node running in the current JVM at a given local network address on a given port, establishing a new one-node ring.
      *
@@ -68,7 +163,7 @@ public final class ChordNodeFactory {
      */
     public IChordNode createNode(final InetSocketAddress local_address) throws IOException, RPCException, AlreadyBoundException, RegistryUnavailableException, InterruptedException, TimeoutException {
 
-        return new ChordNodeImpl(local_address);
+        return createNode(local_address, new SHA1KeyFactory().generateKey(local_address));
     }
 
     /**
@@ -87,7 +182,17 @@ public final class ChordNodeFactory {
      */
     public IChordNode createNode(final InetSocketAddress local_address, final IKey key) throws IOException, RPCException, AlreadyBoundException, RegistryUnavailableException, InterruptedException, TimeoutException {
 
-        return new ChordNodeImpl(local_address, key);
+        // The routing base is read under the lock, so that the ratio and number of fingers per level are a pair that was checked together.
+        final int node_inter_finger_ratio;
+        final int node_fingers_per_level;
+        synchronized (this) {
+            node_inter_finger_ratio = inter_finger_ratio;
+            node_fingers_per_level = fingers_per_level;
+        }
+
+        final IChordNode node = new ChordNodeImpl(local_address, key, node_inter_finger_ratio, node_fingers_per_level, maintenance_executor);
+        node.setLookupParallelism(lookup_parallelism);
+        return node;
     }
 
     /**
@@ -27,7 +27,6 @@ package uk.ac.standrews.cs.stachord.impl;
 
 import uk.ac.standrews.cs.nds.events.Event;
 import uk.ac.standrews.cs.nds.p2p.interfaces.IKey;
-import uk.ac.standrews.cs.nds.p2p.keys.RingArithmetic;
 import uk.ac.standrews.cs.nds.p2p.util.SHA1KeyFactory;
 import uk.ac.standrews.cs.nds.registry.AlreadyBoundException;
 import uk.ac.standrews.cs.nds.registry.RegistryUnavailableException;
@@ -35,13 +34,45 @@ import uk.ac.standrews.cs.nds.rpc.RPCException;
 import uk.ac.standrews.cs.stachord.interfaces.IChordNode;
 import uk.ac.standrews.cs.stachord.interfaces.IChordRemote;
 import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+import uk.ac.standrews.cs.stachord.interfaces.ILookupTrace;
+import uk.ac.standrews.cs.stachord.interfaces.IRangeLookup;
 import uk.ac.standrews.cs.utilities.archive.Diagnostic;
+import uk.ac.standrews.cs.utilities.archive.Duration;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Observable;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Implementation of Chord node.
@@ -54,20 +85,57 @@ import java.util.concurrent.TimeoutException;
 class ChordNodeImpl extends Observable implements IChordNode, IChordRemote {
 
     private static final int PREDECESSOR_ERROR_ACTION_THRESHOLD = 1; // The number of predecessor errors that will be ignored before the predecessor is reset to null.
-    private final IKey key; // The key of this node.
+    private static final int OWNERSHIP_CACHE_CAPACITY = 1000; // The maximum number of learned ownership intervals retained for lookups.
+    private static final int NEIGHBOUR_CACHE_CAPACITY = 256; // The maximum number of nodes learned from lookups and notifications retained for routing.
+    private static final long NEIGHBOUR_CACHE_LIFETIME = TimeUnit.MINUTES.toNanos(2); // The time after which a learned node is no longer used for routing.
+    private static final int MEMBERSHIP_DELTA_LOG_CAPACITY = 8; // The maximum number of membership deltas piggybacked on a call.
+    private static final long MEMBERSHIP_DELTA_LIFETIME = TimeUnit.SECONDS.toNanos(30); // The time after which a membership delta is no longer passed on.
+    private static final int MEMBERSHIP_DELTA_HOPS = 3; // The number of times a membership delta observed by this node may be relayed onwards.
+    private static final int MEMBERSHIP_DELTA_SENDS = 4; // The number of calls on which each membership delta is piggybacked by this node.
+    private static final int LIVENESS_CACHE_CAPACITY = 64; // The maximum number of probe outcomes retained.
+    private static final long LIVENESS_CACHE_LIFETIME = TimeUnit.SECONDS.toNanos(30); // The time after which a probe outcome is no longer used.
+    private static final int PEER_VERSIONS_CAPACITY = 64; // The maximum number of protocol versions of other nodes retained.
+    private static final long PEER_VERSIONS_LIFETIME = TimeUnit.MINUTES.toNanos(1); // The time after which another node's protocol version is queried again.
+    private static final int MAX_NEXT_HOP_ALTERNATIVES = 4; // The maximum number of alternative next hops returned with a non-final next hop.
+    private static final int MAX_FAILED_HOPS_PER_LOOKUP = 8; // The number of failed hops after which a lookup gives up rather than rerouting again.
+    private static final int LOOKUP_TRACE_BUFFER_SIZE = 100; // The maximum number of sampled lookup traces retained.
+    private static final double HEDGE_PERCENTILE = 0.95; // A hop is hedged if it takes longer than this percentile of the next hop's recent latencies.
+    private static final int ASYNC_LOOKUP_THREADS = 8; // The maximum number of hops of asynchronous lookups in progress at once on each node.
+    private static final int PARALLEL_HOP_THREADS = 16; // The maximum number of calls to candidate next hops in progress at once on each node.
+    private static final int HEDGED_HOP_THREADS = 8; // The maximum number of calls to next hops that may be hedged in progress at once on each node.
+    private static final int HEDGE_THREADS = 8; // The maximum number of backup calls to alternative next hops in progress at once on each node.
+    private static final int PROBE_THREADS = 16; // The maximum number of pings of other nodes in progress at once on each node.
+    private static final long HOP_RESPONSE_TIMEOUT = TimeUnit.SECONDS.toNanos(20); // The time after which a hop issued to several candidates is abandoned.
+    private static final long CALL_THREAD_IDLE_TIME = TimeUnit.SECONDS.toNanos(30); // The time after which an idle thread making remote calls is stopped.
+    private static final ScheduledExecutorService LOOKUP_TIMEOUT_SCHEDULER = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("chord lookup timeout"));
+    private final FixedWidthKey key; // The key of this node.
     private final int hash_code; // The hash code of this node.
     private final SuccessorList successor_list; // The successor list of this node.
     private final FingerTable finger_table; // The finger table of this node.
+    private final OwnershipCache ownership_cache; // Ownership intervals learned from previous lookups.
+    private final NeighbourCache neighbour_cache; // Nodes learned in passing, used as routing candidates alongside the fingers and successors.
+    private final LivenessCache liveness_cache; // Outcomes of recent pings of neighbouring nodes.
+    private final PeerVersions peer_versions; // The protocol versions of recently contacted nodes.
+    private final MembershipDeltaLog membership_delta_log; // Recent membership changes, piggybacked on calls to other nodes.
     private final ChordRemoteServer chord_remote_server;
-    private final ChordMaintenanceThread maintenance_thread;
+    private final ChordMaintenance maintenance;
+    private final ThreadPoolExecutor async_lookup_executor; // Threads on which the blocking remote calls made by asynchronous lookups are made.
+    private final ThreadPoolExecutor parallel_hop_executor; // Threads on which the calls to candidate next hops made by parallel lookups are made.
+    private final ThreadPoolExecutor hedged_hop_executor; // Threads on which calls to next hops that may be hedged are made.
+    private final ThreadPoolExecutor hedge_executor; // Threads on which backup calls for slow hops are made, so that they don't wait behind the calls they hedge.
+    private final ThreadPoolExecutor probe_executor; // Threads on which pings recorded in the liveness cache are made, so that they don't wait behind lookup calls.
     private final boolean own_address_maintenance_enabled = true; // Whether periodic checking of own address is enabled
     private volatile InetSocketAddress local_address; // The address of this node.
     private volatile IChordRemoteReference self_reference; // A local reference to this node.
-    private volatile IChordRemoteReference predecessor; // The predecessor of this node.
-    private volatile IChordRemoteReference successor; // The successor of this node.
+    private final AtomicReference<RoutingState> routing_state; // The predecessor, successor, successor list and fingers, replaced as a whole when any changes.
     private volatile boolean predecessor_maintenance_enabled = true; // Whether periodic predecessor maintenance should be performed.
     private volatile boolean stabilization_enabled = true; // Whether periodic ring stabilization should be performed.
     private volatile boolean finger_table_maintenance_enabled = true; // Whether periodic finger table maintenance should be performed.
+    private volatile boolean recursive_lookup_enabled = false; // Whether lookups should be routed recursively rather than iteratively.
+    private volatile boolean membership_piggybacking_enabled = false; // Whether membership deltas should be exchanged with other nodes.
+    private volatile int lookup_parallelism = LOOKUP_PARALLELISM; // The number of candidates to which each hop of an iterative lookup is issued.
+    private volatile double lookup_trace_sampling_rate = 0; // The proportion of iterative lookups for which a trace is recorded.
+    private final Deque<LookupTrace> sampled_lookup_traces = new ArrayDeque<LookupTrace>(); // The most recent sampled lookup traces, oldest first.
     private volatile boolean detailed_to_string = false; // Whether toString() should return a detailed description.
     private volatile int predecessor_error_count = 0;
 
@@ -93,25 +161,66 @@ class ChordNodeImpl extends Observable implements IChordNode, IChordRemote {
      */
     public ChordNodeImpl(final InetSocketAddress local_address, final IKey key) throws IOException {
 
+        this(local_address, key, INTER_FINGER_RATIO, FINGERS_PER_LEVEL);
+    }
+
+    /**
+     * Creates a new Chord node bound to the given local address, with the given key and routing base.
+     *
+     * @param local_address      the local address
+     * @param key                the key
+     * @param inter_finger_ratio the ratio between the finger target spacings of successive levels of the finger table
+     * @param fingers_per_level  the number of fingers in each level of the finger table
+     * @throws IOException if the service cannot bind to the specified local address
+     */
+    public ChordNodeImpl(final InetSocketAddress local_address, final IKey key, final int inter_finger_ratio, final int fingers_per_level) throws IOException {
+
+        this(local_address, key, inter_finger_ratio, fingers_per_level, null);
+    }
+
+    /**
+     * Creates a new Chord node bound to the given local address, with the given key and routing base, whose maintenance is performed on the given executor.
+     *
+     * @param local_address      the local address
+     * @param key                the key
+     * @param inter_finger_ratio the ratio between the finger target spacings of successive levels of the finger table
+     * @param fingers_per_level  the number of fingers in each level of the finger table
+     * @param maintenance_executor an executor shared with other nodes on which maintenance is performed, or null if the node should have its own maintenance thread
+     * @throws IOException if the service cannot bind to the specified local address
+     */
+    ChordNodeImpl(final InetSocketAddress local_address, final IKey key, final int inter_finger_ratio, final int fingers_per_level, final ScheduledExecutorService maintenance_executor) throws IOException {
+
         this.local_address = local_address;
-        this.key = key;
+        this.key = FixedWidthKey.valueOf(key);
         hash_code = local_address.hashCode();
+        routing_state = new AtomicReference<RoutingState>(new RoutingState(this.key));
         successor_list = new SuccessorList(this);
-        finger_table = new FingerTable(this);
+        finger_table = new FingerTable(this, inter_finger_ratio, fingers_per_level);
+        ownership_cache = new OwnershipCache(OWNERSHIP_CACHE_CAPACITY);
+        neighbour_cache = new NeighbourCache(this.key, NEIGHBOUR_CACHE_CAPACITY, NEIGHBOUR_CACHE_LIFETIME);
+        probe_executor = newCallExecutor("chord probe", PROBE_THREADS);
+        liveness_cache = new LivenessCache(LIVENESS_CACHE_CAPACITY, LIVENESS_CACHE_LIFETIME, probe_executor);
+        peer_versions = new PeerVersions(PEER_VERSIONS_CAPACITY, PEER_VERSIONS_LIFETIME);
+        membership_delta_log = new MembershipDeltaLog(MEMBERSHIP_DELTA_LOG_CAPACITY, MEMBERSHIP_DELTA_LIFETIME, MEMBERSHIP_DELTA_HOPS, MEMBERSHIP_DELTA_SENDS);
         chord_remote_server = new ChordRemoteServer(this);
-        maintenance_thread = new ChordMaintenanceThread(this);
+        maintenance = new ChordMaintenance(this, maintenance_executor);
+        async_lookup_executor = newCallExecutor("chord async lookup", ASYNC_LOOKUP_THREADS);
+        parallel_hop_executor = newCallExecutor("chord parallel hop", PARALLEL_HOP_THREADS);
+        hedged_hop_executor = newCallExecutor("chord hedged hop", HEDGED_HOP_THREADS);
+        hedge_executor = newCallExecutor("chord hedge", HEDGE_THREADS);
 
         exposeNode();
         initialiseSelfReference();
         createRing();
 
-        startMaintenanceThread();
+        startMaintenance();
         addObserver(this);
     }
 
     // -------------------------------------------------------------------------------------------------------
 
-    // Operations that use synchronization.
+    // Key range operations. These read a single routing state snapshot without locking, so may give transiently incorrect results
+    // if the predecessor or successor changes concurrently.
 
     /**
      * Checks whether the given key lies in this node's key range.
@@ -123,19 +232,24 @@ class ChordNodeImpl extends Observable implements IChordNode, IChordRemote {
     @Override
     public boolean inLocalKeyRange(final IKey k) throws RPCException {
 
-        // It's possible that predecessor and successor will change during execution of this method, leading to transiently
-        // incorrect results. We don't care about this, so only synchronize enough of the method to avoid NPEs.
+        return inLocalKeyRange(FixedWidthKey.valueOf(k));
+    }
+
+    @Override
+    public IKey getKey() {
 
-        final IKey predecessor_key;
+        return key.toKey();
+    }
 
-        synchronized (this) {
-            // getCachedKey() is a non-open call, holding lock on this node.
-            // It may make a remote getKey() call on the predecessor, which doesn't require any further locks.
-            predecessor_key = predecessor != null ? predecessor.getCachedKey() : null;
-        }
+    // -------------------------------------------------------------------------------------------------------
+
+    private boolean inLocalKeyRange(final FixedWidthKey k) throws RPCException {
+
+        final RoutingState state = routing_state.get();
+        final FixedWidthKey predecessor_key = state.getPredecessorKey();
 
         if (predecessor_key == null) {
-            if (successorIsSelf()) {
+            if (key.equals(state.getSuccessorKey())) {
                 return true;
             }
 
@@ -143,13 +257,7 @@ class ChordNodeImpl extends Observable implements IChordNode, IChordRemote {
             throw new KeyUnknownException("Unable to determine local key range because the predecessor is null. This is not a JSON RPCException.");
         }
 
-        return RingArithmetic.inSegment(predecessor_key, k, key);
-    }
-
-    @Override
-    public IKey getKey() {
-
-        return key;
+        return FixedWidthKey.inSegment(predecessor_key, k, key);
     }
 
     // -------------------------------------------------------------------------------------------------------
@@ -159,24 +267,188 @@ class ChordNodeImpl extends Observable implements IChordNode, IChordRemote {
     @Override
     public IChordRemoteReference lookup(final IKey k) throws RPCException {
 
-        if (inLocalKeyRange(k)) {
+        // Convert the key once, so that ring arithmetic on it doesn't allocate on each hop.
+        final FixedWidthKey target = FixedWidthKey.valueOf(k);
+
+        if (inLocalKeyRange(target)) {
 
             // If the key is equal to this node's, or the ring currently only has one node...
             return self_reference;
         }
-        return findSuccessor(k);
+
+        final IChordRemoteReference cached_owner = confirmedCachedOwner(target);
+        if (cached_owner != null) { return cached_owner; }
+
+        return route(target);
+    }
+
+    @Override
+    public IRangeLookup lookupRange(final IKey from, final IKey to) throws RPCException {
+
+        return new RangeLookup(this, from, to);
+    }
+
+    @Override
+    public List<IChordRemoteReference> lookupReplicas(final IKey k, final int number_of_replicas) throws RPCException {
+
+        final FixedWidthKey target = FixedWidthKey.valueOf(k);
+        final List<IChordRemoteReference> candidates = new ArrayList<IChordRemoteReference>();
+
+        if (inLocalKeyRange(target)) {
+            candidates.add(self_reference);
+            candidates.addAll(successor_list.getList());
+        }
+        else {
+            // The final hop carries the owner's successors, so a replica set no larger than a successor list needs no further calls.
+            // A node implementing only the baseline protocol returns no successors, so they are found by the walk below.
+            final NextHopResult final_hop = findFinalHop(target, null);
+            candidates.add(final_hop.getNode());
+            candidates.addAll(final_hop.getAlternatives());
+        }
+
+        final List<IChordRemoteReference> replicas = new ArrayList<IChordRemoteReference>();
+        final Set<FixedWidthKey> replica_keys = new HashSet<FixedWidthKey>();
+        boolean extendable = addReplicas(candidates, number_of_replicas, replicas, replica_keys);
+
+        // Continue through the successor lists of the furthest replicas found, if more are needed.
+        while (extendable && replicas.size() < number_of_replicas) {
+
+            final IChordRemoteReference furthest_replica = replicas.get(replicas.size() - 1);
+            try {
+                final List<IChordRemoteReference> successors = FixedWidthKey.of(furthest_replica).equals(key) ? successor_list.getList() : furthest_replica.getRemote().getSuccessorList();
+                extendable = addReplicas(successors, number_of_replicas, replicas, replica_keys);
+            }
+            catch (final RPCException e) {
+                notifyFailure(furthest_replica);
+                extendable = false;
+            }
+        }
+
+        return replicas;
+    }
+
+    @Override
+    public ILookupTrace lookupTraced(final IKey k) throws RPCException {
+
+        final FixedWidthKey target = FixedWidthKey.valueOf(k);
+        final LookupTrace trace = new LookupTrace(k);
+        trace.complete(inLocalKeyRange(target) ? self_reference : findSuccessor(target, trace));
+        return trace;
+    }
+
+    @Override
+    public IChordRemoteReference lookupRecursive(final IKey k) throws RPCException {
+
+        final FixedWidthKey target = FixedWidthKey.valueOf(k);
+
+        if (inLocalKeyRangeIfKnown(target)) { return self_reference; }
+        return forwardLookup(target);
+    }
+
+    @Override
+    public CompletableFuture<IChordRemoteReference> lookupAsync(final IKey k) {
+
+        return lookupAsync(k, null);
+    }
+
+    @Override
+    public CompletableFuture<IChordRemoteReference> lookupAsync(final IKey k, final Duration timeout) {
+
+        return lookupAsync(k, timeout, false);
+    }
+
+    /**
+     * Executes the routing protocol asynchronously, optionally allowing the lookup to be made when this node's key range is unknown,
+     * as it is after joining until the predecessor is known. Such a lookup is routed round the ring even if the key is in fact local.
+     *
+     * @param k a key to be routed to
+     * @param timeout the time after which the lookup is abandoned, or null if there is no time limit
+     * @param allow_unknown_key_range true if the lookup should be made when this node's key range is unknown
+     * @return a future that completes with the node to which the key maps
+     */
+    CompletableFuture<IChordRemoteReference> lookupAsync(final IKey k, final Duration timeout, final boolean allow_unknown_key_range) {
+
+        final CompletableFuture<IChordRemoteReference> result = new CompletableFuture<IChordRemoteReference>();
+
+        if (timeout != null) {
+            scheduleLookupTimeout(k, timeout, result);
+        }
+
+        try {
+            final FixedWidthKey target = FixedWidthKey.valueOf(k);
+            if (allow_unknown_key_range ? inLocalKeyRangeIfKnown(target) : inLocalKeyRange(target)) {
+                result.complete(self_reference);
+            }
+            else {
+                continueLookupAsync(k, this, nextHop(k), result);
+            }
+        }
+        catch (final RPCException e) {
+            result.completeExceptionally(e);
+        }
+
+        return result;
+    }
+
+    @Override
+    public Map<IKey, IChordRemoteReference> lookupAll(final Collection<IKey> keys) throws RPCException {
+
+        final Map<IKey, IChordRemoteReference> owners = new HashMap<IKey, IChordRemoteReference>();
+
+        // Keys still to be resolved, grouped by the node that will be asked for their next hops.
+        Map<IChordRemoteReference, List<IKey>> partitions = new LinkedHashMap<IChordRemoteReference, List<IKey>>();
+
+        for (final IKey k : keys) {
+            if (!owners.containsKey(k)) {
+                if (inLocalKeyRange(k)) {
+                    owners.put(k, self_reference);
+                }
+                else {
+                    addToPartition(k, nextHop(k), owners, partitions);
+                }
+            }
+        }
+
+        // Each partition is routed independently; the keys in a partition may be split again at the next hop.
+        while (!partitions.isEmpty()) {
+
+            final Map<IChordRemoteReference, List<IKey>> next_partitions = new LinkedHashMap<IChordRemoteReference, List<IKey>>();
+
+            for (final Map.Entry<IChordRemoteReference, List<IKey>> partition : partitions.entrySet()) {
+
+                final IChordRemoteReference hop = partition.getKey();
+                final List<IKey> hop_keys = partition.getValue();
+                final List<NextHopResult> results;
+
+                try {
+                    results = nextHopsFrom(hop, hop_keys);
+                }
+                catch (final RPCException e) {
+                    notifyFailure(hop);
+                    throw new RPCException("hop failure on node " + local_address + " trying to contact node " + hop.getCachedAddress(), e);
+                }
+
+                for (int i = 0; i < hop_keys.size(); i++) {
+                    addToPartition(hop_keys.get(i), results.get(i), owners, next_partitions);
+                }
+            }
+
+            partitions = next_partitions;
+        }
+
+        return owners;
     }
 
     @Override
     public IChordRemoteReference getSuccessor() {
 
-        return successor;
+        return routing_state.get().getSuccessor();
     }
 
     @Override
     public IChordRemoteReference getPredecessor() {
 
-        return predecessor;
+        return routing_state.get().getPredecessor();
     }
 
     @Override
@@ -185,10 +457,23 @@ class ChordNodeImpl extends Observable implements IChordNode, IChordRemote {
         return self_reference;
     }
 
+    @Override
+    public List<Duration> getFingerRoundTripTimes() {
+
+        return finger_table.getFingerRoundTripTimes();
+    }
+
     @Override
     public void shutDown() {
 
-        shutdownMaintenanceThread();
+        shutdownMaintenance();
+
+        // Calls already issued are completed, but no more are accepted.
+        async_lookup_executor.shutdown();
+        parallel_hop_executor.shutdown();
+        hedged_hop_executor.shutdown();
+        hedge_executor.shutdown();
+        probe_executor.shutdown();
 
         // Shutdown the server.
         try {
@@ -213,7 +498,7 @@ class ChordNodeImpl extends Observable implements IChordNode, IChordRemote {
 
         // Route to this node's key; the result is this node's new successor.
         final IChordRemote remote = known_node.getRemote();
-        final IChordRemoteReference new_successor = remote.lookup(key);
+        final IChordRemoteReference new_successor = remote.lookup(key.toKey());
 
         // Check that the new successor is not this node. This could happen if this node is already in a ring containing the known node.
         // This could happen in a situation where we're trying to combine two rings by having in a node in one join using a node in the
@@ -221,6 +506,10 @@ class ChordNodeImpl extends Observable implements IChordNode, IChordRemote {
         // whether a ring has partitioned or not.
         if (!equals(new_successor.getRemote())) {
             setSuccessor(new_successor);
+            neighbour_cache.learn(known_node);
+
+            // Fill the finger table now, rather than one finger per maintenance round, so that the node routes well from the start.
+            bootstrapFingerTable(new_successor);
         }
     }
 
@@ -243,13 +532,33 @@ class ChordNodeImpl extends Observable implements IChordNode, IChordRemote {
            Case: predecessor is not null and potential_predecessor is in this node's current key range.
            A new node has joined between the current predecessor and this node.
          */
-        final IKey key_of_potential_predecessor = potential_predecessor.getCachedKey();
+        final FixedWidthKey key_of_potential_predecessor = FixedWidthKey.of(potential_predecessor);
+        neighbour_cache.learn(potential_predecessor);
+
+        // A notification from a node other than the current predecessor suggests that the ring is changing nearby.
+        final IChordRemoteReference predecessor = getPredecessor();
+        if (predecessor == null || !key_of_potential_predecessor.equals(FixedWidthKey.of(predecessor))) {
+            maintenance.activityDetected();
+        }
 
-        if (!key_of_potential_predecessor.equals(key) && (predecessor == null || inLocalKeyRange(key_of_potential_predecessor))) {
+        if (!key_of_potential_predecessor.equals(key) && (getPredecessor() == null || inLocalKeyRange(key_of_potential_predecessor))) {
             setPredecessor(potential_predecessor);
+
+            // Unless the previous predecessor has failed, the new one has just joined.
+            if (predecessor != null) {
+                recordMembershipChange(MembershipDelta.Kind.JOINED, potential_predecessor);
+            }
         }
     }
 
+    @Override
+    public StabilizeResult stabilize(final IChordRemoteReference potential_predecessor, final List<MembershipDelta> membership_deltas) throws RPCException {
+
+        applyMembershipDeltas(membership_deltas);
+        notify(potential_predecessor);
+        return new StabilizeResult(getPredecessor(), getSuccessorList(), getMembershipDeltas());
+    }
+
     @Override
     public List<IChordRemoteReference> getSuccessorList() {
 
@@ -262,19 +571,52 @@ class ChordNodeImpl extends Observable implements IChordNode, IChordRemote {
         return finger_table.getFingers();
     }
 
+    @Override
+    public int getProtocolVersion() {
+
+        return PROTOCOL_VERSION;
+    }
+
     @Override
     public NextHopResult nextHop(final IKey k) throws RPCException {
 
+        // Keys received from remote nodes are converted once, before the range checks.
+        return nextHop(FixedWidthKey.valueOf(k));
+    }
+
+    private NextHopResult nextHop(final FixedWidthKey target) throws RPCException {
+
+        // Use a single snapshot of the routing state throughout.
+        final RoutingState state = routing_state.get();
+
         // Check whether the key lies in this node's successor's key range, in which case the successor represents the final hop.
-        if (inSuccessorKeyRange(k)) {
-            return new NextHopResult(successor, true);
+        // The rest of the successor list is included, for replica lookups.
+        if (inSuccessorKeyRange(target, state)) {
+            return new NextHopResult(state.getSuccessor(), true, successorsAfter(state.getSuccessor(), state));
         }
 
-        final IChordRemoteReference closest_preceding_node = closestPrecedingNode(k);
+        final IChordRemoteReference closest_preceding_node = closestPrecedingNode(target, state);
 
         // It's the final hop if the node's key is equal to the target key.
-        final boolean final_hop = closest_preceding_node.getCachedKey().equals(k);
-        return new NextHopResult(closest_preceding_node, final_hop);
+        if (FixedWidthKey.of(closest_preceding_node).equals(target)) { return new NextHopResult(closest_preceding_node, true); }
+
+        return new NextHopResult(closest_preceding_node, false, nextHopAlternatives(target, closest_preceding_node, state));
+    }
+
+    @Override
+    public NextHopResult nextHopDetailed(final IKey k) throws RPCException {
+
+        return nextHop(k);
+    }
+
+    @Override
+    public List<NextHopResult> nextHops(final List<IKey> keys) throws RPCException {
+
+        final List<NextHopResult> results = new ArrayList<NextHopResult>();
+        for (final IKey k : keys) {
+            results.add(nextHop(k));
+        }
+        return results;
     }
 
     @Override
@@ -295,10 +637,65 @@ class ChordNodeImpl extends Observable implements IChordNode, IChordRemote {
         finger_table_maintenance_enabled = enabled;
     }
 
+    @Override
+    public void enableRecursiveLookup(final boolean enabled) {
+
+        recursive_lookup_enabled = enabled;
+    }
+
+    @Override
+    public void enableMembershipPiggybacking(final boolean enabled) {
+
+        membership_piggybacking_enabled = enabled;
+    }
+
+    @Override
+    public void setLookupParallelism(final int parallelism) {
+
+        if (parallelism < 1) { throw new IllegalArgumentException("lookup parallelism must be at least 1: " + parallelism); }
+        lookup_parallelism = parallelism;
+    }
+
+    @Override
+    public void setPredecessorMaintenanceInterval(final Duration floor, final Duration ceiling) {
+
+        maintenance.getPredecessorMaintenanceInterval().setBounds(floor.getLength(TimeUnit.NANOSECONDS), ceiling.getLength(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void setStabilizationInterval(final Duration floor, final Duration ceiling) {
+
+        maintenance.getStabilizationInterval().setBounds(floor.getLength(TimeUnit.NANOSECONDS), ceiling.getLength(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void setFingerTableMaintenanceInterval(final Duration floor, final Duration ceiling) {
+
+        maintenance.getFingerTableMaintenanceInterval().setBounds(floor.getLength(TimeUnit.NANOSECONDS), ceiling.getLength(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void setLookupTraceSamplingRate(final double sampling_rate) {
+
+        if (sampling_rate < 0 || sampling_rate > 1) { throw new IllegalArgumentException("sampling rate must be between 0 and 1: " + sampling_rate); }
+        lookup_trace_sampling_rate = sampling_rate;
+    }
+
+    @Override
+    public List<ILookupTrace> getSampledLookupTraces() {
+
+        synchronized (sampled_lookup_traces) {
+            return new ArrayList<ILookupTrace>(sampled_lookup_traces);
+        }
+    }
+
     @Override
     public void notifyFailure(final IChordRemoteReference node) throws RPCException {
 
-        finger_table.fingerFailure(node);
+        removeFailedNode(node);
+        recordMembershipChange(MembershipDelta.Kind.FAILED, node);
+
+        maintenance.activityDetected();
     }
 
     @Override
@@ -309,6 +706,9 @@ class ChordNodeImpl extends Observable implements IChordNode, IChordRemote {
         builder.append(key);
         builder.append("\nlocal_address: ");
         builder.append(local_address);
+        final IChordRemoteReference predecessor = getPredecessor();
+        final IChordRemoteReference successor = getSuccessor();
+
         builder.append("\npredecessor cached: ");
         builder.append(predecessor != null ? predecessor.getCachedAddress() : "null");
 
@@ -333,6 +733,13 @@ class ChordNodeImpl extends Observable implements IChordNode, IChordRemote {
         builder.append(successor_list);
         builder.append("\nfinger_table: ");
         builder.append(finger_table);
+        builder.append("\nmaintenance intervals (predecessor, stabilization, finger table): ");
+        builder.append(maintenance.getPredecessorMaintenanceInterval().getInterval() / 1000000);
+        builder.append("ms, ");
+        builder.append(maintenance.getStabilizationInterval().getInterval() / 1000000);
+        builder.append("ms, ");
+        builder.append(maintenance.getFingerTableMaintenanceInterval().getInterval() / 1000000);
+        builder.append("ms");
         return builder.toString();
     }
 
@@ -360,7 +767,7 @@ class ChordNodeImpl extends Observable implements IChordNode, IChordRemote {
     public boolean equals(final Object other) {
 
         try {
-            return other instanceof IChordRemote && ((IChordRemote) other).getKey().equals(key);
+            return other instanceof IChordRemote && ((IChordRemote) other).getKey().equals(key.toKey());
         } catch (final RPCException e) {
             return false;
         }
@@ -383,9 +790,13 @@ class ChordNodeImpl extends Observable implements IChordNode, IChordRemote {
 
         Diagnostic.traceNoSource(">>>>>>>>>>>>>>>>>>>>>> update: " + event);
 
+        if (event.equals(SUCCESSOR_CHANGE_EVENT) || event.equals(PREDECESSOR_CHANGE_EVENT) || event.equals(SUCCESSOR_LIST_CHANGE_EVENT) || event.equals(FINGER_TABLE_CHANGE_EVENT)) {
+            maintenance.activityDetected();
+        }
+
         if (event.equals(SUCCESSOR_CHANGE_EVENT)) {
             try {
-                Diagnostic.trace("successor of " + key + " now: " + (successor != null ? successor.getCachedKey() : "null"));
+                Diagnostic.trace("successor of " + key + " now: " + (getSuccessor() != null ? getSuccessor().getCachedKey() : "null"));
             } catch (final RPCException e) {
                 Diagnostic.trace("Error handling successor change");
             }
@@ -393,7 +804,7 @@ class ChordNodeImpl extends Observable implements IChordNode, IChordRemote {
 
         if (event.equals(PREDECESSOR_CHANGE_EVENT)) {
             try {
-                Diagnostic.trace("\n\npredecessor of " + key + " now: " + (predecessor != null ? predecessor.getCachedKey() : "null"));
+                Diagnostic.trace("\n\npredecessor of " + key + " now: " + (getPredecessor() != null ? getPredecessor().getCachedKey() : "null"));
             } catch (final RPCException e) {
                 Diagnostic.trace("Error handling predecessor change");
             }
@@ -414,19 +825,15 @@ class ChordNodeImpl extends Observable implements IChordNode, IChordRemote {
 
     // -------------------------------------------------------------------------------------------------------
 
-    private boolean inSuccessorKeyRange(final IKey k) throws RPCException {
+    private boolean inSuccessorKeyRange(final FixedWidthKey k, final RoutingState state) throws RPCException {
 
-        final IKey successor_key;
-
-        synchronized (this) {
-            successor_key = successor != null ? successor.getCachedKey() : null;
-        }
+        final FixedWidthKey successor_key = state.getSuccessorKey();
 
         if (successor_key == null) {
             throw new KeyUnknownException("Unable to determine successor key range because the successor is null. This is not a JSON RPCException.");
         }
 
-        return RingArithmetic.inSegment(key, k, successor_key);
+        return FixedWidthKey.inSegment(key, k, successor_key);
     }
 
     @Override
@@ -469,8 +876,14 @@ class ChordNodeImpl extends Observable implements IChordNode, IChordRemote {
      */
     void setPredecessor(final IChordRemoteReference new_predecessor) {
 
-        final IChordRemoteReference old_predecessor = predecessor;
-        predecessor = new_predecessor;
+        final IChordRemoteReference old_predecessor = routing_state.getAndUpdate(new UnaryOperator<RoutingState>() {
+
+            @Override
+            public RoutingState apply(final RoutingState state) {
+
+                return state.withPredecessor(new_predecessor);
+            }
+        }).getPredecessor();
 
         if (new_predecessor != null) {
             predecessor_error_count = 0;
@@ -478,6 +891,7 @@ class ChordNodeImpl extends Observable implements IChordNode, IChordRemote {
 
         if (new_predecessor == null || !new_predecessor.equals(old_predecessor)) {
 
+            invalidateOwnership(new_predecessor);
             setChanged();
             notifyObservers(PREDECESSOR_CHANGE_EVENT);
         }
@@ -492,11 +906,18 @@ class ChordNodeImpl extends Observable implements IChordNode, IChordRemote {
 
         assert successor != null;
 
-        final IChordRemoteReference old_successor = this.successor;
-        this.successor = successor;
+        final IChordRemoteReference old_successor = routing_state.getAndUpdate(new UnaryOperator<RoutingState>() {
+
+            @Override
+            public RoutingState apply(final RoutingState state) {
+
+                return state.withSuccessor(successor);
+            }
+        }).getSuccessor();
 
         if (old_successor != null && !old_successor.equals(successor)) {
 
+            invalidateOwnership(successor);
             setChanged();
             notifyObservers(SUCCESSOR_CHANGE_EVENT);
         }
@@ -510,133 +931,1121 @@ class ChordNodeImpl extends Observable implements IChordNode, IChordRemote {
      */
     boolean successorIsSelf() throws RPCException {
 
-        return successor.getCachedKey().equals(key);
-    }
-
-    void initialiseSelfReference() {
-
-        self_reference = new ChordRemoteReference(key, local_address);
-    }
-
-    SuccessorList getRealSuccessorList() {
-
-        return successor_list;
-    }
-
-    FingerTable getFingerTable() {
-
-        return finger_table;
+        return key.equals(routing_state.get().getSuccessorKey());
     }
 
-    boolean ownAddressMaintenanceEnabled() {
+    /**
+     * Returns the current routing state snapshot.
+     * @return the current routing state snapshot
+     */
+    RoutingState getRoutingState() {
 
-        return own_address_maintenance_enabled;
+        return routing_state.get();
     }
 
-    boolean predecessorMaintenanceEnabled() {
+    /**
+     * Replaces the successor list in the routing state.
+     *
+     * @param new_successor_list the new successor list
+     * @return true if the successor list was changed
+     */
+    boolean publishSuccessorList(final List<IChordRemoteReference> new_successor_list) {
 
-        return predecessor_maintenance_enabled;
-    }
+        final RoutingState old_state = routing_state.getAndUpdate(new UnaryOperator<RoutingState>() {
 
-    boolean stabilizationEnabled() {
+            @Override
+            public RoutingState apply(final RoutingState state) {
 
-        return stabilization_enabled;
+                return new_successor_list.equals(state.getSuccessorList()) ? state : state.withSuccessorList(new_successor_list);
+            }
+        });
+        return !new_successor_list.equals(old_state.getSuccessorList());
     }
 
-    boolean fingerTableMaintenanceEnabled() {
+    /**
+     * Replaces the fingers in the routing state, unless fingers from a later version of the finger table have already been published.
+     *
+     * @param fingers the fingers
+     * @param finger_version the version of the finger table from which the fingers were taken
+     */
+    void publishFingers(final IChordRemoteReference[] fingers, final int finger_version) {
 
-        return finger_table_maintenance_enabled;
-    }
+        routing_state.updateAndGet(new UnaryOperator<RoutingState>() {
 
-    void setAddress(final InetSocketAddress local_address) {
+            @Override
+            public RoutingState apply(final RoutingState state) {
 
-        this.local_address = local_address;
+                return state.withFingers(fingers, finger_version);
+            }
+        });
     }
 
-    void handlePredecessorError() {
-
-        predecessor_error_count++;
+    void initialiseSelfReference() {
 
-        if (predecessor_error_count > PREDECESSOR_ERROR_ACTION_THRESHOLD) {
-            Diagnostic.trace("resetting predecessor after " + predecessor_error_count + " errors");
-            setPredecessor(null);
-        }
+        self_reference = new ChordRemoteReference(key.toKey(), local_address);
     }
 
-    // -------------------------------------------------------------------------------------------------------
-
     /**
-     * Sets data structures for a new ring.
+     * Executes the routing protocol without consulting the ownership cache, for callers that have already consulted it.
+     *
+     * @param target a key to be routed to
+     * @return the node to which the key maps
+     * @throws RPCException if an error occurs during the routing
      */
-    private void createRing() {
+    IChordRemoteReference lookupUncached(final FixedWidthKey target) throws RPCException {
 
-        setPredecessor(null);
-        setSuccessor(self_reference);
-        successor_list.clear();
-        setChanged();
-        notifyObservers(SUCCESSOR_LIST_CHANGE_EVENT);
+        return inLocalKeyRange(target) ? self_reference : route(target);
     }
 
     /**
-     * Returns the closest preceding node from the finger table, or the successor if there is no such node in the finger table.
+     * Returns the owner of a key if it lies in this node's key range or in that of a node in the successor list, in which case no remote calls are needed.
      *
      * @param k a key
-     * @return the peer node whose key most closely precedes k
-     * @throws RemoteChordException
+     * @return the owner of the key, or null if it can't be determined locally
      */
-    private IChordRemoteReference closestPrecedingNode(final IKey k) throws RPCException {
+    IChordRemoteReference knownOwner(final FixedWidthKey target) {
 
         try {
-            return finger_table.closestPrecedingNode(k);
-        } catch (final NoPrecedingNodeException e) {
-            return successor;
+            if (inLocalKeyRangeIfKnown(target)) { return self_reference; }
+
+            // Each node in the successor list owns the keys after the previous node, up to its own key.
+            FixedWidthKey previous_key = key;
+            for (final IChordRemoteReference successor : routing_state.get().getSuccessorList()) {
+
+                final FixedWidthKey successor_key = FixedWidthKey.of(successor);
+                if (FixedWidthKey.inSegment(previous_key, target, successor_key)) { return successor; }
+                previous_key = successor_key;
+            }
+        }
+        catch (final RPCException e) {
+            // A key couldn't be accessed, so the owner isn't known.
         }
+        return null;
     }
 
     /**
-     * Precondition: key is not in local key range.
+     * Returns the cached owner of the given key, after confirming with the owner that the key still lies in its key range.
+     * Entries that can't be confirmed are removed from the cache.
+     *
+     * @param k a key
+     * @return the owner of the key, or null if there is no confirmed cached owner
      */
-    private IChordRemoteReference findSuccessor(final IKey key) throws RPCException {
-
-        assert !inLocalKeyRange(key);
-
-        // Get the first hop.
-        NextHopResult next_hop = nextHop(key);
+    IChordRemoteReference confirmedCachedOwner(final FixedWidthKey k) {
 
-        // Keep track of the hop before the next one, in case the next one turns out to have failed
-        // and the one before it has to be notified so it can update its finger table.
-        IChordRemote current_hop = this;
+        final IChordRemoteReference cached_owner = ownership_cache.getOwner(k);
+        if (cached_owner == null) { return null; }
 
-        while (!next_hop.isFinalHop()) {
-            try {
-                // Next hop mustn't be this node, or further from us than the target.
-                assert !this.key.equals(next_hop.getNode().getCachedKey());
-                assert !RingArithmetic.ringDistanceFurther(this.key, next_hop.getNode().getCachedKey(), key);
+        try {
+            final FixedWidthKey owner_key = FixedWidthKey.of(cached_owner);
+            final IChordRemoteReference owner_predecessor = cached_owner.getRemote().getPredecessor();
 
-                // Remember the previous value of next_hop.
-                final IChordRemote previous_next_hop = next_hop.getNode().getRemote();
+            if (owner_predecessor != null) {
 
-                next_hop = previous_next_hop.nextHop(key);
+                final FixedWidthKey owner_predecessor_key = FixedWidthKey.of(owner_predecessor);
+                if (FixedWidthKey.inSegment(owner_predecessor_key, k, owner_key)) {
 
-                current_hop = previous_next_hop;
-            } catch (final RPCException e) {
-                current_hop.notifyFailure(next_hop.getNode());
-                throw new RPCException("hop failure on node " + local_address + " trying to contact node " + next_hop.getNode().getCachedAddress(), e);
-            } catch (final RuntimeException e) {
-                current_hop.notifyFailure(next_hop.getNode());
-                throw e;
+                    // Refresh the interval with the owner's current view of its key range.
+                    ownership_cache.put(owner_predecessor_key, owner_key, cached_owner);
+                    return cached_owner;
+                }
             }
+            ownership_cache.remove(owner_key);
         }
-        return next_hop.getNode();
+        catch (final RPCException e) {
+            removeFromOwnershipCache(cached_owner);
+        }
+        return null;
     }
 
-    private void startMaintenanceThread() {
+    SuccessorList getRealSuccessorList() {
 
-        maintenance_thread.start();
+        return successor_list;
     }
 
-    private void shutdownMaintenanceThread() {
+    LivenessCache getLivenessCache() {
+
+        return liveness_cache;
+    }
 
-        maintenance_thread.shutdown();
+    /**
+     * Returns the protocol version of the given node, as recently reported by it.
+     *
+     * @param node a node
+     * @return the node's protocol version, or {@link IChordRemote#BASELINE_PROTOCOL_VERSION} if it didn't report one
+     */
+    int protocolVersionOf(final IChordRemoteReference node) {
+
+        return peer_versions.versionOf(node);
+    }
+
+    /**
+     * Asks the given node for the next hop towards a key. Nodes that support it are asked for the detailed next hop, with alternatives and
+     * membership deltas, and nodes of the baseline protocol version for the next hop alone.
+     */
+    private NextHopResult nextHopFrom(final IChordRemoteReference node, final IKey k) throws RPCException {
+
+        final IChordRemote remote = node.getRemote();
+        return protocolVersionOf(node) > BASELINE_PROTOCOL_VERSION ? remote.nextHopDetailed(k) : remote.nextHop(k);
+    }
+
+    /**
+     * Asks the given node for the next hops towards a list of keys, in a single call if the node supports it, and otherwise one key at a time.
+     */
+    private List<NextHopResult> nextHopsFrom(final IChordRemoteReference node, final List<IKey> keys) throws RPCException {
+
+        if (protocolVersionOf(node) > BASELINE_PROTOCOL_VERSION) { return node.getRemote().nextHops(keys); }
+
+        final List<NextHopResult> results = new ArrayList<NextHopResult>();
+        for (final IKey k : keys) {
+            results.add(node.getRemote().nextHop(k));
+        }
+        return results;
+    }
+
+    FingerTable getFingerTable() {
+
+        return finger_table;
+    }
+
+    boolean ownAddressMaintenanceEnabled() {
+
+        return own_address_maintenance_enabled;
+    }
+
+    boolean predecessorMaintenanceEnabled() {
+
+        return predecessor_maintenance_enabled;
+    }
+
+    boolean stabilizationEnabled() {
+
+        return stabilization_enabled;
+    }
+
+    boolean fingerTableMaintenanceEnabled() {
+
+        return finger_table_maintenance_enabled;
+    }
+
+    void setAddress(final InetSocketAddress local_address) {
+
+        this.local_address = local_address;
+    }
+
+    /**
+     * Returns the recent membership deltas to be piggybacked on a call to another node.
+     *
+     * @return the deltas, or an empty list if piggybacking is disabled
+     */
+    List<MembershipDelta> getMembershipDeltas() {
+
+        if (!membership_piggybacking_enabled) { return Collections.<MembershipDelta> emptyList(); }
+        return membership_delta_log.piggyback();
+    }
+
+    /**
+     * Records a membership change observed by this node, to be piggybacked on subsequent calls.
+     *
+     * @param kind the kind of change
+     * @param node the node that joined, failed or changed its address
+     */
+    void recordMembershipChange(final MembershipDelta.Kind kind, final IChordRemoteReference node) {
+
+        if (membership_piggybacking_enabled) {
+            membership_delta_log.record(kind, node);
+        }
+    }
+
+    /**
+     * Applies membership deltas received from another node. A joined node, or one with a new address, is learned as a routing candidate.
+     * A node reported to have failed is pinged first, unless it is recently known to be live, and only removed as for
+     * {@link #notifyFailure(IChordRemoteReference)} if it doesn't answer. Deltas already known to this node are ignored, as are those
+     * concerning this node itself. Stabilization is brought forward only if a delta concerns a node adjacent to this one.
+     *
+     * @param membership_deltas the received deltas
+     */
+    void applyMembershipDeltas(final List<MembershipDelta> membership_deltas) {
+
+        if (!membership_piggybacking_enabled) { return; }
+
+        for (final MembershipDelta delta : membership_deltas) {
+
+            final IChordRemoteReference node = delta.getNode();
+
+            try {
+                final FixedWidthKey node_key = FixedWidthKey.of(node);
+                if (node_key.equals(key)) {
+                    continue;
+                }
+
+                if (delta.getKind() == MembershipDelta.Kind.FAILED) {
+                    if (!membership_delta_log.isKnown(delta) && !liveness_cache.isKnownLive(node)) {
+                        confirmFailure(delta, node_key);
+                    }
+                }
+                else if (membership_delta_log.receive(delta)) {
+                    if (delta.getKind() == MembershipDelta.Kind.ADDRESS_CHANGED) {
+                        ownership_cache.remove(node_key);
+                    }
+                    neighbour_cache.learn(node);
+
+                    if (isAdjacent(node_key, routing_state.get())) {
+                        maintenance.activityDetected();
+                    }
+                }
+            }
+            catch (final RPCException e) {
+                // Key not accessible, so the delta can't be applied.
+            }
+        }
+    }
+
+    void handlePredecessorError() {
+
+        predecessor_error_count++;
+
+        if (predecessor_error_count > PREDECESSOR_ERROR_ACTION_THRESHOLD) {
+            Diagnostic.trace("resetting predecessor after " + predecessor_error_count + " errors");
+            setPredecessor(null);
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Sets data structures for a new ring.
+     */
+    private void createRing() {
+
+        setPredecessor(null);
+        setSuccessor(self_reference);
+        successor_list.clear();
+        setChanged();
+        notifyObservers(SUCCESSOR_LIST_CHANGE_EVENT);
+    }
+
+    /**
+     * Returns the closest preceding node from the finger table, the successor list and the learned neighbours, or the successor if there
+     * is no such node in any of them. Successor list entries are often closer to the key than any finger in the last few hops, and shortly
+     * after joining when few fingers have been fixed.
+     *
+     * @param k a key
+     * @param state the routing state snapshot
+     * @return the peer node whose key most closely precedes k
+     * @throws RPCException if an error occurs in accessing a node's key
+     */
+    private IChordRemoteReference closestPrecedingNode(final FixedWidthKey k, final RoutingState state) throws RPCException {
+
+        IChordRemoteReference routing_node;
+        try {
+            routing_node = state.closestPrecedingNode(k);
+        } catch (final NoPrecedingNodeException e) {
+            routing_node = null;
+        }
+
+        // A learned neighbour is only used if it gets closer to the key. The routing state's node then remains available as an alternative.
+        final IChordRemoteReference learned_node = neighbour_cache.closestPrecedingNode(k);
+        if (learned_node != null) {
+
+            if (routing_node == null) { return learned_node; }
+
+            if (FixedWidthKey.compareDistances(key, FixedWidthKey.of(learned_node), FixedWidthKey.of(routing_node)) > 0) { return learned_node; }
+        }
+
+        return routing_node != null ? routing_node : state.getSuccessor();
+    }
+
+    /**
+     * Records the key range of the owner given by a final hop, which runs from the node that gave the hop, provided that node gave the owner as its successor.
+     * A final hop given because the owner's key is equal to the target key says nothing about the owner's predecessor, so isn't recorded.
+     */
+    private void cacheOwnership(final FixedWidthKey key, final HopResponse final_hop) throws RPCException {
+
+        final IChordRemoteReference owner = final_hop.result.getNode();
+        final FixedWidthKey owner_key = FixedWidthKey.of(owner);
+
+        if (!owner_key.equals(key)) {
+            ownership_cache.put(FixedWidthKey.of(final_hop.responder), owner_key, owner);
+        }
+    }
+
+    /**
+     * Removes the learned ownership intervals that are split by a new neighbour. A failed neighbour's own interval is removed when the failure
+     * is detected, and the intervals elsewhere on the ring are left to be confirmed when used.
+     */
+    private void invalidateOwnership(final IChordRemoteReference node) {
+
+        try {
+            if (node != null) {
+                ownership_cache.invalidate(FixedWidthKey.of(node));
+            }
+        }
+        catch (final RPCException e) {
+            // Key not known, so the node can't be placed.
+        }
+    }
+
+    private void removeFromOwnershipCache(final IChordRemoteReference node) {
+
+        try {
+            ownership_cache.remove(FixedWidthKey.of(node));
+        }
+        catch (final RPCException e) {
+            // Key not known, so it can't be in the cache.
+        }
+    }
+
+    /**
+     * Routes a lookup by whichever routing mode is enabled, sampling it for tracing if it is routed iteratively.
+     * Precondition: key is not in local key range.
+     */
+    private IChordRemoteReference route(final FixedWidthKey target) throws RPCException {
+
+        if (recursive_lookup_enabled) { return forwardLookup(target); }
+        if (lookup_parallelism > 1) { return findSuccessorInParallel(target); }
+
+        final LookupTrace trace = sampleLookupTrace(target);
+        IChordRemoteReference owner = null;
+        try {
+            owner = findSuccessor(target, trace);
+            return owner;
+        }
+        finally {
+            if (trace != null) {
+                trace.complete(owner);
+                recordSampledLookupTrace(trace);
+            }
+        }
+    }
+
+    /**
+     * Routes a lookup iteratively. If a hop fails, the node that gave it is notified, and the lookup backs off to that node's alternative
+     * next hops, asking it for a new next hop once they are exhausted, and then to earlier nodes on the route. Failed nodes are excluded
+     * for the rest of the lookup, so it only fails if no route avoiding them can be found.
+     * Precondition: key is not in local key range.
+     *
+     * @param trace a trace to which the remote hops are added, or null
+     */
+    private IChordRemoteReference findSuccessor(final FixedWidthKey key, final LookupTrace trace) throws RPCException {
+
+        return findFinalHop(key, trace).getNode();
+    }
+
+    /**
+     * Routes a lookup iteratively as for {@link #findSuccessor(FixedWidthKey, LookupTrace)}, returning the final hop, whose alternatives are the
+     * owner's successors as known to the node that gave it.
+     * Precondition: key is not in local key range.
+     */
+    private NextHopResult findFinalHop(final FixedWidthKey key, final LookupTrace trace) throws RPCException {
+
+        assert !inLocalKeyRange(key);
+
+        // Nodes not to be used as next hops for the rest of the lookup. This node is excluded since routing back to it would make no progress.
+        final Set<FixedWidthKey> excluded_nodes = new HashSet<FixedWidthKey>();
+        excluded_nodes.add(this.key);
+
+        // The current next hop, and the node that gave it. When it gives the final hop, the key lies between that node and the result.
+        HopResponse current = new HopResponse(self_reference, nextHop(key));
+
+        // The earlier nodes on the route and the next hops they gave, most recent first, to which the lookup can back off.
+        final Deque<HopResponse> previous_hops = new ArrayDeque<HopResponse>();
+
+        int number_of_failures = 0;
+
+        while (!current.result.isFinalHop()) {
+
+            final IChordRemoteReference next_hop = current.result.getNode();
+            final long hop_start_time = System.nanoTime();
+            try {
+                // Next hop mustn't be further from us than the target.
+                assert FixedWidthKey.compareDistances(this.key, FixedWidthKey.of(next_hop), key) <= 0;
+
+                // The response may come from a backup request to an alternative next hop, if the next hop is slow to answer.
+                final HopResponse response = hedgedNextHop(key, current.result);
+                if (trace != null) {
+                    trace.addHop(response.responder, System.nanoTime() - hop_start_time);
+                }
+
+                final NextHopResult usable_result = withoutExcludedNodes(response.result, excluded_nodes);
+
+                previous_hops.push(current);
+                learnNeighbours(response);
+
+                if (usable_result != null) {
+                    current = new HopResponse(response.responder, usable_result);
+                }
+                else {
+                    // The responder only knows of excluded next hops, so it's no use for the rest of the lookup.
+                    excluded_nodes.add(FixedWidthKey.of(response.responder));
+                    current = backOff(key, previous_hops, excluded_nodes);
+                }
+            }
+            catch (final RPCException e) {
+
+                if (trace != null) {
+                    trace.addFailedHop(next_hop, System.nanoTime() - hop_start_time);
+                }
+
+                number_of_failures++;
+                final FixedWidthKey next_hop_key = FixedWidthKey.of(next_hop);
+                excluded_nodes.add(next_hop_key);
+                neighbour_cache.remove(next_hop_key);
+                removeFromOwnershipCache(next_hop);
+                notifyHopFailure(current.responder, next_hop);
+
+                if (number_of_failures > MAX_FAILED_HOPS_PER_LOOKUP) { throw new RPCException("too many hop failures on node " + local_address + " trying to contact node " + next_hop.getCachedAddress(), e); }
+
+                previous_hops.push(current);
+                current = backOff(key, previous_hops, excluded_nodes);
+            }
+            catch (final RuntimeException e) {
+                removeFromOwnershipCache(next_hop);
+                notifyHopFailure(current.responder, next_hop);
+                throw e;
+            }
+
+            if (current == null) { throw new RPCException("no route from node " + local_address + " to key " + key + " avoiding " + (excluded_nodes.size() - 1) + " excluded nodes"); }
+        }
+
+        cacheOwnership(key, current);
+
+        return current.result;
+    }
+
+    /**
+     * Adds distinct nodes to a replica set, in order, until it reaches the given size or a node already in it is reached, which means
+     * that the walk has come back round the ring.
+     *
+     * @return true if all the nodes were added, so the walk may be continued from the last one
+     */
+    private static boolean addReplicas(final List<IChordRemoteReference> nodes, final int number_of_replicas, final List<IChordRemoteReference> replicas, final Set<FixedWidthKey> replica_keys) throws RPCException {
+
+        for (final IChordRemoteReference node : nodes) {
+
+            if (replicas.size() >= number_of_replicas || !replica_keys.add(FixedWidthKey.of(node))) { return false; }
+            replicas.add(node);
+        }
+        return !nodes.isEmpty();
+    }
+
+    /**
+     * Returns a new trace for a lookup if it is selected for sampling, or null otherwise.
+     */
+    private LookupTrace sampleLookupTrace(final FixedWidthKey key) {
+
+        final double sampling_rate = lookup_trace_sampling_rate;
+        return sampling_rate > 0 && ThreadLocalRandom.current().nextDouble() < sampling_rate ? new LookupTrace(key.toKey()) : null;
+    }
+
+    private void recordSampledLookupTrace(final LookupTrace trace) {
+
+        synchronized (sampled_lookup_traces) {
+            if (sampled_lookup_traces.size() >= LOOKUP_TRACE_BUFFER_SIZE) {
+                sampled_lookup_traces.removeFirst();
+            }
+            sampled_lookup_traces.addLast(trace);
+        }
+    }
+
+    /**
+     * Finds a replacement for the most recent next hop on the route, which has failed or is of no use. The replacement is the first alternative
+     * next hop that isn't excluded, or otherwise a new next hop from the node that gave the failed one. If that node has none, it is excluded
+     * in turn and the lookup backs off to the node before it.
+     *
+     * @return the replacement next hop and the node that gave it, or null if the lookup has backed off past this node
+     */
+    private HopResponse backOff(final FixedWidthKey key, final Deque<HopResponse> previous_hops, final Set<FixedWidthKey> excluded_nodes) throws RPCException {
+
+        while (!previous_hops.isEmpty()) {
+
+            final HopResponse failed = previous_hops.pop();
+            final IChordRemoteReference responder = failed.responder;
+
+            final NextHopResult alternative = withoutExcludedNodes(failed.result, excluded_nodes);
+            if (alternative != null) { return new HopResponse(responder, alternative); }
+
+            try {
+                // The responder has been notified of the failure, so may now give a different next hop.
+                final NextHopResult new_result = FixedWidthKey.of(responder).equals(this.key) ? nextHop(key) : nextHopFrom(responder, key.toKey());
+                final NextHopResult usable_result = withoutExcludedNodes(new_result, excluded_nodes);
+
+                if (usable_result != null) { return new HopResponse(responder, usable_result); }
+            }
+            catch (final RPCException e) {
+                removeFromOwnershipCache(responder);
+            }
+
+            // Back off to the node before the responder, unless the responder is this node.
+            final FixedWidthKey responder_key = FixedWidthKey.of(responder);
+            if (responder_key.equals(this.key)) { return null; }
+            excluded_nodes.add(responder_key);
+        }
+        return null;
+    }
+
+    /**
+     * Returns a next hop result with excluded nodes removed. If the next hop itself is excluded, it is replaced by the first alternative
+     * that isn't. Final hops are returned unchanged, since the final hop is the owner of the key.
+     *
+     * @return the result without excluded nodes, or null if the next hop and all its alternatives are excluded
+     */
+    private static NextHopResult withoutExcludedNodes(final NextHopResult result, final Set<FixedWidthKey> excluded_nodes) throws RPCException {
+
+        if (result.isFinalHop()) { return result; }
+
+        final List<IChordRemoteReference> candidates = new ArrayList<IChordRemoteReference>();
+        candidates.add(result.getNode());
+        candidates.addAll(result.getAlternatives());
+
+        final List<IChordRemoteReference> usable_candidates = new ArrayList<IChordRemoteReference>();
+        for (final IChordRemoteReference candidate : candidates) {
+            if (!excluded_nodes.contains(FixedWidthKey.of(candidate))) {
+                usable_candidates.add(candidate);
+            }
+        }
+
+        if (usable_candidates.isEmpty()) { return null; }
+        if (usable_candidates.size() == candidates.size()) { return result; }
+
+        return new NextHopResult(usable_candidates.get(0), false, usable_candidates.subList(1, usable_candidates.size()));
+    }
+
+    /**
+     * Records the node that answered a hop, which is known to be live, and the next hop it gave.
+     */
+    private void learnNeighbours(final HopResponse response) {
+
+        neighbour_cache.learn(response.responder);
+        neighbour_cache.learn(response.result.getNode());
+        applyMembershipDeltas(response.result.getMembershipDeltas());
+    }
+
+    /**
+     * Removes a failed node from the routing state and caches.
+     */
+    private void removeFailedNode(final IChordRemoteReference node) throws RPCException {
+
+        finger_table.fingerFailure(node);
+
+        final FixedWidthKey failed_key = FixedWidthKey.of(node);
+        routing_state.updateAndGet(new UnaryOperator<RoutingState>() {
+
+            @Override
+            public RoutingState apply(final RoutingState state) {
+
+                return state.withoutLiveSuccessor(failed_key);
+            }
+        });
+
+        ownership_cache.remove(failed_key);
+        neighbour_cache.remove(failed_key);
+    }
+
+    /**
+     * Pings a node reported by another node to have failed. If the node doesn't answer, it is removed from the routing state and caches,
+     * and the report is passed on; otherwise the report is dropped. Either way, the liveness cache records the outcome.
+     */
+    private void confirmFailure(final MembershipDelta delta, final FixedWidthKey node_key) {
+
+        final IChordRemoteReference node = delta.getNode();
+
+        liveness_cache.probe(node).whenComplete(new BiConsumer<Void, Throwable>() {
+
+            @Override
+            public void accept(final Void result, final Throwable error) {
+
+                if (error != null && membership_delta_log.receive(delta)) {
+                    try {
+                        removeFailedNode(node);
+                        if (isAdjacent(node_key, routing_state.get())) {
+                            maintenance.activityDetected();
+                        }
+                    }
+                    catch (final RPCException e) {
+                        // Key not accessible, so the node can't be placed.
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns true if the given key lies between this node's predecessor and its successor, so that a node with that key would be one of its neighbours.
+     */
+    private boolean isAdjacent(final FixedWidthKey k, final RoutingState state) throws RPCException {
+
+        final FixedWidthKey predecessor_key = state.getPredecessorKey();
+        final FixedWidthKey successor_key = state.getSuccessorKey();
+
+        return predecessor_key == null || successor_key == null || FixedWidthKey.inSegment(predecessor_key, k, successor_key);
+    }
+
+    private void notifyHopFailure(final IChordRemoteReference responder, final IChordRemoteReference failed_node) throws RPCException {
+
+        if (FixedWidthKey.of(responder).equals(this.key)) {
+            notifyFailure(failed_node);
+        }
+        else {
+            try {
+                responder.getRemote().notifyFailure(failed_node);
+            }
+            catch (final RPCException e) {
+                // The responder may itself have failed, which will be detected if the lookup backs off to it.
+            }
+        }
+    }
+
+    /**
+     * Routes a lookup iteratively, issuing each hop to several candidates in parallel and proceeding with the first valid answer.
+     * The candidates for each hop are the next hop given by the previous hop and its alternatives, so a slow or failed node on
+     * the route only stalls the lookup if all the candidates for a hop are slow or fail.
+     * Precondition: key is not in local key range.
+     */
+    private IChordRemoteReference findSuccessorInParallel(final FixedWidthKey key) throws RPCException {
+
+        assert !inLocalKeyRange(key);
+
+        final int parallelism = lookup_parallelism;
+
+        HopResponse response = new HopResponse(self_reference, nextHop(key));
+
+        while (!response.result.isFinalHop()) {
+            response = firstValidNextHop(key, hopCandidates(response.result, parallelism));
+            learnNeighbours(response);
+        }
+
+        cacheOwnership(key, response);
+
+        return response.result.getNode();
+    }
+
+    /**
+     * Issues a hop to the given candidates in parallel, and returns the first valid answer. The calls to the other candidates are then cancelled,
+     * so that those not yet started don't take up threads needed by later hops, though calls already in progress run until they complete or time out.
+     */
+    private HopResponse firstValidNextHop(final FixedWidthKey key, final List<IChordRemoteReference> candidates) throws RPCException {
+
+        final Map<IChordRemoteReference, CompletableFuture<NextHopResult>> calls = new LinkedHashMap<IChordRemoteReference, CompletableFuture<NextHopResult>>();
+        try {
+            for (final IChordRemoteReference candidate : candidates) {
+                calls.put(candidate, nextHopAsync(candidate, key.toKey(), parallel_hop_executor));
+            }
+            return firstValidResponse(calls);
+        }
+        finally {
+            cancelCalls(calls);
+        }
+    }
+
+    /**
+     * Issues a hop to the given next hop. If the next hop hasn't answered within its usual latency, a backup request is sent to the first
+     * alternative next hop and the first valid answer from either is used, after which the other call is cancelled. The backup request is made
+     * on threads of its own, so it doesn't wait behind slow calls to next hops. Hops to nodes with too little latency history aren't hedged.
+     */
+    private HopResponse hedgedNextHop(final FixedWidthKey key, final NextHopResult next_hop) throws RPCException {
+
+        final IChordRemoteReference primary = next_hop.getNode();
+        final IChordRemote primary_remote = primary.getRemote();
+
+        final long hedge_delay = primary_remote instanceof ChordRemoteProxy ? ((ChordRemoteProxy) primary_remote).getNextHopLatencyPercentile(HEDGE_PERCENTILE) : LatencyTracker.UNKNOWN_LATENCY;
+
+        if (hedge_delay == LatencyTracker.UNKNOWN_LATENCY || next_hop.getAlternatives().isEmpty()) { return new HopResponse(primary, nextHopFrom(primary, key.toKey())); }
+
+        final Map<IChordRemoteReference, CompletableFuture<NextHopResult>> calls = new LinkedHashMap<IChordRemoteReference, CompletableFuture<NextHopResult>>();
+        final CompletableFuture<NextHopResult> primary_call = nextHopAsync(primary, key.toKey(), hedged_hop_executor);
+        calls.put(primary, primary_call);
+
+        try {
+            return new HopResponse(primary, primary_call.get(hedge_delay, TimeUnit.NANOSECONDS));
+        }
+        catch (final TimeoutException e) {
+
+            final IChordRemoteReference backup = next_hop.getAlternatives().get(0);
+            calls.put(backup, nextHopAsync(backup, key.toKey(), hedge_executor));
+
+            return firstValidResponse(calls);
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RPCException("interrupted on node " + local_address + " while waiting for next hop", e);
+        }
+        catch (final ExecutionException e) {
+            throw rpcExceptionFrom(e.getCause());
+        }
+        finally {
+            cancelCalls(calls);
+        }
+    }
+
+    /**
+     * Returns the first valid answer from the given calls to candidate next hops, waiting no longer than {@link #HOP_RESPONSE_TIMEOUT}.
+     * Candidates that fail are notified to this node, but those whose calls are cancelled are not.
+     */
+    private HopResponse firstValidResponse(final Map<IChordRemoteReference, CompletableFuture<NextHopResult>> calls) throws RPCException {
+
+        final CompletableFuture<HopResponse> first_valid_response = new CompletableFuture<HopResponse>();
+        final AtomicInteger number_of_failures = new AtomicInteger();
+
+        for (final Map.Entry<IChordRemoteReference, CompletableFuture<NextHopResult>> call : calls.entrySet()) {
+
+            final IChordRemoteReference candidate = call.getKey();
+
+            call.getValue().whenComplete(new BiConsumer<NextHopResult, Throwable>() {
+
+                @Override
+                public void accept(final NextHopResult result, final Throwable error) {
+
+                    if (error == null && result != null && result.getNode() != null) {
+                        first_valid_response.complete(new HopResponse(candidate, result));
+                    }
+                    else if (!(error instanceof CancellationException)) {
+                        notifyFailureQuietly(candidate);
+
+                        if (number_of_failures.incrementAndGet() == calls.size()) {
+                            first_valid_response.completeExceptionally(error != null ? error : new RPCException("invalid next hop from node " + candidate.getCachedAddress()));
+                        }
+                    }
+                }
+            });
+        }
+
+        try {
+            return first_valid_response.get(HOP_RESPONSE_TIMEOUT, TimeUnit.NANOSECONDS);
+        }
+        catch (final TimeoutException e) {
+            throw new RPCException("no answer on node " + local_address + " from " + calls.size() + " candidate nodes within " + TimeUnit.NANOSECONDS.toMillis(HOP_RESPONSE_TIMEOUT) + "ms", e);
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RPCException("interrupted on node " + local_address + " while waiting for next hop", e);
+        }
+        catch (final ExecutionException e) {
+            throw new RPCException("hop failure on node " + local_address + " trying to contact " + calls.size() + " candidate nodes", rpcExceptionFrom(e.getCause()));
+        }
+    }
+
+    /**
+     * Returns the RPC exception underlying the failure of an asynchronous call.
+     */
+    private static RPCException rpcExceptionFrom(final Throwable error) {
+
+        final Throwable cause = unwrap(error);
+        return cause instanceof RPCException ? (RPCException) cause : new RPCException(cause);
+    }
+
+    /**
+     * Returns the cause of an exception that wraps the failure of an asynchronous computation, or otherwise the exception itself.
+     */
+    private static Throwable unwrap(final Throwable error) {
+
+        return (error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private static void cancelCalls(final Map<IChordRemoteReference, CompletableFuture<NextHopResult>> calls) {
+
+        for (final CompletableFuture<NextHopResult> call : calls.values()) {
+            call.cancel(false);
+        }
+    }
+
+    private void notifyFailureQuietly(final IChordRemoteReference node) {
+
+        try {
+            notifyFailure(node);
+        }
+        catch (final RPCException e) {
+            // Key not known, so the node can't be in the routing state.
+        }
+    }
+
+    /**
+     * Returns the next hop in a result followed by its alternatives, up to the given number of candidates.
+     */
+    private static List<IChordRemoteReference> hopCandidates(final NextHopResult next_hop, final int parallelism) {
+
+        final List<IChordRemoteReference> candidates = new ArrayList<IChordRemoteReference>();
+        candidates.add(next_hop.getNode());
+
+        for (final IChordRemoteReference alternative : next_hop.getAlternatives()) {
+            if (candidates.size() >= parallelism) {
+                break;
+            }
+            candidates.add(alternative);
+        }
+        return candidates;
+    }
+
+    /**
+     * Returns the fingers and successors other than the given next hop that precede the given key, with the closest to the key first.
+     */
+    private static List<IChordRemoteReference> nextHopAlternatives(final FixedWidthKey k, final IChordRemoteReference next_hop, final RoutingState state) {
+
+        // The routing index holds each node once, in order of distance from this node, so the nodes are added closest to the key first.
+        final List<IChordRemoteReference> preceding_nodes = new ArrayList<IChordRemoteReference>();
+        state.addPrecedingNodes(k, MAX_NEXT_HOP_ALTERNATIVES + 1, preceding_nodes);
+
+        final List<IChordRemoteReference> alternatives = new ArrayList<IChordRemoteReference>();
+        for (final IChordRemoteReference node : preceding_nodes) {
+            if (alternatives.size() >= MAX_NEXT_HOP_ALTERNATIVES) {
+                break;
+            }
+            if (node != next_hop) {
+                alternatives.add(node);
+            }
+        }
+        return alternatives;
+    }
+
+    /**
+     * Returns the entries in the successor list after the given successor.
+     */
+    private static List<IChordRemoteReference> successorsAfter(final IChordRemoteReference successor, final RoutingState state) {
+
+        final List<IChordRemoteReference> list = state.getSuccessorList();
+        final int index = list.indexOf(successor);
+
+        return index >= 0 ? new ArrayList<IChordRemoteReference>(list.subList(index + 1, list.size())) : Collections.<IChordRemoteReference> emptyList();
+    }
+
+    /**
+     * Routes a lookup by forwarding it to the next hop, which continues the routing in the same way.
+     * Precondition: key is not in local key range.
+     */
+    private IChordRemoteReference forwardLookup(final FixedWidthKey key) throws RPCException {
+
+        final NextHopResult next_hop = nextHop(key);
+
+        if (next_hop.isFinalHop()) { return next_hop.getNode(); }
+
+        try {
+            return next_hop.getNode().getRemote().lookupRecursive(key.toKey());
+        }
+        catch (final RPCException e) {
+            notifyFailure(next_hop.getNode());
+            throw new RPCException("recursive hop failure on node " + local_address + " trying to contact node " + next_hop.getNode().getCachedAddress(), e);
+        }
+    }
+
+    /**
+     * Checks whether the given key lies in this node's key range, treating an unknown key range as not containing the key.
+     * This allows an intermediate node on a recursive route to forward the lookup even if it currently has no predecessor.
+     */
+    private boolean inLocalKeyRangeIfKnown(final FixedWidthKey k) throws RPCException {
+
+        try {
+            return inLocalKeyRange(k);
+        }
+        catch (final KeyUnknownException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Records the owner of a key if the given hop is the final one, or otherwise adds the key to the partition for that hop.
+     */
+    private static void addToPartition(final IKey key, final NextHopResult next_hop, final Map<IKey, IChordRemoteReference> owners, final Map<IChordRemoteReference, List<IKey>> partitions) {
+
+        if (next_hop.isFinalHop()) {
+            owners.put(key, next_hop.getNode());
+        }
+        else {
+            List<IKey> partition = partitions.get(next_hop.getNode());
+            if (partition == null) {
+                partition = new ArrayList<IKey>();
+                partitions.put(next_hop.getNode(), partition);
+            }
+            partition.add(key);
+        }
+    }
+
+    /**
+     * Continues an asynchronous lookup from the given next hop, issuing the following hop when the current one answers.
+     * Each hop is a continuation of the previous one, so the calling thread is not held while waiting for a remote node to respond,
+     * but the blocking call to each hop holds a thread of this node's asynchronous lookup executor.
+     */
+    private void continueLookupAsync(final IKey key, final IChordRemote current_hop, final NextHopResult next_hop, final CompletableFuture<IChordRemoteReference> result) {
+
+        // The lookup may have been cancelled or timed out, in which case no further hops are issued.
+        if (result.isDone()) { return; }
+
+        if (next_hop.isFinalHop()) {
+            result.complete(next_hop.getNode());
+            return;
+        }
+
+        final IChordRemoteReference next_node = next_hop.getNode();
+
+        nextHopAsync(next_node, key, async_lookup_executor).whenComplete(new BiConsumer<NextHopResult, Throwable>() {
+
+            @Override
+            public void accept(final NextHopResult hop_result, final Throwable error) {
+
+                if (error == null) {
+                    continueLookupAsync(key, next_node.getRemote(), hop_result, result);
+                }
+                else {
+                    result.completeExceptionally(new RPCException("hop failure on node " + local_address + " trying to contact node " + next_hop.getNode().getCachedAddress(), unwrap(error)));
+                    notifyFailureAsync(current_hop, next_hop.getNode());
+                }
+            }
+        });
+    }
+
+    /**
+     * Fills the finger table in the background, so that joining doesn't wait for the lookups, and notifies observers if any fingers were changed.
+     */
+    private void bootstrapFingerTable(final IChordRemoteReference successor) {
+
+        try {
+            async_lookup_executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    finger_table.bootstrap(successor).thenAccept(new Consumer<Boolean>() {
+
+                        @Override
+                        public void accept(final Boolean changed) {
+
+                            if (changed) {
+                                setChanged();
+                                notifyObservers(FINGER_TABLE_CHANGE_EVENT);
+                            }
+                        }
+                    });
+                }
+            });
+        }
+        catch (final RejectedExecutionException e) {
+            // This node has been shut down, so there's no need for fingers.
+        }
+    }
+
+    /**
+     * Notifies the given node of the failure of another. The notification of a remote node is a blocking call, so it is made as a separate
+     * task rather than on the thread that observed the failure, which may be completing other asynchronous calls.
+     */
+    private void notifyFailureAsync(final IChordRemote node, final IChordRemoteReference failed_node) {
+
+        if (node == this) {
+            notifyFailureQuietly(failed_node);
+            return;
+        }
+
+        try {
+            async_lookup_executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    try {
+                        node.notifyFailure(failed_node);
+                    }
+                    catch (final RPCException e) {
+                        Diagnostic.trace("error notifying failure of " + failed_node.getCachedAddress() + ": " + e.getMessage());
+                    }
+                }
+            });
+        }
+        catch (final RejectedExecutionException e) {
+            // This node has been shut down, so there's no need to pass on the failure.
+        }
+    }
+
+    /**
+     * Returns the next hop given by a node, making a call to a remote node on a thread of the given executor. The underlying call blocks,
+     * so this offloads it from the calling thread, along with any query of the node's protocol version, rather than making it non-blocking.
+     * Cancelling the result before the call has started prevents it from being made, but cancelling it afterwards does not abort the call.
+     */
+    private CompletableFuture<NextHopResult> nextHopAsync(final IChordRemoteReference node, final IKey key, final Executor executor) {
+
+        final CompletableFuture<NextHopResult> result = new CompletableFuture<NextHopResult>();
+        try {
+            final IChordRemote remote = node.getRemote();
+
+            // Not a remote node, so the call can be made directly.
+            if (!(remote instanceof ChordRemoteProxy)) {
+                result.complete(remote.nextHop(key));
+                return result;
+            }
+
+            return CompletableFuture.supplyAsync(new Supplier<NextHopResult>() {
+
+                @Override
+                public NextHopResult get() {
+
+                    try {
+                        return nextHopFrom(node, key);
+                    }
+                    catch (final RPCException e) {
+                        throw new CompletionException(e);
+                    }
+                }
+            }, executor);
+        }
+        catch (final RPCException e) {
+            result.completeExceptionally(e);
+        }
+        catch (final RejectedExecutionException e) {
+            result.completeExceptionally(new RPCException("node has been shut down", e));
+        }
+        return result;
+    }
+
+    /**
+     * Creates a bounded executor for making blocking remote calls, whose threads are stopped when idle.
+     */
+    private static ThreadPoolExecutor newCallExecutor(final String name, final int threads) {
+
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, CALL_THREAD_IDLE_TIME, TimeUnit.NANOSECONDS, new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory(name));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static void scheduleLookupTimeout(final IKey key, final Duration timeout, final CompletableFuture<IChordRemoteReference> result) {
+
+        final ScheduledFuture<?> timeout_task = LOOKUP_TIMEOUT_SCHEDULER.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+
+                result.completeExceptionally(new TimeoutException("lookup of key " + key + " timed out"));
+            }
+        }, timeout.getLength(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+
+        // Discard the timeout task as soon as the lookup completes in any way.
+        result.whenComplete(new BiConsumer<IChordRemoteReference, Throwable>() {
+
+            @Override
+            public void accept(final IChordRemoteReference node, final Throwable error) {
+
+                timeout_task.cancel(false);
+            }
+        });
+    }
+
+    private void startMaintenance() {
+
+        maintenance.start();
+    }
+
+    private void shutdownMaintenance() {
+
+        maintenance.shutdown();
+    }
+
+    /**
+     * Binds together a next hop result and the node that gave it.
+     */
+    private static final class HopResponse {
+
+        private final IChordRemoteReference responder;
+        private final NextHopResult result;
+
+        HopResponse(final IChordRemoteReference responder, final NextHopResult result) {
+
+            this.responder = responder;
+            this.result = result;
+        }
     }
 }
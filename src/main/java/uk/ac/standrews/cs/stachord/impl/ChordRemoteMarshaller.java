@@ -45,8 +45,14 @@ public class ChordRemoteMarshaller extends Marshaller {
 
     private static final String IS_FINAL_HOP_KEY = "isfinalhop";
     private static final String NODE_KEY = "node";
+    private static final String ALTERNATIVES_KEY = "alternatives";
     private static final String PROXY_KEY = "proxy";
     private static final String KEY_KEY = "key";
+    private static final String PREDECESSOR_KEY = "predecessor";
+    private static final String SUCCESSOR_LIST_KEY = "successorlist";
+    private static final String MEMBERSHIP_DELTAS_KEY = "deltas";
+    private static final String KIND_KEY = "kind";
+    private static final String HOPS_KEY = "hops";
 
     /**
      * Serializes a chord remote reference to an object containing the key and the network address.
@@ -159,7 +165,7 @@ public class ChordRemoteMarshaller extends Marshaller {
     // -------------------------------------------------------------------------------------------------------
 
     /**
-     * Serializes a next hop result to an object containing the remote reference and the final hop flag.
+     * Serializes a next hop result to an object containing the remote reference and the final hop flag, as understood by nodes of every protocol version.
      *
      * @param next_hop_result the next hop result
      * @return a JSON object
@@ -184,6 +190,39 @@ public class ChordRemoteMarshaller extends Marshaller {
         }
     }
 
+    /**
+     * Serializes a next hop result to an object containing the remote reference, the final hop flag, the alternatives and the membership deltas.
+     * Nodes of the baseline protocol version can't read the additional fields.
+     *
+     * @param next_hop_result the next hop result
+     * @return a JSON object
+     * @throws JSONException
+     * @throws RPCException
+     */
+    public void serializeDetailedNextHopResult(final NextHopResult next_hop_result, final JSONWriter writer) throws JSONException, RPCException {
+
+        if (next_hop_result != null) {
+            writer.object();
+
+            writer.key(NODE_KEY);
+            serializeChordRemoteReference(next_hop_result.getNode(), writer);
+
+            writer.key(IS_FINAL_HOP_KEY);
+            writer.value(next_hop_result.isFinalHop());
+
+            writer.key(ALTERNATIVES_KEY);
+            serializeListChordRemoteReference(next_hop_result.getAlternatives(), writer);
+
+            writer.key(MEMBERSHIP_DELTAS_KEY);
+            serializeListMembershipDelta(next_hop_result.getMembershipDeltas(), writer);
+
+            writer.endObject();
+        }
+        else {
+            writer.value(null);
+        }
+    }
+
     /**
      * Deserializes a next hop result.
      *
@@ -204,9 +243,307 @@ public class ChordRemoteMarshaller extends Marshaller {
             reader.key(IS_FINAL_HOP_KEY);
             final boolean is_final_hop = reader.booleanValue();
 
+            // Nodes that predate alternatives and membership deltas send neither field.
+            List<IChordRemoteReference> alternatives = null;
+            if (!reader.have(JSONReader.ENDOBJECT)) {
+                reader.key(ALTERNATIVES_KEY);
+                alternatives = deserializeListChordRemoteReference(reader);
+            }
+            if (alternatives == null) {
+                alternatives = new ArrayList<IChordRemoteReference>();
+            }
+
+            final List<MembershipDelta> membership_deltas = deserializeOptionalMembershipDeltas(reader);
+
+            reader.endObject();
+
+            return new NextHopResult(chordRemoteReference, is_final_hop, alternatives, membership_deltas);
+        }
+        catch (final Exception e) {
+            throw new DeserializationException(e);
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Serializes a stabilize result to an object containing the predecessor, the successor list and the membership deltas.
+     *
+     * @param stabilize_result the stabilize result
+     * @throws JSONException
+     * @throws RPCException
+     */
+    public void serializeStabilizeResult(final StabilizeResult stabilize_result, final JSONWriter writer) throws JSONException, RPCException {
+
+        if (stabilize_result != null) {
+            writer.object();
+
+            writer.key(PREDECESSOR_KEY);
+            serializeChordRemoteReference(stabilize_result.getPredecessor(), writer);
+
+            writer.key(SUCCESSOR_LIST_KEY);
+            serializeListChordRemoteReference(stabilize_result.getSuccessorList(), writer);
+
+            writer.key(MEMBERSHIP_DELTAS_KEY);
+            serializeListMembershipDelta(stabilize_result.getMembershipDeltas(), writer);
+
+            writer.endObject();
+        }
+        else {
+            writer.value(null);
+        }
+    }
+
+    /**
+     * Deserializes a stabilize result.
+     *
+     * @param reader a JSON reader containing the appropriate fields
+     * @return a stabilize result
+     * @throws DeserializationException if the representation is invalid
+     */
+    public StabilizeResult deserializeStabilizeResult(final JSONReader reader) throws DeserializationException {
+
+        try {
+            if (reader.checkNull()) { return null; }
+
+            reader.object();
+
+            reader.key(PREDECESSOR_KEY);
+            final IChordRemoteReference predecessor = deserializeChordRemoteReference(reader);
+
+            reader.key(SUCCESSOR_LIST_KEY);
+            final List<IChordRemoteReference> successor_list = deserializeListChordRemoteReference(reader);
+
+            final List<MembershipDelta> membership_deltas = deserializeOptionalMembershipDeltas(reader);
+
+            reader.endObject();
+
+            return new StabilizeResult(predecessor, successor_list, membership_deltas);
+        }
+        catch (final Exception e) {
+            throw new DeserializationException(e);
+        }
+    }
+
+    /**
+     * Deserializes the membership deltas field if it is present before the end of the enclosing object.
+     *
+     * @param reader a JSON reader positioned after the preceding fields
+     * @return the membership deltas, or an empty list if the field is absent or null
+     * @throws DeserializationException if the representation is invalid
+     */
+    private List<MembershipDelta> deserializeOptionalMembershipDeltas(final JSONReader reader) throws DeserializationException {
+
+        try {
+            List<MembershipDelta> membership_deltas = null;
+            if (!reader.have(JSONReader.ENDOBJECT)) {
+                reader.key(MEMBERSHIP_DELTAS_KEY);
+                membership_deltas = deserializeListMembershipDelta(reader);
+            }
+            return membership_deltas != null ? membership_deltas : new ArrayList<MembershipDelta>();
+        }
+        catch (final DeserializationException e) {
+            throw e;
+        }
+        catch (final Exception e) {
+            throw new DeserializationException(e);
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Serializes a membership delta to an object containing the kind of change, the node and the number of hops remaining.
+     *
+     * @param membership_delta the membership delta
+     * @throws JSONException
+     * @throws RPCException
+     */
+    public void serializeMembershipDelta(final MembershipDelta membership_delta, final JSONWriter writer) throws JSONException, RPCException {
+
+        writer.object();
+
+        writer.key(KIND_KEY);
+        writer.value(membership_delta.getKind().name());
+
+        writer.key(NODE_KEY);
+        serializeChordRemoteReference(membership_delta.getNode(), writer);
+
+        writer.key(HOPS_KEY);
+        writer.value(membership_delta.getHopsRemaining());
+
+        writer.endObject();
+    }
+
+    /**
+     * Deserializes a membership delta.
+     *
+     * @param reader a JSON reader containing the appropriate fields
+     * @return a membership delta
+     * @throws DeserializationException if the representation is invalid
+     */
+    public MembershipDelta deserializeMembershipDelta(final JSONReader reader) throws DeserializationException {
+
+        try {
+            reader.object();
+
+            reader.key(KIND_KEY);
+            final MembershipDelta.Kind kind = MembershipDelta.Kind.valueOf(reader.stringValue());
+
+            reader.key(NODE_KEY);
+            final IChordRemoteReference node = deserializeChordRemoteReference(reader);
+
+            reader.key(HOPS_KEY);
+            final int hops_remaining = reader.intValue();
+
             reader.endObject();
 
-            return new NextHopResult(chordRemoteReference, is_final_hop);
+            return new MembershipDelta(kind, node, hops_remaining);
+        }
+        catch (final Exception e) {
+            throw new DeserializationException(e);
+        }
+    }
+
+    /**
+     * Serializes a list of membership deltas to an array.
+     *
+     * @param membership_deltas the list
+     * @throws JSONException
+     * @throws RPCException
+     */
+    public void serializeListMembershipDelta(final List<MembershipDelta> membership_deltas, final JSONWriter writer) throws JSONException, RPCException {
+
+        writer.array();
+        for (final MembershipDelta membership_delta : membership_deltas) {
+            serializeMembershipDelta(membership_delta, writer);
+        }
+
+        writer.endArray();
+    }
+
+    /**
+     * Deserializes a list of membership deltas.
+     *
+     * @param reader a JSON reader containing the appropriate values
+     * @return a list of membership deltas, empty if the representation is null
+     * @throws DeserializationException if the representation is invalid
+     */
+    public List<MembershipDelta> deserializeListMembershipDelta(final JSONReader reader) throws DeserializationException {
+
+        try {
+            final List<MembershipDelta> deserialized_deltas = new ArrayList<MembershipDelta>();
+            if (reader.checkNull()) { return deserialized_deltas; }
+
+            reader.array();
+
+            while (!reader.have(JSONReader.ENDARRAY)) {
+                deserialized_deltas.add(deserializeMembershipDelta(reader));
+            }
+
+            reader.endArray();
+            return deserialized_deltas;
+        }
+        catch (final Exception e) {
+            throw new DeserializationException(e);
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Serializes a list of keys to an array.
+     *
+     * @param keys the list
+     * @throws JSONException
+     */
+    public void serializeListKey(final List<IKey> keys, final JSONWriter writer) throws JSONException {
+
+        if (keys != null) {
+            writer.array();
+            for (final IKey key : keys) {
+                serializeKey(key, writer);
+            }
+
+            writer.endArray();
+        }
+        else {
+            writer.value(null);
+        }
+    }
+
+    /**
+     * Deserializes a list of keys.
+     *
+     * @param reader a JSON reader containing the appropriate values
+     * @return a list of keys
+     * @throws DeserializationException if the representation is invalid
+     */
+    public List<IKey> deserializeListKey(final JSONReader reader) throws DeserializationException {
+
+        try {
+            if (reader.checkNull()) { return null; }
+
+            reader.array();
+
+            final List<IKey> deserialized_keys = new ArrayList<IKey>();
+
+            while (!reader.have(JSONReader.ENDARRAY)) {
+                deserialized_keys.add(deserializeKey(reader));
+            }
+
+            reader.endArray();
+            return deserialized_keys;
+        }
+        catch (final Exception e) {
+            throw new DeserializationException(e);
+        }
+    }
+
+    /**
+     * Serializes a list of next hop results to an array.
+     *
+     * @param next_hop_results the list
+     * @throws JSONException
+     * @throws RPCException
+     */
+    public void serializeListNextHopResult(final List<NextHopResult> next_hop_results, final JSONWriter writer) throws JSONException, RPCException {
+
+        if (next_hop_results != null) {
+            writer.array();
+            for (final NextHopResult next_hop_result : next_hop_results) {
+                serializeDetailedNextHopResult(next_hop_result, writer);
+            }
+
+            writer.endArray();
+        }
+        else {
+            writer.value(null);
+        }
+    }
+
+    /**
+     * Deserializes a list of next hop results.
+     *
+     * @param reader a JSON reader containing the appropriate values
+     * @return a list of next hop results
+     * @throws DeserializationException if the representation is invalid
+     */
+    public List<NextHopResult> deserializeListNextHopResult(final JSONReader reader) throws DeserializationException {
+
+        try {
+            if (reader.checkNull()) { return null; }
+
+            reader.array();
+
+            final List<NextHopResult> deserialized_results = new ArrayList<NextHopResult>();
+
+            while (!reader.have(JSONReader.ENDARRAY)) {
+                deserialized_results.add(deserializeNextHopResult(reader));
+            }
+
+            reader.endArray();
+            return deserialized_results;
         }
         catch (final Exception e) {
             throw new DeserializationException(e);
@@ -40,6 +40,10 @@ import java.net.InetSocketAddress;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 /**
  * Proxy for remotely accessible Chord node.
@@ -55,6 +59,7 @@ public final class ChordRemoteProxy extends StreamProxy implements IChordRemote
     }
 
     private final ChordRemoteMarshaller marshaller;
+    private final LatencyTracker next_hop_latencies; // Latencies of nextHop calls to this node, used to decide when to hedge a lookup hop.
 
     // -------------------------------------------------------------------------------------------------------
 
@@ -62,6 +67,7 @@ public final class ChordRemoteProxy extends StreamProxy implements IChordRemote
 
         super(node_address);
         marshaller = new ChordRemoteMarshaller();
+        next_hop_latencies = new LatencyTracker();
     }
 
     // -------------------------------------------------------------------------------------------------------
@@ -142,6 +148,57 @@ public final class ChordRemoteProxy extends StreamProxy implements IChordRemote
         }
     }
 
+    @Override
+    public List<IChordRemoteReference> lookupReplicas(final IKey key, final int number_of_replicas) throws RPCException {
+
+        try {
+            final Connection connection = (Connection) startCall("lookupReplicas");
+
+            final JSONWriter writer = connection.getJSONwriter();
+            Marshaller.serializeKey(key, writer);
+            writer.value(number_of_replicas);
+
+            final JSONReader reader = makeCall(connection);
+            final List<IChordRemoteReference> result = marshaller.deserializeListChordRemoteReference(reader);
+
+            finishCall(connection);
+
+            return result;
+        }
+        catch (final DeserializationException e) {
+            throw new RPCException(e);
+        }
+        catch (final Exception e) {
+            dealWithException(e);
+            return null;
+        }
+    }
+
+    @Override
+    public IChordRemoteReference lookupRecursive(final IKey key) throws RPCException {
+
+        try {
+            final Connection connection = (Connection) startCall("lookupRecursive");
+
+            final JSONWriter writer = connection.getJSONwriter();
+            Marshaller.serializeKey(key, writer);
+
+            final JSONReader reader = makeCall(connection);
+            final IChordRemoteReference result = marshaller.deserializeChordRemoteReference(reader);
+
+            finishCall(connection);
+
+            return result;
+        }
+        catch (final DeserializationException e) {
+            throw new RPCException(e);
+        }
+        catch (final Exception e) {
+            dealWithException(e);
+            return null;
+        }
+    }
+
     @Override
     public IChordRemoteReference getSuccessor() throws RPCException {
 
@@ -206,6 +263,32 @@ public final class ChordRemoteProxy extends StreamProxy implements IChordRemote
         }
     }
 
+    @Override
+    public StabilizeResult stabilize(final IChordRemoteReference potential_predecessor, final List<MembershipDelta> membership_deltas) throws RPCException {
+
+        try {
+            final Connection connection = (Connection) startCall("stabilize");
+
+            final JSONWriter writer = connection.getJSONwriter();
+            marshaller.serializeChordRemoteReference(potential_predecessor, writer);
+            marshaller.serializeListMembershipDelta(membership_deltas, writer);
+
+            final JSONReader reader = makeCall(connection);
+            final StabilizeResult result = marshaller.deserializeStabilizeResult(reader);
+
+            finishCall(connection);
+
+            return result;
+        }
+        catch (final DeserializationException e) {
+            throw new RPCException(e);
+        }
+        catch (final Exception e) {
+            dealWithException(e);
+            return null;
+        }
+    }
+
     @Override
     public void join(final IChordRemoteReference node) throws RPCException {
 
@@ -269,11 +352,42 @@ public final class ChordRemoteProxy extends StreamProxy implements IChordRemote
         }
     }
 
+    @Override
+    public int getProtocolVersion() throws RPCException {
+
+        try {
+            final Connection connection = (Connection) startCall("getProtocolVersion");
+
+            final JSONReader reader = makeCall(connection);
+            final int result = reader.intValue();
+
+            finishCall(connection);
+
+            return result;
+        }
+        catch (final Exception e) {
+            dealWithException(e);
+            return 0;
+        }
+    }
+
     @Override
     public NextHopResult nextHop(final IKey key) throws RPCException {
 
+        return nextHop(key, "nextHop");
+    }
+
+    @Override
+    public NextHopResult nextHopDetailed(final IKey key) throws RPCException {
+
+        return nextHop(key, "nextHopDetailed");
+    }
+
+    private NextHopResult nextHop(final IKey key, final String method_name) throws RPCException {
+
         try {
-            final Connection connection = (Connection) startCall("nextHop");
+            final long start = System.nanoTime();
+            final Connection connection = (Connection) startCall(method_name);
             final JSONWriter writer = connection.getJSONwriter();
             Marshaller.serializeKey(key, writer);
 
@@ -281,6 +395,7 @@ public final class ChordRemoteProxy extends StreamProxy implements IChordRemote
             final NextHopResult result = marshaller.deserializeNextHopResult(reader);
 
             finishCall(connection);
+            next_hop_latencies.record(System.nanoTime() - start);
 
             return result;
         }
@@ -293,6 +408,66 @@ public final class ChordRemoteProxy extends StreamProxy implements IChordRemote
         }
     }
 
+    @Override
+    public List<NextHopResult> nextHops(final List<IKey> keys) throws RPCException {
+
+        try {
+            final Connection connection = (Connection) startCall("nextHops");
+            final JSONWriter writer = connection.getJSONwriter();
+            marshaller.serializeListKey(keys, writer);
+
+            final JSONReader reader = makeCall(connection);
+            final List<NextHopResult> result = marshaller.deserializeListNextHopResult(reader);
+
+            finishCall(connection);
+
+            return result;
+        }
+        catch (final DeserializationException e) {
+            throw new RPCException(e);
+        }
+        catch (final Exception e) {
+            dealWithException(e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns a given percentile of the latencies of recent nextHop calls to the node.
+     *
+     * @param percentile the percentile, between 0 and 1
+     * @return the latency in ns, or {@link LatencyTracker#UNKNOWN_LATENCY} if too few calls have been made
+     */
+    long getNextHopLatencyPercentile(final double percentile) {
+
+        return next_hop_latencies.getPercentile(percentile);
+    }
+
+    /**
+     * Pings this node on a thread of the given executor. The underlying call blocks, so this offloads it from the calling thread rather than
+     * making it non-blocking. An error during the remote call completes the result exceptionally, with the {@link RPCException} as the cause.
+     *
+     * @param executor the executor on which the call is made
+     * @return a future completed when the node has answered
+     */
+    CompletableFuture<Void> pingAsync(final Executor executor) {
+
+        return CompletableFuture.supplyAsync(new Supplier<Void>() {
+
+            @Override
+            public Void get() {
+
+                try {
+                    ping();
+                    return null;
+                }
+                catch (final RPCException e) {
+                    throw new CompletionException(e);
+                }
+            }
+        }, executor);
+    }
+
     @Override
     public void enablePredecessorMaintenance(final boolean enabled) throws RPCException {
 
@@ -42,6 +42,7 @@ class ChordRemoteReference implements IChordRemoteReference {
     private final InetSocketAddress address;
     private final ChordRemoteProxy reference;
     private IKey key = null;
+    private FixedWidthKey fixed_width_key = null; // The key converted for ring arithmetic, retained so that it is only converted once.
 
     public ChordRemoteReference(final InetSocketAddress address) {
 
@@ -66,6 +67,20 @@ class ChordRemoteReference implements IChordRemoteReference {
         return key;
     }
 
+    /**
+     * Returns the key of the node as a fixed-width key.
+     *
+     * @return the key
+     * @throws RPCException if an error occurs in accessing the key
+     */
+    FixedWidthKey getFixedWidthKey() throws RPCException {
+
+        if (fixed_width_key == null) {
+            fixed_width_key = FixedWidthKey.valueOf(getCachedKey());
+        }
+        return fixed_width_key;
+    }
+
     @Override
     public InetSocketAddress getCachedAddress() {
 
@@ -24,6 +24,8 @@
  ***************************************************************************/
 package uk.ac.standrews.cs.stachord.impl;
 
+import java.util.List;
+
 import org.json.JSONException;
 import org.json.JSONWriter;
 
@@ -97,14 +99,20 @@ public class ChordRemoteServer extends ApplicationServer {
 
         handler_map.put("getKey", new GetKeyHandler());
         handler_map.put("getAddress", new GetAddressHandler());
+        handler_map.put("getProtocolVersion", new GetProtocolVersionHandler());
         handler_map.put("lookup", new LookupHandler());
+        handler_map.put("lookupRecursive", new LookupRecursiveHandler());
+        handler_map.put("lookupReplicas", new LookupReplicasHandler());
         handler_map.put("getSuccessor", new GetSuccessorHandler());
         handler_map.put("getPredecessor", new GetPredecessorHandler());
         handler_map.put("notify", new NotifyHandler());
+        handler_map.put("stabilize", new StabilizeHandler());
         handler_map.put("join", new JoinHandler());
         handler_map.put("getSuccessorList", new GetSuccessorListHandler());
         handler_map.put("getFingerList", new GetFingerListHandler());
         handler_map.put("nextHop", new NextHopHandler());
+        handler_map.put("nextHopDetailed", new NextHopDetailedHandler());
+        handler_map.put("nextHops", new NextHopsHandler());
         handler_map.put("enablePredecessorMaintenance", new EnablePredecessorMaintenanceHandler());
         handler_map.put("enableStabilization", new EnableStabilizationHandler());
         handler_map.put("enablePeerStateMaintenance", new EnablePeerStateMaintenanceHandler());
@@ -153,6 +161,43 @@ public class ChordRemoteServer extends ApplicationServer {
         }
     }
 
+    private final class LookupRecursiveHandler implements IHandler {
+
+        @Override
+        public void execute(final JSONReader args, final JSONWriter writer) throws RPCException {
+
+            try {
+                final IKey key = Marshaller.deserializeKey(args);
+                marshaller.serializeChordRemoteReference(chord_node.lookupRecursive(key), writer);
+            }
+            catch (final DeserializationException e) {
+                throw new RemoteChordException(e);
+            }
+            catch (final JSONException e) {
+                throw new RemoteChordException(e);
+            }
+        }
+    }
+
+    private final class LookupReplicasHandler implements IHandler {
+
+        @Override
+        public void execute(final JSONReader args, final JSONWriter writer) throws RPCException {
+
+            try {
+                final IKey key = Marshaller.deserializeKey(args);
+                final int number_of_replicas = args.intValue();
+                marshaller.serializeListChordRemoteReference(chord_node.lookupReplicas(key, number_of_replicas), writer);
+            }
+            catch (final DeserializationException e) {
+                throw new RemoteChordException(e);
+            }
+            catch (final JSONException e) {
+                throw new RemoteChordException(e);
+            }
+        }
+    }
+
     private final class GetSuccessorHandler implements IHandler {
 
         @Override
@@ -188,6 +233,22 @@ public class ChordRemoteServer extends ApplicationServer {
         }
     }
 
+    private final class StabilizeHandler implements IHandler {
+
+        @Override
+        public void execute(final JSONReader args, final JSONWriter writer) throws RPCException, JSONException {
+
+            try {
+                final IChordRemoteReference potential_predecessor = marshaller.deserializeChordRemoteReference(args);
+                final List<MembershipDelta> membership_deltas = marshaller.deserializeListMembershipDelta(args);
+                marshaller.serializeStabilizeResult(chord_node.stabilize(potential_predecessor, membership_deltas), writer);
+            }
+            catch (final DeserializationException e) {
+                throw new RemoteChordException(e);
+            }
+        }
+    }
+
     private final class JoinHandler implements IHandler {
 
         @Override
@@ -213,6 +274,15 @@ public class ChordRemoteServer extends ApplicationServer {
         }
     }
 
+    private final class GetProtocolVersionHandler implements IHandler {
+
+        @Override
+        public void execute(final JSONReader args, final JSONWriter writer) throws JSONException {
+
+            writer.value(chord_node.getProtocolVersion());
+        }
+    }
+
     private final class GetFingerListHandler implements IHandler {
 
         @Override
@@ -240,6 +310,42 @@ public class ChordRemoteServer extends ApplicationServer {
         }
     }
 
+    private final class NextHopDetailedHandler implements IHandler {
+
+        @Override
+        public void execute(final JSONReader args, final JSONWriter writer) throws RPCException {
+
+            try {
+                final IKey key = Marshaller.deserializeKey(args);
+                marshaller.serializeDetailedNextHopResult(chord_node.nextHop(key).withMembershipDeltas(chord_node.getMembershipDeltas()), writer);
+            }
+            catch (final DeserializationException e) {
+                throw new RemoteChordException(e);
+            }
+            catch (final JSONException e) {
+                throw new RemoteChordException(e);
+            }
+        }
+    }
+
+    private final class NextHopsHandler implements IHandler {
+
+        @Override
+        public void execute(final JSONReader args, final JSONWriter writer) throws RPCException {
+
+            try {
+                final List<IKey> keys = marshaller.deserializeListKey(args);
+                marshaller.serializeListNextHopResult(chord_node.nextHops(keys), writer);
+            }
+            catch (final DeserializationException e) {
+                throw new RemoteChordException(e);
+            }
+            catch (final JSONException e) {
+                throw new RemoteChordException(e);
+            }
+        }
+    }
+
     private final class EnablePredecessorMaintenanceHandler implements IHandler {
 
         @Override
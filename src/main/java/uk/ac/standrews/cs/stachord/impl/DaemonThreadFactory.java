@@ -0,0 +1,56 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+
+package uk.ac.standrews.cs.stachord.impl;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates named daemon threads, so that pools used for background Chord activity never prevent the JVM from exiting.
+ */
+class DaemonThreadFactory implements ThreadFactory {
+
+    private final String name_prefix;
+    private final AtomicInteger thread_count = new AtomicInteger();
+
+    /**
+     * Creates a factory whose threads are named with the given prefix followed by a sequence number.
+     *
+     * @param name_prefix the thread name prefix
+     */
+    DaemonThreadFactory(final String name_prefix) {
+
+        this.name_prefix = name_prefix;
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+
+        final Thread thread = new Thread(runnable, name_prefix + " " + thread_count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
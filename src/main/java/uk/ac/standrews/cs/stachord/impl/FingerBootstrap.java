@@ -0,0 +1,201 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+
+/**
+ * Finds the owners of a finger table's targets after its node joins a ring, in rounds of parallel lookups. Each round starts when all the
+ * lookups of the previous round have completed, as a continuation of them, so no thread waits for the lookups.
+ * <p>
+ * Consecutive targets with the same estimated owner are treated as a group, and only the first target in each group is looked up; the other
+ * targets in the group that precede the owner found for it have the same owner. Owners are estimated from a set of known nodes, to which
+ * each owner found is added. Targets that remain unresolved, including those whose lookups failed, are regrouped in the next round using the
+ * owners found so far as further estimates. Estimates are only used for grouping, and are never returned as owners.
+ */
+class FingerBootstrap {
+
+    private final FixedWidthKey[] targets; // The finger targets, in increasing order of distance from the node.
+    private final List<IChordRemoteReference> known_nodes; // Nodes from which owners of targets are estimated.
+    private final Function<FixedWidthKey, CompletableFuture<IChordRemoteReference>> lookup; // Looks up the owner of a target.
+    private final int max_rounds; // The maximum number of rounds of lookups.
+    private final IChordRemoteReference[] owners; // The owners found for the targets, or null where not yet found.
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a bootstrap for the given targets.
+     *
+     * @param targets the finger targets, in increasing order of distance from the node
+     * @param known_nodes nodes from which owners of targets are initially estimated
+     * @param lookup a function that looks up the owner of a target, completing its result exceptionally if the lookup fails
+     * @param max_rounds the maximum number of rounds of lookups
+     */
+    FingerBootstrap(final FixedWidthKey[] targets, final List<IChordRemoteReference> known_nodes, final Function<FixedWidthKey, CompletableFuture<IChordRemoteReference>> lookup, final int max_rounds) {
+
+        this.targets = targets;
+        this.known_nodes = new ArrayList<IChordRemoteReference>(known_nodes);
+        this.lookup = lookup;
+        this.max_rounds = max_rounds;
+        owners = new IChordRemoteReference[targets.length];
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Starts the lookups.
+     *
+     * @return a future completed, when the targets have all been resolved or the rounds are exhausted, with the owners found for the targets,
+     * in the same order, each null if no owner was found
+     */
+    CompletableFuture<IChordRemoteReference[]> start() {
+
+        final List<Integer> unresolved = new ArrayList<Integer>();
+        for (int i = 0; i < targets.length; i++) {
+            unresolved.add(i);
+        }
+        return round(unresolved, 0);
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    private CompletableFuture<IChordRemoteReference[]> round(final List<Integer> unresolved, final int round_number) {
+
+        if (unresolved.isEmpty() || round_number >= max_rounds) { return CompletableFuture.completedFuture(owners); }
+
+        // Targets are in increasing order of distance from the node, so each group is a consecutive run.
+        final Map<Integer, CompletableFuture<IChordRemoteReference>> lookups = new LinkedHashMap<Integer, CompletableFuture<IChordRemoteReference>>();
+        IChordRemoteReference previous_estimate = null;
+
+        for (final int i : unresolved) {
+            final IChordRemoteReference estimate = estimateOwner(targets[i], known_nodes);
+            if (estimate != previous_estimate || lookups.isEmpty()) {
+                lookups.put(i, lookup.apply(targets[i]));
+                previous_estimate = estimate;
+            }
+        }
+
+        return CompletableFuture.allOf(lookups.values().toArray(new CompletableFuture<?>[lookups.size()])).handle(new BiFunction<Void, Throwable, List<Integer>>() {
+
+            @Override
+            public List<Integer> apply(final Void result, final Throwable error) {
+
+                return resolve(unresolved, lookups);
+            }
+
+        }).thenCompose(new Function<List<Integer>, CompletableFuture<IChordRemoteReference[]>>() {
+
+            @Override
+            public CompletableFuture<IChordRemoteReference[]> apply(final List<Integer> still_unresolved) {
+
+                return round(still_unresolved, round_number + 1);
+            }
+        });
+    }
+
+    /**
+     * Records the owners found by a round of lookups, and returns the targets that remain unresolved.
+     */
+    private List<Integer> resolve(final List<Integer> unresolved, final Map<Integer, CompletableFuture<IChordRemoteReference>> lookups) {
+
+        final List<Integer> still_unresolved = new ArrayList<Integer>();
+        FixedWidthKey group_target = null;
+        IChordRemoteReference group_owner = null;
+        FixedWidthKey group_owner_key = null;
+
+        for (final int i : unresolved) {
+
+            if (lookups.containsKey(i)) {
+
+                group_target = targets[i];
+                group_owner = resultOf(lookups.get(i));
+                group_owner_key = group_owner != null ? ownerKey(group_owner) : null;
+
+                if (group_owner_key != null) {
+                    owners[i] = group_owner;
+                    known_nodes.add(group_owner);
+                }
+                else {
+                    // The lookup failed, so the target is retried in the next round, and the rest of its group can't be resolved from it.
+                    group_owner = null;
+                    still_unresolved.add(i);
+                }
+            }
+            else if (group_owner != null && !group_owner_key.equals(group_target) && FixedWidthKey.inSegment(group_target, targets[i], group_owner_key)) {
+                owners[i] = group_owner;
+            }
+            else {
+                still_unresolved.add(i);
+            }
+        }
+        return still_unresolved;
+    }
+
+    /**
+     * Returns the known node that most closely follows a given target, which would be its owner if the ring contained only the known nodes.
+     */
+    private static IChordRemoteReference estimateOwner(final FixedWidthKey target, final List<IChordRemoteReference> known_nodes) {
+
+        IChordRemoteReference estimate = null;
+        FixedWidthKey estimate_key = null;
+
+        for (final IChordRemoteReference known_node : known_nodes) {
+
+            final FixedWidthKey known_key = ownerKey(known_node);
+            if (known_key != null && (estimate_key == null || FixedWidthKey.compareDistances(target, known_key, estimate_key) < 0)) {
+                estimate = known_node;
+                estimate_key = known_key;
+            }
+        }
+        return estimate;
+    }
+
+    private static FixedWidthKey ownerKey(final IChordRemoteReference owner) {
+
+        try {
+            return FixedWidthKey.of(owner);
+        }
+        catch (final RPCException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the result of a completed lookup, or null if it failed.
+     */
+    private static IChordRemoteReference resultOf(final CompletableFuture<IChordRemoteReference> lookup) {
+
+        return lookup.isCompletedExceptionally() ? null : lookup.join();
+    }
+}
@@ -2,7 +2,7 @@
  *                                                                         *
  * stachord Library                                                        *
  * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
- * University of St Andrews, Scotland
+ * University of St Andrews, Scotland                                      *
  * http://www-systems.cs.st-andrews.ac.uk/                                 *
  *                                                                         *
  * This file is part of stachord, an independent implementation of         *
@@ -26,55 +26,126 @@
 package uk.ac.standrews.cs.stachord.impl;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
-import uk.ac.standrews.cs.nds.p2p.interfaces.IKey;
 import uk.ac.standrews.cs.nds.p2p.keys.Key;
-import uk.ac.standrews.cs.nds.p2p.keys.RingArithmetic;
 import uk.ac.standrews.cs.nds.rpc.RPCException;
 import uk.ac.standrews.cs.stachord.interfaces.IChordNode;
 import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+import uk.ac.standrews.cs.utilities.archive.Duration;
 
 /**
- * Finger table implementation.
+ * Finger table implementation. The fingers are arranged in levels: the targets in each level are spaced by the key space size divided
+ * by the inter-finger ratio raised to the level's distance from the top, so a ratio of b gives routes of about log_b N hops.
+ * Within the table, finger targets are in increasing order of distance from this node.
  *
  * @author Graham Kirby (graham.kirby@st-andrews.ac.uk)
  */
 class FingerTable {
 
-    private final IChordNode node; // The node of which this is the finger table.
-    private final IKey node_key; // The node's key.
+    private final ChordNodeImpl node; // The node of which this is the finger table.
+    private final FixedWidthKey node_key; // The node's key.
+    private final int inter_finger_ratio; // The ratio between the target spacings of successive levels.
+    private final int fingers_per_level; // The number of fingers in each level.
 
-    private final IChordRemoteReference[] fingers; // References to the fingers.
-    private final IKey[] finger_targets; // Keys used to select the fingers.
+    // The arrays are replaced when the table is resized, so readers should take a local copy of the array reference.
+    private volatile IChordRemoteReference[] fingers; // References to the fingers.
+    private volatile FixedWidthKey[] finger_targets; // Keys used to select the fingers.
+    private volatile long[] finger_round_trip_times; // Measured round trip times to the fingers in ns, or UNKNOWN_ROUND_TRIP_TIME.
 
-    private final int number_of_fingers; // Size of the finger table.
+    // Incremented on each change to the fingers, so that the fingers published to the node's routing state aren't replaced by a stale copy.
+    private int modification_count;
+
+    private int number_of_fingers; // Size of the finger table.
     private int next_finger_index; // Index of the next finger to be fixed.
 
-    // Used to derive finger table size. Nothing will break if the ring
-    // exceeds this size, but the finger table may become more sparse than ideal.
+    private IChordRemoteReference last_fixed_owner; // The owner of the target of the finger most recently fixed.
+    private int last_fixed_index = -1; // The index of the finger most recently fixed.
+    private volatile long skipped_lookup_count = 0; // The number of finger fixes that didn't need any remote call to find the owner.
+    private volatile long confirmed_owner_count = 0; // The number of finger fixes whose owner was taken from the ownership cache, after a confirming call.
+
+    // Used to derive the initial finger table size, before the size is adjusted to an estimate of the actual ring size.
     private static final int MAX_ASSUMED_RING_SIZE = 1000;
 
-    // The ratio between successive finger targets.
-    private static final BigInteger INTER_FINGER_RATIO = new BigInteger(String.valueOf(IChordNode.INTER_FINGER_RATIO));
+    // The number of levels beyond the logarithm of the estimated ring size, to allow for an underestimate.
+    private static final int SPARE_LEVELS = 1;
+
+    // The table is only shrunk when it has more than this number of levels above the required number, to avoid oscillating around a boundary.
+    private static final int SHRINK_THRESHOLD = 1;
+
+    // The maximum number of nodes in a finger's interval that are compared by round trip time when selecting the finger.
+    private static final int MAX_PROXIMITY_CANDIDATES = IChordNode.MAX_SUCCESSOR_LIST_SIZE;
+
+    // The current finger is retained unless another candidate's round trip time is better by more than this factor, to avoid switching on jitter.
+    private static final double PROXIMITY_HYSTERESIS = 1.2;
+
+    private static final long UNKNOWN_ROUND_TRIP_TIME = ProximitySelector.UNKNOWN_ROUND_TRIP_TIME;
+
+    // The time allowed for the candidates for a finger to answer when their round trip times are measured.
+    private static final long PROXIMITY_PROBE_TIMEOUT = TimeUnit.SECONDS.toNanos(2);
+
+    private static final ProximitySelector PROXIMITY_SELECTOR = new ProximitySelector(PROXIMITY_PROBE_TIMEOUT, PROXIMITY_HYSTERESIS);
+
+    // The maximum number of rounds of parallel lookups made when filling the table after joining.
+    private static final int MAX_BOOTSTRAP_ROUNDS = 4;
+
+    // The time after which a lookup made when filling the table after joining is abandoned.
+    private static final Duration BOOTSTRAP_LOOKUP_TIMEOUT = new Duration(10, TimeUnit.SECONDS);
 
     // -------------------------------------------------------------------------------------------------------
 
-    public FingerTable(final IChordNode node) {
+    public FingerTable(final ChordNodeImpl node) {
+
+        this(node, IChordNode.INTER_FINGER_RATIO, IChordNode.FINGERS_PER_LEVEL);
+    }
+
+    /**
+     * Creates a finger table with a given routing base.
+     *
+     * @param node the node of which this is the finger table
+     * @param inter_finger_ratio the ratio between the target spacings of successive levels, at least 2
+     * @param fingers_per_level the number of fingers in each level, between 1 and one less than the ratio
+     */
+    public FingerTable(final ChordNodeImpl node, final int inter_finger_ratio, final int fingers_per_level) {
+
+        checkRoutingBase(inter_finger_ratio, fingers_per_level);
 
         this.node = node;
-        node_key = node.getKey();
+        node_key = FixedWidthKey.valueOf(node.getKey());
+        this.inter_finger_ratio = inter_finger_ratio;
+        this.fingers_per_level = fingers_per_level;
 
-        number_of_fingers = log(MAX_ASSUMED_RING_SIZE, IChordNode.INTER_FINGER_RATIO);
+        number_of_fingers = Math.max(1, log(MAX_ASSUMED_RING_SIZE, inter_finger_ratio)) * fingers_per_level;
         next_finger_index = number_of_fingers - 1;
 
         fingers = new IChordRemoteReference[number_of_fingers];
-        finger_targets = new IKey[number_of_fingers];
+        finger_targets = new FixedWidthKey[number_of_fingers];
+        finger_round_trip_times = new long[number_of_fingers];
+
+        Arrays.fill(finger_round_trip_times, UNKNOWN_ROUND_TRIP_TIME);
 
         initializeFingerTargetKeys();
     }
 
+    /**
+     * Checks that an inter-finger ratio and a number of fingers per level can be used together.
+     *
+     * @param inter_finger_ratio the ratio between the target spacings of successive levels
+     * @param fingers_per_level the number of fingers in each level
+     * @throws IllegalArgumentException if the ratio is less than 2, or the number of fingers per level is not between 1 and one less than the ratio
+     */
+    static void checkRoutingBase(final int inter_finger_ratio, final int fingers_per_level) {
+
+        if (inter_finger_ratio < 2) { throw new IllegalArgumentException("inter-finger ratio must be at least 2: " + inter_finger_ratio); }
+        if (fingers_per_level < 1 || fingers_per_level >= inter_finger_ratio) { throw new IllegalArgumentException("fingers per level must be between 1 and " + (inter_finger_ratio - 1) + ": " + fingers_per_level); }
+    }
+
     // -------------------------------------------------------------------------------------------------------
 
     /**
@@ -83,40 +154,36 @@ class FingerTable {
      */
     boolean fixNextFinger() {
 
-        final boolean changed = fixFinger(next_finger_index);
-        next_finger_index--;
-        if (next_finger_index < 0) {
-            next_finger_index = number_of_fingers - 1;
+        final int finger_index;
+        synchronized (this) {
+            finger_index = next_finger_index;
+            next_finger_index--;
+            if (next_finger_index < 0) {
+                next_finger_index = number_of_fingers - 1;
+            }
         }
-        return changed;
+        return fixFinger(finger_index);
     }
 
     /**
-     * Returns the finger that extends the furthest round the ring from this node without passing the given key.
+     * Adjusts the number of levels to suit an estimate of the ring size. The table grows as soon as more levels are needed,
+     * but only shrinks when it is clearly larger than required.
      *
-     * @param k the target key
-     * @return the closest preceding finger to the key
-     * @throws NoPrecedingNodeException if no suitable finger is found
-     * @throws RPCException if an error occurs in accessing a finger's key
+     * @param ring_size_estimate the estimated number of nodes in the ring
+     * @return true if the size of the finger table was changed
      */
-    IChordRemoteReference closestPrecedingNode(final IKey k) throws NoPrecedingNodeException, RPCException {
-
-        for (int i = number_of_fingers - 1; i >= 0; i--) {
-
-            final IChordRemoteReference finger = fingers[i];
+    boolean adjustSize(final int ring_size_estimate) {
 
-            // Finger may be null if it hasn't been fixed for the first time, or if its failure has been detected.
+        final int required_number_of_fingers = requiredNumberOfFingers(ring_size_estimate);
 
-            // Looking for finger that lies before k from position of this node.
-            // Ignore fingers pointing to this node.
-
-            if (finger != null) {
-                final IKey finger_key = finger.getCachedKey();
-                if (!finger_key.equals(node_key) && RingArithmetic.inRingOrder(node_key, finger_key, k)) { return finger; }
-            }
+        // The arrays are replaced under the lock, so that a finger being fixed meanwhile sees either the old table or the new one.
+        synchronized (this) {
+            if (required_number_of_fingers <= number_of_fingers && required_number_of_fingers >= number_of_fingers - SHRINK_THRESHOLD * fingers_per_level) { return false; }
+            resize(required_number_of_fingers);
         }
 
-        throw new NoPrecedingNodeException();
+        publishFingers();
+        return true;
     }
 
     /**
@@ -127,17 +194,35 @@ class FingerTable {
      */
     void fingerFailure(final IChordRemoteReference broken_finger) throws RPCException {
 
-        for (int i = number_of_fingers - 1; i >= 0; i--) {
+        final IChordRemoteReference[] current_fingers;
+        final long[] current_round_trip_times;
+        synchronized (this) {
+            current_fingers = fingers;
+            current_round_trip_times = finger_round_trip_times;
+        }
+
+        boolean removed = false;
+
+        for (int i = current_fingers.length - 1; i >= 0; i--) {
 
             IChordRemoteReference finger;
             synchronized (this) {
-                finger = fingers[i] != null ? fingers[i] : null;
+                finger = current_fingers[i] != null ? current_fingers[i] : null;
             }
 
             if (finger != null && finger.getCachedKey().equals(broken_finger.getCachedKey())) {
-                fingers[i] = null;
+                synchronized (this) {
+                    current_fingers[i] = null;
+                    current_round_trip_times[i] = UNKNOWN_ROUND_TRIP_TIME;
+                    modification_count++;
+                }
+                removed = true;
             }
         }
+
+        if (removed) {
+            publishFingers();
+        }
     }
 
     /**
@@ -149,6 +234,88 @@ class FingerTable {
         return new CopyOnWriteArrayList<IChordRemoteReference>(fingers);
     }
 
+    /**
+     * Returns the number of times that a finger has been fixed without a lookup, because the owner of its target was already known locally.
+     * @return the number of lookups skipped
+     */
+    long getSkippedLookupCount() {
+
+        return skipped_lookup_count;
+    }
+
+    /**
+     * Returns the number of times that a finger has been fixed using a cached owner of its target instead of a lookup. Each of these still
+     * made one remote call to confirm the owner, so they are not counted as skipped lookups.
+     * @return the number of lookups replaced by confirmed cached owners
+     */
+    long getConfirmedOwnerCount() {
+
+        return confirmed_owner_count;
+    }
+
+    /**
+     * Returns the measured round trip times to the fingers, in the same order as {@link #getFingers()}.
+     * @return the round trip times, with null entries for fingers whose round trip time is not known
+     */
+    List<Duration> getFingerRoundTripTimes() {
+
+        final List<Duration> round_trip_times = new ArrayList<Duration>();
+        for (final long round_trip_time : finger_round_trip_times) {
+            round_trip_times.add(round_trip_time == UNKNOWN_ROUND_TRIP_TIME ? null : new Duration(round_trip_time, TimeUnit.NANOSECONDS));
+        }
+        return round_trip_times;
+    }
+
+    /**
+     * Fills the finger table after joining a ring. The successor and its fingers are used as first estimates of the owners of this node's finger
+     * targets, since the successor's targets are close to this node's, and the targets are then looked up in rounds of parallel lookups by a
+     * {@link FingerBootstrap}. Only owners found by lookups are used as fingers. Fingers are not selected by proximity; that is left to
+     * subsequent maintenance. The successor's fingers are fetched by a blocking call, but the lookups are made asynchronously.
+     *
+     * @param successor the successor of this node
+     * @return a future completed, once the lookups have finished, with true if any fingers were changed
+     */
+    CompletableFuture<Boolean> bootstrap(final IChordRemoteReference successor) {
+
+        final IChordRemoteReference[] current_fingers;
+        final FixedWidthKey[] targets;
+        synchronized (this) {
+            current_fingers = fingers;
+            targets = finger_targets;
+        }
+
+        final List<IChordRemoteReference> known_nodes = new ArrayList<IChordRemoteReference>();
+        known_nodes.add(successor);
+        try {
+            for (final IChordRemoteReference finger : successor.getRemote().getFingerList()) {
+                if (finger != null) {
+                    known_nodes.add(finger);
+                }
+            }
+        }
+        catch (final RPCException e) {
+            // Only the successor can be used for estimates.
+        }
+
+        final FingerBootstrap finger_bootstrap = new FingerBootstrap(targets, known_nodes, new Function<FixedWidthKey, CompletableFuture<IChordRemoteReference>>() {
+
+            @Override
+            public CompletableFuture<IChordRemoteReference> apply(final FixedWidthKey target) {
+
+                return node.lookupAsync(target.toKey(), BOOTSTRAP_LOOKUP_TIMEOUT, true);
+            }
+        }, MAX_BOOTSTRAP_ROUNDS);
+
+        return finger_bootstrap.start().thenApply(new Function<IChordRemoteReference[], Boolean>() {
+
+            @Override
+            public Boolean apply(final IChordRemoteReference[] owners) {
+
+                return updateFingers(current_fingers, owners);
+            }
+        });
+    }
+
     // -------------------------------------------------------------------------------------------------------
 
     @Override
@@ -157,23 +324,35 @@ class FingerTable {
         final StringBuilder buffer = new StringBuilder();
         buffer.append("\n");
 
-        for (int i = number_of_fingers - 1; i >= 0; i--) {
+        final IChordRemoteReference[] current_fingers;
+        final long[] current_round_trip_times;
+        synchronized (this) {
+            current_fingers = fingers;
+            current_round_trip_times = finger_round_trip_times;
+        }
+
+        for (int i = current_fingers.length - 1; i >= 0; i--) {
 
             buffer.append("finger: " + i);
-            if (fingers[i] == null) {
+            if (current_fingers[i] == null) {
                 buffer.append(" null");
             }
             else {
                 try {
-                    buffer.append(" key: " + fingers[i].getCachedKey());
+                    buffer.append(" key: " + current_fingers[i].getCachedKey());
                 }
                 catch (final RPCException e) {
                     buffer.append(" key: inaccessible");
                 }
-                buffer.append(" address: " + fingers[i].getCachedAddress());
+                buffer.append(" address: " + current_fingers[i].getCachedAddress());
+                if (current_round_trip_times[i] != UNKNOWN_ROUND_TRIP_TIME) {
+                    buffer.append(" rtt: " + TimeUnit.NANOSECONDS.toMicros(current_round_trip_times[i]) + "us");
+                }
             }
             buffer.append("\n");
         }
+        buffer.append("lookups skipped: " + skipped_lookup_count + "\n");
+        buffer.append("lookups replaced by confirmed cached owners: " + confirmed_owner_count + "\n");
 
         return buffer.toString();
     }
@@ -181,19 +360,93 @@ class FingerTable {
     // -------------------------------------------------------------------------------------------------------
 
     /**
-     * Constructs the finger target keys by successively dividing the offset from this node by the inter-finger ratio.
+     * Constructs the finger target keys for all levels.
      */
     private void initializeFingerTargetKeys() {
 
-        BigInteger finger_offset = Key.KEYSPACE_SIZE;
+        for (int i = number_of_fingers - 1; i >= 0; i--) {
+            finger_targets[i] = fingerTarget(i, number_of_fingers);
+        }
+    }
 
-        final BigInteger local_key = node.getKey().keyValue();
+    /**
+     * Computes the target key for a given index in a table with a given number of fingers. The target spacing in the top level
+     * is the key space size divided by the inter-finger ratio, and the spacing in each lower level is divided by the ratio again.
+     * The fingers within a level are placed at evenly distributed multiples of the level's spacing. With a ratio of 2 and one finger
+     * per level, this gives the classic Chord finger targets at successive halvings of the key space.
+     *
+     * @param finger_index the index
+     * @param table_size the number of fingers in the table
+     * @return the finger target key
+     */
+    private FixedWidthKey fingerTarget(final int finger_index, final int table_size) {
 
-        for (int i = number_of_fingers - 1; i >= 0; i--) {
+        final int number_of_levels = table_size / fingers_per_level;
+        final int levels_from_top = number_of_levels - finger_index / fingers_per_level;
+        final int position_in_level = finger_index % fingers_per_level;
+
+        final BigInteger spacing = Key.KEYSPACE_SIZE.divide(BigInteger.valueOf(inter_finger_ratio).pow(levels_from_top));
+        final int multiple = 1 + position_in_level * (inter_finger_ratio - 1) / fingers_per_level;
+
+        // The target is converted back to a key once, so that lookups of it don't create a key each time.
+        return FixedWidthKey.valueOf(new FixedWidthKey(node_key.keyValue().add(spacing.multiply(BigInteger.valueOf(multiple)))).toKey());
+    }
+
+    /**
+     * Changes the number of fingers, by a whole number of levels. Finger targets are defined by their distance from the top of the table, so each retained
+     * finger keeps its target and its entry, moving to a new index. Only the targets of new fingers are computed.
+     *
+     * Must be called with the lock held.
+     *
+     * @param new_number_of_fingers the new number of fingers
+     */
+    private void resize(final int new_number_of_fingers) {
+
+        final int shift = new_number_of_fingers - number_of_fingers;
+
+        final IChordRemoteReference[] new_fingers = new IChordRemoteReference[new_number_of_fingers];
+        final FixedWidthKey[] new_finger_targets = new FixedWidthKey[new_number_of_fingers];
+        final long[] new_finger_round_trip_times = new long[new_number_of_fingers];
 
-            finger_offset = finger_offset.divide(INTER_FINGER_RATIO);
-            finger_targets[i] = new Key(local_key.add(finger_offset));
+        for (int i = 0; i < new_number_of_fingers; i++) {
+
+            final int old_index = i - shift;
+
+            if (old_index >= 0 && old_index < number_of_fingers) {
+                new_fingers[i] = fingers[old_index];
+                new_finger_targets[i] = finger_targets[old_index];
+                new_finger_round_trip_times[i] = finger_round_trip_times[old_index];
+            }
+            else {
+                new_finger_targets[i] = fingerTarget(i, new_number_of_fingers);
+                new_finger_round_trip_times[i] = UNKNOWN_ROUND_TRIP_TIME;
+            }
         }
+
+        finger_targets = new_finger_targets;
+        finger_round_trip_times = new_finger_round_trip_times;
+        fingers = new_fingers;
+        modification_count++;
+
+        number_of_fingers = new_number_of_fingers;
+        next_finger_index = Math.max(0, Math.min(next_finger_index + shift, number_of_fingers - 1));
+        last_fixed_index = -1;
+    }
+
+    /**
+     * Returns the number of fingers needed for a ring of a given size, such that the lowest level's target spacing is no greater
+     * than the expected distance from this node to its successor.
+     *
+     * @param ring_size_estimate the estimated number of nodes in the ring
+     * @return the required number of fingers
+     */
+    private int requiredNumberOfFingers(final int ring_size_estimate) {
+
+        // The maximum useful number of levels, at which the lowest level's target spacing is a single key.
+        final int max_number_of_levels = (int) (Key.KEY_LENGTH / (Math.log(inter_finger_ratio) / Math.log(2)));
+
+        final int required_levels = (int) Math.ceil(Math.log(Math.max(ring_size_estimate, 1)) / Math.log(inter_finger_ratio)) + SPARE_LEVELS;
+        return Math.max(1, Math.min(required_levels, max_number_of_levels)) * fingers_per_level;
     }
 
     /**
@@ -209,27 +462,206 @@ class FingerTable {
     }
 
     /**
-     * Sets the correct finger for a given index in the finger table, by routing to the corresponding key.
+     * Sets the correct finger for a given index in the finger table, by routing to the corresponding key unless the owner of the key is already known.
+     * The finger is then chosen by proximity from the nodes that lie in the finger's interval.
      *
      * @param finger_index the index
      * @return true if a new finger was established
      */
     private boolean fixFinger(final int finger_index) {
 
+        // The arrays are replaced if the table is resized, so the finger's target and interval are read from a single snapshot.
+        final IChordRemoteReference[] current_fingers;
+        final long[] current_round_trip_times;
+        final FixedWidthKey target_key;
+        final FixedWidthKey interval_end;
+        final IChordRemoteReference old_finger;
+        synchronized (this) {
+            if (finger_index >= number_of_fingers) { return false; }
+
+            current_fingers = fingers;
+            current_round_trip_times = finger_round_trip_times;
+            target_key = finger_targets[finger_index];
+            interval_end = finger_index < number_of_fingers - 1 ? finger_targets[finger_index + 1] : node_key;
+            old_finger = current_fingers[finger_index];
+        }
+
         try {
-            final IKey target_key = finger_targets[finger_index];
-            final IChordRemoteReference new_finger = node.lookup(target_key);
+            final IChordRemoteReference owner = findOwner(finger_index, target_key);
+
+            final SelectedFinger selected = selectNearestCandidate(target_key, interval_end, owner, old_finger);
+            final IChordRemoteReference new_finger = selected.finger;
 
-            IChordRemoteReference old_finger;
             synchronized (this) {
-                old_finger = fingers[finger_index] != null ? fingers[finger_index] : null;
+                // If the table has been resized meanwhile, the index may now denote a different target, so the finger is left to be fixed again.
+                if (fingers != current_fingers) { return false; }
+
+                current_fingers[finger_index] = new_finger;
+                current_round_trip_times[finger_index] = selected.round_trip_time;
+                modification_count++;
             }
 
-            fingers[finger_index] = new_finger;
-            return old_finger == null || !old_finger.getCachedKey().equals(new_finger.getCachedKey());
+            final boolean changed = old_finger == null || !old_finger.getCachedKey().equals(new_finger.getCachedKey());
+            if (changed) {
+                publishFingers();
+            }
+            return changed;
         }
         catch (final RPCException e) {
             return false;
         }
     }
+
+    /**
+     * Finds the owner of a finger target. A lookup is only made if the owner can't be determined from the node's successor list, or from the ownership
+     * interval of the owner of the adjacent target fixed just before, which is the next further target and was recorded by the lookup that found it.
+     * A cached interval is only used once the owner has confirmed that it still holds the target.
+     *
+     * @param finger_index the index
+     * @param target_key the finger target
+     * @return the owner of the target
+     * @throws RPCException if the lookup fails
+     */
+    private IChordRemoteReference findOwner(final int finger_index, final FixedWidthKey target_key) throws RPCException {
+
+        IChordRemoteReference owner = node.knownOwner(target_key);
+
+        if (owner != null) {
+            skipped_lookup_count++;
+        }
+        else if (last_fixed_owner != null && last_fixed_index == finger_index + 1) {
+
+            final IChordRemoteReference cached_owner = node.confirmedCachedOwner(target_key);
+            if (cached_owner != null && cached_owner.getCachedKey().equals(last_fixed_owner.getCachedKey())) {
+                owner = cached_owner;
+                confirmed_owner_count++;
+            }
+            else {
+                // The ownership cache has already been consulted, so the lookup doesn't consult it again.
+                owner = node.lookupUncached(target_key);
+            }
+        }
+        else {
+            owner = node.lookup(target_key.toKey());
+        }
+
+        last_fixed_owner = owner;
+        last_fixed_index = finger_index;
+        return owner;
+    }
+
+    /**
+     * Selects the finger for a given index by proximity. The candidates are the owner of the finger target and those of the owner's
+     * successors that also lie in the interval between this finger's target and the next. Any of them is a correct finger, so the one
+     * with the lowest measured round trip time is chosen by a {@link ProximitySelector}.
+     *
+     * @param interval_start the finger target
+     * @param interval_end the next finger target, or this node's key for the last finger
+     * @param owner the owner of the finger target
+     * @param current_finger the current finger, or null
+     * @return the selected finger and its round trip time
+     * @throws RPCException if an error occurs in accessing a candidate's key
+     */
+    private SelectedFinger selectNearestCandidate(final FixedWidthKey interval_start, final FixedWidthKey interval_end, final IChordRemoteReference owner, final IChordRemoteReference current_finger) throws RPCException {
+
+        // Fingers pointing to this node aren't used for routing.
+        if (FixedWidthKey.of(owner).equals(node_key)) { return new SelectedFinger(owner, UNKNOWN_ROUND_TRIP_TIME); }
+
+        final List<IChordRemoteReference> candidates = new ArrayList<IChordRemoteReference>();
+        candidates.add(owner);
+
+        try {
+            for (final IChordRemoteReference successor : owner.getRemote().getSuccessorList()) {
+
+                final FixedWidthKey successor_key = FixedWidthKey.of(successor);
+
+                // Successors are in ring order, so stop at the first one outside the interval.
+                if (candidates.size() >= MAX_PROXIMITY_CANDIDATES || !FixedWidthKey.inSegment(interval_start, successor_key, interval_end) || successor_key.equals(interval_end)) {
+                    break;
+                }
+                candidates.add(successor);
+            }
+        }
+        catch (final RPCException e) {
+            // Only the owner can be considered.
+        }
+
+        int current_index = ProximitySelector.NONE;
+        if (current_finger != null) {
+            final FixedWidthKey current_key = FixedWidthKey.of(current_finger);
+            for (int i = 0; i < candidates.size() && current_index == ProximitySelector.NONE; i++) {
+                if (FixedWidthKey.of(candidates.get(i)).equals(current_key)) {
+                    current_index = i;
+                }
+            }
+        }
+
+        final long[] round_trip_times = PROXIMITY_SELECTOR.measureRoundTripTimes(node.getLivenessCache(), candidates);
+        final int selected_index = PROXIMITY_SELECTOR.select(round_trip_times, current_index);
+
+        // If no candidate responded, the owner is still the correct finger.
+        if (selected_index == ProximitySelector.NONE) { return new SelectedFinger(owner, UNKNOWN_ROUND_TRIP_TIME); }
+
+        return new SelectedFinger(candidates.get(selected_index), round_trip_times[selected_index]);
+    }
+
+    /**
+     * Publishes a copy of the current fingers to the node's routing state, which is used for routing. The copy is published outside the lock,
+     * since indexing the fingers by key may involve remote calls, and is tagged with the modification count so that a concurrent publication
+     * of an earlier copy can't replace it.
+     */
+    private void publishFingers() {
+
+        final IChordRemoteReference[] current_fingers;
+        final int modification;
+        synchronized (this) {
+            current_fingers = fingers.clone();
+            modification = modification_count;
+        }
+
+        node.publishFingers(current_fingers, modification);
+    }
+
+    /**
+     * Sets the fingers to the given nodes, unless the table has been resized since the given fingers were read.
+     *
+     * @return true if any fingers were changed
+     */
+    private boolean updateFingers(final IChordRemoteReference[] current_fingers, final IChordRemoteReference[] new_fingers) {
+
+        boolean changed = false;
+
+        synchronized (this) {
+
+            if (fingers != current_fingers) { return false; }
+
+            for (int i = 0; i < new_fingers.length; i++) {
+                if (new_fingers[i] != null && new_fingers[i] != current_fingers[i]) {
+                    current_fingers[i] = new_fingers[i];
+                    finger_round_trip_times[i] = UNKNOWN_ROUND_TRIP_TIME;
+                    changed = true;
+                }
+            }
+            if (changed) {
+                modification_count++;
+            }
+        }
+
+        if (changed) {
+            publishFingers();
+        }
+        return changed;
+    }
+
+    private static final class SelectedFinger {
+
+        private final IChordRemoteReference finger;
+        private final long round_trip_time;
+
+        SelectedFinger(final IChordRemoteReference finger, final long round_trip_time) {
+
+            this.finger = finger;
+            this.round_trip_time = round_trip_time;
+        }
+    }
 }
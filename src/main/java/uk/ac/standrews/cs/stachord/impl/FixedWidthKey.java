@@ -0,0 +1,238 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import java.math.BigInteger;
+
+import uk.ac.standrews.cs.nds.p2p.interfaces.IKey;
+import uk.ac.standrews.cs.nds.p2p.keys.Key;
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+
+/**
+ * A key in the 160-bit key space held as three primitive words, so that ring arithmetic on it doesn't allocate. The high word holds the top
+ * 32 bits of the value, and the middle and low words hold the remaining 128 bits as unsigned longs.
+ * <p>
+ * Keys are converted once, where they enter the node: a key to be routed when a lookup starts or a remote call is received, and the key of a
+ * node reference when the reference is created. A fixed-width key retains the key it was converted from, if any, so that it can be passed on
+ * in remote calls without converting it back. Fixed-width keys are only equal to other fixed-width keys.
+ */
+final class FixedWidthKey implements Comparable<FixedWidthKey> {
+
+    private static final long HIGH_WORD_MASK = 0xFFFFFFFFL;
+    private static final BigInteger KEYSPACE_SIZE = Key.KEYSPACE_SIZE;
+
+    private final long high;
+    private final long middle;
+    private final long low;
+    private final IKey key; // The key from which this was converted, or null if it was computed.
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a key with the given value, reduced modulo the key space size.
+     *
+     * @param value the value
+     */
+    FixedWidthKey(final BigInteger value) {
+
+        this(value, null);
+    }
+
+    private FixedWidthKey(final BigInteger value, final IKey key) {
+
+        final BigInteger reduced_value = value.mod(KEYSPACE_SIZE);
+        high = reduced_value.shiftRight(128).longValue() & HIGH_WORD_MASK;
+        middle = reduced_value.shiftRight(64).longValue();
+        low = reduced_value.longValue();
+        this.key = key;
+    }
+
+    /**
+     * Converts a key to a fixed-width key.
+     *
+     * @param key a key
+     * @return a fixed-width key with the same value, or null if the key is null
+     */
+    static FixedWidthKey valueOf(final IKey key) {
+
+        return key != null ? new FixedWidthKey(key.keyValue(), key) : null;
+    }
+
+    /**
+     * Returns the key of a node as a fixed-width key. The key of a reference created by this node is converted once and retained by the reference.
+     *
+     * @param node a node
+     * @return the node's key
+     * @throws RPCException if an error occurs in accessing the node's key
+     */
+    static FixedWidthKey of(final IChordRemoteReference node) throws RPCException {
+
+        if (node instanceof ChordRemoteReference) { return ((ChordRemoteReference) node).getFixedWidthKey(); }
+        if (node instanceof ChordLocalReference) { return of(((ChordLocalReference) node).getRemoteReference()); }
+        return valueOf(node.getCachedKey());
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the key from which this was converted, or otherwise a new key with the same value.
+     *
+     * @return the key
+     */
+    IKey toKey() {
+
+        return key != null ? key : new Key(keyValue());
+    }
+
+    /**
+     * Returns the value of this key.
+     *
+     * @return the value
+     */
+    BigInteger keyValue() {
+
+        return BigInteger.valueOf(high).shiftLeft(128).or(unsigned(middle).shiftLeft(64)).or(unsigned(low));
+    }
+
+    @Override
+    public int compareTo(final FixedWidthKey other) {
+
+        return compareWords(high, middle, low, other.high, other.middle, other.low);
+    }
+
+    @Override
+    public boolean equals(final Object other) {
+
+        return other instanceof FixedWidthKey && equalWords((FixedWidthKey) other);
+    }
+
+    @Override
+    public int hashCode() {
+
+        return Long.hashCode(high) * 31 * 31 + Long.hashCode(middle) * 31 + Long.hashCode(low);
+    }
+
+    @Override
+    public String toString() {
+
+        return toKey().toString();
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Tests whether a key lies in the ring segment that starts after one key and ends with another. If the start and end are the same,
+     * the segment is the whole ring.
+     *
+     * @param start the key before the segment
+     * @param k the key to be tested
+     * @param end the last key in the segment
+     * @return true if k lies in the segment
+     */
+    static boolean inSegment(final FixedWidthKey start, final FixedWidthKey k, final FixedWidthKey end) {
+
+        if (start.equalWords(end)) { return true; }
+        return !start.equalWords(k) && compareDistances(start, k, end) <= 0;
+    }
+
+    /**
+     * Tests whether the second key lies on the clockwise path from the first key to the third, inclusive.
+     *
+     * @param first the first key
+     * @param second the second key
+     * @param third the third key
+     * @return true if the clockwise distance from the first key to the second is no greater than that to the third
+     */
+    static boolean inRingOrder(final FixedWidthKey first, final FixedWidthKey second, final FixedWidthKey third) {
+
+        return compareDistances(first, second, third) <= 0;
+    }
+
+    /**
+     * Compares the clockwise distances from an origin to two keys.
+     *
+     * @param origin the origin
+     * @param k1 the first key
+     * @param k2 the second key
+     * @return a negative integer, zero or a positive integer as the distance to the first key is less than, equal to or greater than the distance to the second
+     */
+    static int compareDistances(final FixedWidthKey origin, final FixedWidthKey k1, final FixedWidthKey k2) {
+
+        return compareWords(distanceHigh(origin, k1), distanceMiddle(origin, k1), distanceLow(origin, k1), distanceHigh(origin, k2), distanceMiddle(origin, k2), distanceLow(origin, k2));
+    }
+
+    /**
+     * Compares two 160-bit values given as words.
+     *
+     * @return a negative integer, zero or a positive integer as the first value is less than, equal to or greater than the second
+     */
+    static int compareWords(final long high1, final long middle1, final long low1, final long high2, final long middle2, final long low2) {
+
+        if (high1 != high2) { return high1 < high2 ? -1 : 1; }
+        if (middle1 != middle2) { return Long.compareUnsigned(middle1, middle2); }
+        return Long.compareUnsigned(low1, low2);
+    }
+
+    // The clockwise distance from one key to another is computed a word at a time, propagating borrows from the lower words.
+
+    static long distanceHigh(final FixedWidthKey from, final FixedWidthKey to) {
+
+        return to.high - from.high - middleBorrow(from, to) & HIGH_WORD_MASK;
+    }
+
+    static long distanceMiddle(final FixedWidthKey from, final FixedWidthKey to) {
+
+        return to.middle - from.middle - lowBorrow(from, to);
+    }
+
+    static long distanceLow(final FixedWidthKey from, final FixedWidthKey to) {
+
+        return to.low - from.low;
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    private boolean equalWords(final FixedWidthKey other) {
+
+        return low == other.low && middle == other.middle && high == other.high;
+    }
+
+    private static long lowBorrow(final FixedWidthKey from, final FixedWidthKey to) {
+
+        return Long.compareUnsigned(to.low, from.low) < 0 ? 1 : 0;
+    }
+
+    private static long middleBorrow(final FixedWidthKey from, final FixedWidthKey to) {
+
+        return Long.compareUnsigned(to.middle, from.middle) < 0 || to.middle == from.middle && lowBorrow(from, to) == 1 ? 1 : 0;
+    }
+
+    private static BigInteger unsigned(final long word) {
+
+        final BigInteger value = BigInteger.valueOf(word);
+        return word >= 0 ? value : value.add(BigInteger.ONE.shiftLeft(64));
+    }
+}
@@ -0,0 +1,79 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+
+package uk.ac.standrews.cs.stachord.impl;
+
+import java.util.Arrays;
+
+/**
+ * Records the most recent latencies of calls to a remote node, and reports percentiles of them.
+ */
+class LatencyTracker {
+
+    /**
+     * The value returned by {@link #getPercentile(double)} when too few latencies have been recorded.
+     */
+    static final long UNKNOWN_LATENCY = -1;
+
+    private static final int WINDOW_SIZE = 64; // The number of most recent latencies retained.
+    private static final int MIN_SAMPLES = 10; // The number of latencies needed before percentiles are reported.
+
+    private final long[] latencies = new long[WINDOW_SIZE]; // Circular buffer of latencies in ns.
+    private int number_of_samples = 0;
+    private int next_sample_index = 0;
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Records the latency of a call.
+     *
+     * @param latency the latency in ns
+     */
+    synchronized void record(final long latency) {
+
+        latencies[next_sample_index] = latency;
+        next_sample_index = (next_sample_index + 1) % WINDOW_SIZE;
+        number_of_samples = Math.min(number_of_samples + 1, WINDOW_SIZE);
+    }
+
+    /**
+     * Returns a given percentile of the recorded latencies.
+     *
+     * @param percentile the percentile, between 0 and 1
+     * @return the latency in ns, or {@link #UNKNOWN_LATENCY} if too few latencies have been recorded
+     */
+    long getPercentile(final double percentile) {
+
+        final long[] samples;
+        synchronized (this) {
+            if (number_of_samples < MIN_SAMPLES) { return UNKNOWN_LATENCY; }
+            samples = Arrays.copyOf(latencies, number_of_samples);
+        }
+
+        Arrays.sort(samples);
+        final int index = (int) Math.ceil(percentile * samples.length) - 1;
+        return samples[Math.max(0, Math.min(index, samples.length - 1))];
+    }
+}
@@ -0,0 +1,197 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemote;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+
+/**
+ * Cache of the outcomes of recent probes of other nodes, shared by the parts of a node that ping its neighbours. A node that failed to answer
+ * recently can be passed over when a live node is needed quickly. Entries expire after a fixed lifetime, and the cache is bounded, with the
+ * least recently probed entries evicted first.
+ */
+class LivenessCache {
+
+    private final int capacity; // The maximum number of entries.
+    private final long lifetime; // The time in nanoseconds after which a probe outcome is no longer used.
+    private final LinkedHashMap<FixedWidthKey, Probe> probes_by_age; // Most recent probe outcomes keyed by node key, least recently probed first.
+    private final Executor probe_executor; // The executor on which pings of remote nodes are made.
+
+    // -------------------------------------------------------------------------------------------------------
+
+    LivenessCache(final int capacity, final long lifetime, final Executor probe_executor) {
+
+        this.capacity = capacity;
+        this.lifetime = lifetime;
+        this.probe_executor = probe_executor;
+        probes_by_age = new LinkedHashMap<FixedWidthKey, Probe>();
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Pings the given node, on the probe executor if it is remote, and records the outcome when the ping has completed.
+     * Only a ping that was made and failed is recorded as a failure, so a ping that can't be made because the executor has been shut down isn't.
+     *
+     * @param node the node
+     * @return a future completed when the node has answered and the outcome has been recorded, or completed exceptionally if the ping failed
+     */
+    CompletableFuture<Void> probe(final IChordRemoteReference node) {
+
+        final IChordRemote remote = node.getRemote();
+        final CompletableFuture<Void> ping;
+
+        if (remote instanceof ChordRemoteProxy) {
+            ping = pingAsync((ChordRemoteProxy) remote);
+        }
+        else {
+            // Not a remote node, so the call can be made directly.
+            ping = new CompletableFuture<Void>();
+            try {
+                node.ping();
+                ping.complete(null);
+            }
+            catch (final RPCException e) {
+                ping.completeExceptionally(e);
+            }
+        }
+
+        return ping.whenComplete(new BiConsumer<Void, Throwable>() {
+
+            @Override
+            public void accept(final Void result, final Throwable error) {
+
+                if (error == null) {
+                    record(node, true);
+                }
+                else if (error instanceof RPCException || error.getCause() instanceof RPCException) {
+                    record(node, false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Records the outcome of a probe of the given node. Nodes whose keys can't be accessed are ignored.
+     *
+     * @param node the node
+     * @param live true if the node answered
+     */
+    synchronized void record(final IChordRemoteReference node, final boolean live) {
+
+        final FixedWidthKey node_key = keyOf(node);
+        if (node_key == null) { return; }
+
+        probes_by_age.remove(node_key); // Move a refreshed entry to the end.
+        probes_by_age.put(node_key, new Probe(live, System.nanoTime()));
+
+        if (probes_by_age.size() > capacity) {
+            final Iterator<FixedWidthKey> least_recently_probed = probes_by_age.keySet().iterator();
+            least_recently_probed.next();
+            least_recently_probed.remove();
+        }
+    }
+
+    /**
+     * Checks whether the given node failed to answer its most recent probe, within the lifetime of the cache.
+     *
+     * @param node the node
+     * @return true if the node is recently known to have failed
+     */
+    synchronized boolean isKnownDead(final IChordRemoteReference node) {
+
+        final Probe probe = recentProbe(node);
+        return probe != null && !probe.live;
+    }
+
+    /**
+     * Checks whether the given node answered its most recent probe, within the lifetime of the cache.
+     *
+     * @param node the node
+     * @return true if the node is recently known to be live
+     */
+    synchronized boolean isKnownLive(final IChordRemoteReference node) {
+
+        final Probe probe = recentProbe(node);
+        return probe != null && probe.live;
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    private CompletableFuture<Void> pingAsync(final ChordRemoteProxy remote) {
+
+        try {
+            return remote.pingAsync(probe_executor);
+        }
+        catch (final RejectedExecutionException e) {
+            final CompletableFuture<Void> ping = new CompletableFuture<Void>();
+            ping.completeExceptionally(e);
+            return ping;
+        }
+    }
+
+    private Probe recentProbe(final IChordRemoteReference node) {
+
+        final FixedWidthKey node_key = keyOf(node);
+        if (node_key == null) { return null; }
+
+        final Probe probe = probes_by_age.get(node_key);
+        if (probe != null && System.nanoTime() - probe.probe_time > lifetime) {
+            probes_by_age.remove(node_key);
+            return null;
+        }
+        return probe;
+    }
+
+    private static FixedWidthKey keyOf(final IChordRemoteReference node) {
+
+        try {
+            return FixedWidthKey.of(node);
+        }
+        catch (final RPCException e) {
+            return null;
+        }
+    }
+
+    private static final class Probe {
+
+        private final boolean live;
+        private final long probe_time;
+
+        Probe(final boolean live, final long probe_time) {
+
+            this.live = live;
+            this.probe_time = probe_time;
+        }
+    }
+}
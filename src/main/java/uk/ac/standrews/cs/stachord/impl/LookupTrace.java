@@ -0,0 +1,202 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+
+package uk.ac.standrews.cs.stachord.impl;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import uk.ac.standrews.cs.nds.p2p.interfaces.IKey;
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+import uk.ac.standrews.cs.stachord.interfaces.ILookupHop;
+import uk.ac.standrews.cs.stachord.interfaces.ILookupTrace;
+import uk.ac.standrews.cs.utilities.archive.Duration;
+
+/**
+ * Records how a lookup was routed: the remote hops visited in order, including any that failed, with the latency of each.
+ */
+class LookupTrace implements ILookupTrace {
+
+    private final IKey key;
+    private final List<ILookupHop> hops;
+    private final long start_time;
+
+    private volatile IChordRemoteReference owner;
+    private volatile long total_time;
+
+    /**
+     * Constructs a trace for a lookup that is about to start.
+     * @param key the key being looked up
+     */
+    LookupTrace(final IKey key) {
+
+        this.key = key;
+        hops = Collections.synchronizedList(new ArrayList<ILookupHop>());
+        start_time = System.nanoTime();
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    @Override
+    public IKey getKey() {
+
+        return key;
+    }
+
+    @Override
+    public IChordRemoteReference getOwner() {
+
+        return owner;
+    }
+
+    @Override
+    public List<ILookupHop> getHops() {
+
+        synchronized (hops) {
+            return new ArrayList<ILookupHop>(hops);
+        }
+    }
+
+    @Override
+    public List<ILookupHop> getFailedHops() {
+
+        final List<ILookupHop> failed_hops = new ArrayList<ILookupHop>();
+        for (final ILookupHop hop : getHops()) {
+            if (hop.hasFailed()) {
+                failed_hops.add(hop);
+            }
+        }
+        return failed_hops;
+    }
+
+    @Override
+    public Duration getTotalTime() {
+
+        return new Duration(total_time, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Duration getRemoteRoutingTime() {
+
+        long remote_routing_time = 0;
+        for (final ILookupHop hop : getHops()) {
+            remote_routing_time += hop.getLatency().getLength(TimeUnit.NANOSECONDS);
+        }
+        return new Duration(remote_routing_time, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("lookup of key: " + key + " owner: " + (owner != null ? owner.getCachedAddress() : "none"));
+        buffer.append(" total: " + TimeUnit.NANOSECONDS.toMicros(total_time) + "us");
+        buffer.append(" remote: " + getRemoteRoutingTime().getLength(TimeUnit.MICROSECONDS) + "us\n");
+
+        for (final ILookupHop hop : getHops()) {
+            buffer.append(hop);
+            buffer.append("\n");
+        }
+        return buffer.toString();
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    void addHop(final IChordRemoteReference node, final long latency) {
+
+        hops.add(new Hop(node, latency, false));
+    }
+
+    void addFailedHop(final IChordRemoteReference node, final long latency) {
+
+        hops.add(new Hop(node, latency, true));
+    }
+
+    void complete(final IChordRemoteReference owner) {
+
+        this.owner = owner;
+        total_time = System.nanoTime() - start_time;
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    private static final class Hop implements ILookupHop {
+
+        private final IKey key;
+        private final InetSocketAddress address;
+        private final long latency;
+        private final boolean failed;
+
+        private Hop(final IChordRemoteReference node, final long latency, final boolean failed) {
+
+            IKey node_key;
+            try {
+                node_key = node.getCachedKey();
+            }
+            catch (final RPCException e) {
+                node_key = null;
+            }
+
+            key = node_key;
+            address = node.getCachedAddress();
+            this.latency = latency;
+            this.failed = failed;
+        }
+
+        @Override
+        public IKey getKey() {
+
+            return key;
+        }
+
+        @Override
+        public InetSocketAddress getAddress() {
+
+            return address;
+        }
+
+        @Override
+        public Duration getLatency() {
+
+            return new Duration(latency, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public boolean hasFailed() {
+
+            return failed;
+        }
+
+        @Override
+        public String toString() {
+
+            return "hop key: " + key + " address: " + address + " latency: " + TimeUnit.NANOSECONDS.toMicros(latency) + "us" + (failed ? " failed" : "");
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+
+/**
+ * Records a recent change in ring membership observed by some node, as piggybacked on the stabilization and routing calls between nodes.
+ * Each delta carries the number of further times it may be relayed onwards, so that it spreads a short distance from where it was observed.
+ */
+public class MembershipDelta {
+
+    /**
+     * The kinds of membership change.
+     */
+    public enum Kind {
+
+        /**
+         * A node has joined the ring.
+         */
+        JOINED,
+
+        /**
+         * A node has been found to have failed.
+         */
+        FAILED,
+
+        /**
+         * A node has changed its network address.
+         */
+        ADDRESS_CHANGED
+    }
+
+    private final Kind kind;
+    private final IChordRemoteReference node;
+    private final int hops_remaining;
+
+    /**
+     * Constructs a new record.
+     * @param kind the kind of change
+     * @param node the node that joined, failed or changed its address, in the last case with its new address
+     * @param hops_remaining the number of further times the delta may be relayed onwards by the nodes that receive it
+     */
+    public MembershipDelta(final Kind kind, final IChordRemoteReference node, final int hops_remaining) {
+
+        this.kind = kind;
+        this.node = node;
+        this.hops_remaining = hops_remaining;
+    }
+
+    /**
+     * Returns the kind of change.
+     * @return the kind of change
+     */
+    public Kind getKind() {
+
+        return kind;
+    }
+
+    /**
+     * Returns the node.
+     * @return the node
+     */
+    public IChordRemoteReference getNode() {
+
+        return node;
+    }
+
+    /**
+     * Returns the number of further times the delta may be relayed onwards.
+     * @return the number of further times the delta may be relayed onwards
+     */
+    public int getHopsRemaining() {
+
+        return hops_remaining;
+    }
+}
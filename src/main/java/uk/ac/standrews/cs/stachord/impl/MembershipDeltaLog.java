@@ -0,0 +1,169 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+
+/**
+ * Log of recent membership changes, either observed by the node that owns the log or received from other nodes, to be piggybacked on its calls.
+ * There is at most one delta per node, the most recent; the log is bounded, with the oldest deltas evicted first, and deltas expire after a fixed lifetime.
+ * Each delta is piggybacked on a fixed number of calls, after which it is only retained so that repeated copies of it can be recognised.
+ */
+class MembershipDeltaLog {
+
+    private final int capacity; // The maximum number of deltas.
+    private final long lifetime; // The time in nanoseconds after which a delta is no longer passed on.
+    private final int initial_hops; // The number of times a locally observed delta may be relayed onwards by the nodes that receive it.
+    private final int send_budget; // The number of calls on which each delta is piggybacked.
+    private final LinkedHashMap<FixedWidthKey, LoggedDelta> deltas_by_age; // Deltas keyed by the node's key, least recently logged first.
+
+    // -------------------------------------------------------------------------------------------------------
+
+    MembershipDeltaLog(final int capacity, final long lifetime, final int initial_hops, final int send_budget) {
+
+        this.capacity = capacity;
+        this.lifetime = lifetime;
+        this.initial_hops = initial_hops;
+        this.send_budget = send_budget;
+        deltas_by_age = new LinkedHashMap<FixedWidthKey, LoggedDelta>();
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Records a change observed by the owning node. Nodes whose keys can't be accessed are ignored.
+     *
+     * @param kind the kind of change
+     * @param node the node
+     */
+    synchronized void record(final MembershipDelta.Kind kind, final IChordRemoteReference node) {
+
+        add(new MembershipDelta(kind, node, initial_hops));
+    }
+
+    /**
+     * Checks whether the same change has already been logged for the node that a delta concerns.
+     *
+     * @param delta a delta
+     * @return true if an unexpired delta of the same kind is logged for the node
+     */
+    synchronized boolean isKnown(final MembershipDelta delta) {
+
+        final LoggedDelta existing = deltas_by_age.get(keyOf(delta.getNode()));
+        return existing != null && existing.delta.getKind() == delta.getKind() && !existing.hasExpired(System.nanoTime(), lifetime);
+    }
+
+    /**
+     * Records a delta received from another node, to be relayed one fewer time, unless the same change has already been logged for the node.
+     *
+     * @param delta the received delta
+     * @return true if the delta is new to the log, and so should be applied
+     */
+    synchronized boolean receive(final MembershipDelta delta) {
+
+        if (isKnown(delta)) { return false; }
+
+        return add(new MembershipDelta(delta.getKind(), delta.getNode(), delta.getHopsRemaining() - 1));
+    }
+
+    /**
+     * Returns the unexpired deltas that may still be relayed and haven't used up their sends, most recent first. Each returned delta uses up one send.
+     *
+     * @return the deltas to be piggybacked on a call
+     */
+    synchronized List<MembershipDelta> piggyback() {
+
+        final long now = System.nanoTime();
+        final List<MembershipDelta> deltas = new ArrayList<MembershipDelta>();
+
+        final Iterator<LoggedDelta> iterator = deltas_by_age.values().iterator();
+        while (iterator.hasNext()) {
+
+            final LoggedDelta logged = iterator.next();
+            if (logged.hasExpired(now, lifetime)) {
+                iterator.remove();
+            }
+            else if (logged.sends_remaining > 0) {
+                logged.sends_remaining--;
+                deltas.add(0, logged.delta);
+            }
+        }
+
+        return deltas;
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    private boolean add(final MembershipDelta delta) {
+
+        final FixedWidthKey node_key = keyOf(delta.getNode());
+        if (node_key == null) { return false; }
+
+        deltas_by_age.remove(node_key); // Move a replaced delta to the end.
+        deltas_by_age.put(node_key, new LoggedDelta(delta, System.nanoTime(), delta.getHopsRemaining() > 0 ? send_budget : 0));
+
+        if (deltas_by_age.size() > capacity) {
+            final Iterator<FixedWidthKey> oldest = deltas_by_age.keySet().iterator();
+            oldest.next();
+            oldest.remove();
+        }
+        return true;
+    }
+
+    private static FixedWidthKey keyOf(final IChordRemoteReference node) {
+
+        try {
+            return FixedWidthKey.of(node);
+        }
+        catch (final RPCException e) {
+            return null;
+        }
+    }
+
+    private static final class LoggedDelta {
+
+        private final MembershipDelta delta;
+        private final long logged_time;
+        private int sends_remaining;
+
+        LoggedDelta(final MembershipDelta delta, final long logged_time, final int sends_remaining) {
+
+            this.delta = delta;
+            this.logged_time = logged_time;
+            this.sends_remaining = sends_remaining;
+        }
+
+        boolean hasExpired(final long now, final long lifetime) {
+
+            return now - logged_time > lifetime;
+        }
+    }
+}
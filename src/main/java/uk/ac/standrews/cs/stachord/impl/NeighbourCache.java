@@ -0,0 +1,156 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+
+/**
+ * Cache of nodes learned in passing, from lookup responses and from nodes that contact this one, used as extra routing candidates
+ * alongside the fingers and successors. Entries are only hints: they expire after a fixed lifetime, are removed when the node is
+ * suspected to have failed, and the cache is bounded, with the least recently learned entries evicted first.
+ */
+class NeighbourCache {
+
+    private final FixedWidthKey origin; // The key of the node that owns the cache, which is never cached.
+    private final int capacity; // The maximum number of entries.
+    private final long lifetime; // The time in nanoseconds after which an entry is no longer used.
+    private final TreeMap<FixedWidthKey, Neighbour> neighbours_by_key; // Neighbours sorted by key.
+    private final LinkedHashMap<FixedWidthKey, Neighbour> neighbours_by_age; // The same neighbours, least recently learned first.
+
+    // -------------------------------------------------------------------------------------------------------
+
+    NeighbourCache(final FixedWidthKey origin, final int capacity, final long lifetime) {
+
+        this.origin = origin;
+        this.capacity = capacity;
+        this.lifetime = lifetime;
+        neighbours_by_key = new TreeMap<FixedWidthKey, Neighbour>();
+        neighbours_by_age = new LinkedHashMap<FixedWidthKey, Neighbour>();
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Records the given node, or refreshes it if it is already cached. Nodes whose keys can't be accessed are ignored.
+     *
+     * @param node a node
+     */
+    synchronized void learn(final IChordRemoteReference node) {
+
+        final FixedWidthKey node_key;
+        try {
+            node_key = FixedWidthKey.of(node);
+        }
+        catch (final RPCException e) {
+            return;
+        }
+
+        if (node_key.equals(origin)) { return; }
+
+        final Neighbour neighbour = new Neighbour(node, System.nanoTime());
+        neighbours_by_key.put(node_key, neighbour);
+        neighbours_by_age.remove(node_key); // Move a refreshed entry to the end.
+        neighbours_by_age.put(node_key, neighbour);
+
+        if (neighbours_by_age.size() > capacity) {
+            final Iterator<FixedWidthKey> least_recently_learned = neighbours_by_age.keySet().iterator();
+            neighbours_by_key.remove(least_recently_learned.next());
+            least_recently_learned.remove();
+        }
+    }
+
+    /**
+     * Returns the cached node that extends the furthest round the ring from the origin without passing the given key.
+     *
+     * @param target the target key
+     * @return the closest preceding cached node, or null if no unexpired cached node precedes the key
+     */
+    synchronized IChordRemoteReference closestPrecedingNode(final FixedWidthKey target) {
+
+        final long now = System.nanoTime();
+
+        // The closest preceding node is the first node at or before the key, wrapping round the ring, provided that it lies after the origin.
+        Map.Entry<FixedWidthKey, Neighbour> entry = floorEntry(target);
+
+        while (entry != null && entry.getValue().hasExpired(now, lifetime)) {
+            remove(entry.getKey());
+            entry = floorEntry(target);
+        }
+
+        if (entry != null && FixedWidthKey.inSegment(origin, entry.getKey(), target)) { return entry.getValue().node; }
+        return null;
+    }
+
+    /**
+     * Removes the node with the given key, if it is cached.
+     *
+     * @param node_key the key of the node
+     */
+    synchronized void remove(final FixedWidthKey node_key) {
+
+        neighbours_by_key.remove(node_key);
+        neighbours_by_age.remove(node_key);
+    }
+
+    /**
+     * Returns the number of cached nodes, including any that have expired but not yet been removed.
+     * @return the number of cached nodes
+     */
+    synchronized int size() {
+
+        return neighbours_by_key.size();
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    private Map.Entry<FixedWidthKey, Neighbour> floorEntry(final FixedWidthKey k) {
+
+        final Map.Entry<FixedWidthKey, Neighbour> entry = neighbours_by_key.floorEntry(k);
+        return entry != null ? entry : neighbours_by_key.lastEntry();
+    }
+
+    private static final class Neighbour {
+
+        private final IChordRemoteReference node;
+        private final long learned_time;
+
+        Neighbour(final IChordRemoteReference node, final long learned_time) {
+
+            this.node = node;
+            this.learned_time = learned_time;
+        }
+
+        boolean hasExpired(final long now, final long lifetime) {
+
+            return now - learned_time > lifetime;
+        }
+    }
+}
@@ -25,10 +25,16 @@
 
 package uk.ac.standrews.cs.stachord.impl;
 
+import java.util.Collections;
+import java.util.List;
+
 import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
 
 /**
  * Binds together a reference to a remote node and a flag indicating whether that node is the last hop in an invocation of the routing protocol.
+ * A result that is not the final hop may also carry alternative next hops, which also precede the target key, in order of preference.
+ * For a final hop, the alternatives are the nodes that follow the owner round the ring, as known to the node that gave it.
+ * A result returned by a remote node may also carry that node's recent membership deltas.
  *
  * @author Graham Kirby (graham.kirby@st-andrews.ac.uk)
  */
@@ -36,16 +42,43 @@ public class NextHopResult {
 
     private final boolean is_final_hop;
     private final IChordRemoteReference node;
+    private final List<IChordRemoteReference> alternatives;
+    private final List<MembershipDelta> membership_deltas;
 
     /**
-     * Constructs a new record.
+     * Constructs a new record with no alternative next hops.
      * @param node the node
      * @param is_final_hop the flag
      */
     public NextHopResult(final IChordRemoteReference node, final boolean is_final_hop) {
 
+        this(node, is_final_hop, Collections.<IChordRemoteReference> emptyList());
+    }
+
+    /**
+     * Constructs a new record.
+     * @param node the node
+     * @param is_final_hop the flag
+     * @param alternatives alternative next hops, in order of preference
+     */
+    public NextHopResult(final IChordRemoteReference node, final boolean is_final_hop, final List<IChordRemoteReference> alternatives) {
+
+        this(node, is_final_hop, alternatives, Collections.<MembershipDelta> emptyList());
+    }
+
+    /**
+     * Constructs a new record carrying membership deltas.
+     * @param node the node
+     * @param is_final_hop the flag
+     * @param alternatives alternative next hops, in order of preference
+     * @param membership_deltas recent membership deltas known to the node giving the result
+     */
+    public NextHopResult(final IChordRemoteReference node, final boolean is_final_hop, final List<IChordRemoteReference> alternatives, final List<MembershipDelta> membership_deltas) {
+
         this.is_final_hop = is_final_hop;
         this.node = node;
+        this.alternatives = Collections.unmodifiableList(alternatives);
+        this.membership_deltas = Collections.unmodifiableList(membership_deltas);
     }
 
     /**
@@ -65,4 +98,32 @@ public class NextHopResult {
 
         return node;
     }
+
+    /**
+     * Returns the alternative next hops.
+     * @return the alternative next hops, in order of preference
+     */
+    public List<IChordRemoteReference> getAlternatives() {
+
+        return alternatives;
+    }
+
+    /**
+     * Returns the membership deltas.
+     * @return the membership deltas, which may be empty
+     */
+    public List<MembershipDelta> getMembershipDeltas() {
+
+        return membership_deltas;
+    }
+
+    /**
+     * Returns a copy of this result carrying the given membership deltas.
+     * @param membership_deltas recent membership deltas known to the node giving the result
+     * @return the copy
+     */
+    public NextHopResult withMembershipDeltas(final List<MembershipDelta> membership_deltas) {
+
+        return new NextHopResult(node, is_final_hop, alternatives, membership_deltas);
+    }
 }
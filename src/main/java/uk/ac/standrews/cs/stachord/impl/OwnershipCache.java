@@ -0,0 +1,158 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+
+package uk.ac.standrews.cs.stachord.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+
+/**
+ * Cache of learned key ownership intervals, each recording that a node owns the keys between a predecessor key (exclusive) and its own key (inclusive).
+ * Entries are only hints: a cached owner must be confirmed before being used as a lookup result. The cache is bounded, with least recently used entries evicted first.
+ */
+class OwnershipCache {
+
+    private final int capacity; // The maximum number of entries.
+    private final TreeMap<FixedWidthKey, Interval> intervals_by_owner_key; // Intervals sorted by owner key.
+    private final LinkedHashMap<FixedWidthKey, Interval> intervals_by_use; // The same intervals, in least recently used order.
+
+    // -------------------------------------------------------------------------------------------------------
+
+    OwnershipCache(final int capacity) {
+
+        this.capacity = capacity;
+        intervals_by_owner_key = new TreeMap<FixedWidthKey, Interval>();
+        intervals_by_use = new LinkedHashMap<FixedWidthKey, Interval>(16, 0.75f, true);
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the cached owner of the given key, if any.
+     *
+     * @param k a key
+     * @return the node believed to own the key, or null if no cached interval contains it
+     */
+    synchronized IChordRemoteReference getOwner(final FixedWidthKey k) {
+
+        // The only interval that can contain the key is the one with the first owner key at or after it, wrapping round the ring.
+        Map.Entry<FixedWidthKey, Interval> entry = intervals_by_owner_key.ceilingEntry(k);
+        if (entry == null) {
+            entry = intervals_by_owner_key.firstEntry();
+        }
+
+        if (entry != null && entry.getValue().contains(k)) {
+            intervals_by_use.get(entry.getKey()); // Record the use.
+            return entry.getValue().owner;
+        }
+        return null;
+    }
+
+    /**
+     * Records that the given node owns the keys after the given predecessor key, up to and including its own key.
+     *
+     * @param predecessor_key the key of the owner's predecessor
+     * @param owner_key the key of the owner
+     * @param owner the owner
+     */
+    synchronized void put(final FixedWidthKey predecessor_key, final FixedWidthKey owner_key, final IChordRemoteReference owner) {
+
+        final Interval interval = new Interval(predecessor_key, owner_key, owner);
+        intervals_by_owner_key.put(owner_key, interval);
+        intervals_by_use.put(owner_key, interval);
+
+        if (intervals_by_use.size() > capacity) {
+            final Iterator<FixedWidthKey> least_recently_used = intervals_by_use.keySet().iterator();
+            intervals_by_owner_key.remove(least_recently_used.next());
+            least_recently_used.remove();
+        }
+    }
+
+    /**
+     * Removes any interval owned by the node with the given key.
+     *
+     * @param owner_key the key of the owner
+     */
+    synchronized void remove(final FixedWidthKey owner_key) {
+
+        intervals_by_owner_key.remove(owner_key);
+        intervals_by_use.remove(owner_key);
+    }
+
+    /**
+     * Removes the intervals that contain the given key, other than as the owner key, since a node with that key now owns the keys in them
+     * up to its own key. An interval owned by the node itself is kept.
+     *
+     * @param node_key the key of a node that has joined or been learned of
+     */
+    synchronized void invalidate(final FixedWidthKey node_key) {
+
+        // Only the intervals with the first owner keys after the node's key, wrapping round the ring, can contain it and be used for lookups.
+        while (true) {
+
+            Map.Entry<FixedWidthKey, Interval> entry = intervals_by_owner_key.higherEntry(node_key);
+            if (entry == null) {
+                entry = intervals_by_owner_key.firstEntry();
+            }
+
+            if (entry == null || entry.getKey().equals(node_key) || !entry.getValue().contains(node_key)) { return; }
+            remove(entry.getKey());
+        }
+    }
+
+    /**
+     * Removes all intervals.
+     */
+    synchronized void clear() {
+
+        intervals_by_owner_key.clear();
+        intervals_by_use.clear();
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    private static final class Interval {
+
+        private final FixedWidthKey predecessor_key;
+        private final FixedWidthKey owner_key;
+        private final IChordRemoteReference owner;
+
+        Interval(final FixedWidthKey predecessor_key, final FixedWidthKey owner_key, final IChordRemoteReference owner) {
+
+            this.predecessor_key = predecessor_key;
+            this.owner_key = owner_key;
+            this.owner = owner;
+        }
+
+        boolean contains(final FixedWidthKey k) {
+
+            return FixedWidthKey.inSegment(predecessor_key, k, owner_key);
+        }
+    }
+}
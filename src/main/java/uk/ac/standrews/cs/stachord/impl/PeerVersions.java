@@ -0,0 +1,121 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemote;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+
+/**
+ * Cache of the remote protocol versions of other nodes, so that calls added since the baseline protocol are only made to nodes that have said
+ * they support them. A node that doesn't answer the version call is taken to implement the baseline protocol until the entry expires, which is
+ * always safe: at worst a newer node is sent the equivalent baseline calls. Entries are keyed by address, since that is what a version belongs to,
+ * and the cache is bounded, with the least recently queried entries evicted first.
+ */
+class PeerVersions {
+
+    private final int capacity; // The maximum number of entries.
+    private final long lifetime; // The time in nanoseconds after which a version is queried again.
+    private final LinkedHashMap<InetSocketAddress, Version> versions_by_age; // Most recent versions keyed by node address, least recently queried first.
+
+    // -------------------------------------------------------------------------------------------------------
+
+    PeerVersions(final int capacity, final long lifetime) {
+
+        this.capacity = capacity;
+        this.lifetime = lifetime;
+        versions_by_age = new LinkedHashMap<InetSocketAddress, Version>();
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the protocol version of the given node, querying it if no recent version is known.
+     *
+     * @param node the node
+     * @return the node's protocol version, or {@link IChordRemote#BASELINE_PROTOCOL_VERSION} if it didn't answer the version call
+     */
+    int versionOf(final IChordRemoteReference node) {
+
+        final InetSocketAddress address = node.getCachedAddress();
+
+        synchronized (this) {
+            final Version version = recentVersion(address);
+            if (version != null) { return version.version; }
+        }
+
+        int version;
+        try {
+            version = node.getRemote().getProtocolVersion();
+        }
+        catch (final RPCException e) {
+            // Either a node that predates the call or one that couldn't be reached; the baseline calls suit both.
+            version = IChordRemote.BASELINE_PROTOCOL_VERSION;
+        }
+
+        record(address, version);
+        return version;
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    private synchronized void record(final InetSocketAddress address, final int version) {
+
+        versions_by_age.remove(address); // Move a refreshed entry to the end.
+        versions_by_age.put(address, new Version(version, System.nanoTime()));
+
+        if (versions_by_age.size() > capacity) {
+            final Iterator<InetSocketAddress> least_recently_queried = versions_by_age.keySet().iterator();
+            least_recently_queried.next();
+            least_recently_queried.remove();
+        }
+    }
+
+    private Version recentVersion(final InetSocketAddress address) {
+
+        final Version version = versions_by_age.get(address);
+        if (version != null && System.nanoTime() - version.query_time > lifetime) {
+            versions_by_age.remove(address);
+            return null;
+        }
+        return version;
+    }
+
+    private static final class Version {
+
+        private final int version;
+        private final long query_time;
+
+        Version(final int version, final long query_time) {
+
+            this.version = version;
+            this.query_time = query_time;
+        }
+    }
+}
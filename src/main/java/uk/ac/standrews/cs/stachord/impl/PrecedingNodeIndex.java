@@ -0,0 +1,197 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+
+package uk.ac.standrews.cs.stachord.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+
+/**
+ * An immutable index of nodes sorted by clockwise ring distance from an origin key, used to find the node that most closely precedes a given key.
+ * Keys are resolved when the index is built, and distances are held as primitive 160-bit values split across three words, so a search
+ * makes no remote calls and doesn't allocate.
+ */
+final class PrecedingNodeIndex {
+
+    private final FixedWidthKey origin;
+
+    // Distances from the origin to the nodes, in increasing order.
+    private final long[] distance_highs;
+    private final long[] distance_middles;
+    private final long[] distance_lows;
+    private final IChordRemoteReference[] nodes;
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Builds an index of the given nodes. Null entries, nodes with the origin key and nodes whose keys can't be accessed are omitted,
+     * as are repeated occurrences of the same node.
+     *
+     * @param origin the origin key
+     * @param candidates the nodes to be indexed
+     */
+    PrecedingNodeIndex(final FixedWidthKey origin, final IChordRemoteReference[] candidates) {
+
+        this.origin = origin;
+
+        final List<IndexEntry> entries = new ArrayList<IndexEntry>();
+
+        for (final IChordRemoteReference candidate : candidates) {
+            if (candidate != null) {
+                try {
+                    final FixedWidthKey candidate_key = FixedWidthKey.of(candidate);
+                    if (!candidate_key.equals(this.origin)) {
+                        entries.add(new IndexEntry(candidate_key, candidate));
+                    }
+                }
+                catch (final RPCException e) {
+                    // Key not accessible, so the node can't be placed.
+                }
+            }
+        }
+
+        Collections.sort(entries, new Comparator<IndexEntry>() {
+
+            @Override
+            public int compare(final IndexEntry entry1, final IndexEntry entry2) {
+
+                return FixedWidthKey.compareDistances(PrecedingNodeIndex.this.origin, entry1.key, entry2.key);
+            }
+        });
+
+        // Remove repeated nodes, which are adjacent after sorting.
+        final List<IndexEntry> distinct_entries = new ArrayList<IndexEntry>();
+        for (final IndexEntry entry : entries) {
+            if (distinct_entries.isEmpty() || !distinct_entries.get(distinct_entries.size() - 1).key.equals(entry.key)) {
+                distinct_entries.add(entry);
+            }
+        }
+
+        final int size = distinct_entries.size();
+        distance_highs = new long[size];
+        distance_middles = new long[size];
+        distance_lows = new long[size];
+        nodes = new IChordRemoteReference[size];
+
+        for (int i = 0; i < size; i++) {
+
+            final IndexEntry entry = distinct_entries.get(i);
+            distance_highs[i] = FixedWidthKey.distanceHigh(this.origin, entry.key);
+            distance_middles[i] = FixedWidthKey.distanceMiddle(this.origin, entry.key);
+            distance_lows[i] = FixedWidthKey.distanceLow(this.origin, entry.key);
+            nodes[i] = entry.node;
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the indexed node that extends the furthest round the ring from the origin without passing the given key.
+     *
+     * @param k the target key
+     * @return the closest preceding node, or null if no indexed node precedes the key
+     */
+    IChordRemoteReference closestPrecedingNode(final FixedWidthKey k) {
+
+        final int index = closestPrecedingIndex(k);
+        return index >= 0 ? nodes[index] : null;
+    }
+
+    /**
+     * Adds the indexed nodes that precede the given key to a list, starting with the closest preceding node and continuing back round the ring.
+     *
+     * @param k the target key
+     * @param max_nodes the maximum number of nodes to add
+     * @param preceding_nodes the list to which the nodes are added
+     */
+    void addPrecedingNodes(final FixedWidthKey k, final int max_nodes, final List<IChordRemoteReference> preceding_nodes) {
+
+        final int index = closestPrecedingIndex(k);
+
+        for (int i = index; i >= 0 && index - i < max_nodes; i--) {
+            preceding_nodes.add(nodes[i]);
+        }
+    }
+
+    /**
+     * Returns the number of distinct nodes in the index.
+     * @return the number of distinct nodes in the index
+     */
+    int size() {
+
+        return nodes.length;
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the index of the last node whose distance from the origin does not exceed the key's distance, or -1 if there is no such node.
+     */
+    private int closestPrecedingIndex(final FixedWidthKey k) {
+
+        if (nodes.length == 0) { return -1; }
+
+        final long high = FixedWidthKey.distanceHigh(origin, k);
+        final long middle = FixedWidthKey.distanceMiddle(origin, k);
+        final long low = FixedWidthKey.distanceLow(origin, k);
+
+        // Find the last node whose distance does not exceed the key's distance.
+        int lower = 0;
+        int upper = nodes.length - 1;
+        int result = -1;
+
+        while (lower <= upper) {
+
+            final int mid = lower + upper >>> 1;
+
+            if (FixedWidthKey.compareWords(distance_highs[mid], distance_middles[mid], distance_lows[mid], high, middle, low) <= 0) {
+                result = mid;
+                lower = mid + 1;
+            }
+            else {
+                upper = mid - 1;
+            }
+        }
+
+        return result;
+    }
+
+    private static final class IndexEntry {
+
+        private final FixedWidthKey key;
+        private final IChordRemoteReference node;
+
+        IndexEntry(final FixedWidthKey key, final IChordRemoteReference node) {
+
+            this.key = key;
+            this.node = node;
+        }
+    }
+}
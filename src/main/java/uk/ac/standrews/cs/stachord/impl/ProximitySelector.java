@@ -0,0 +1,136 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+
+/**
+ * Selects one of a number of interchangeable nodes by proximity. The round trip times to the nodes are measured by pinging them concurrently through
+ * a liveness cache, with a bounded wait, and the node with the lowest time is chosen. A current choice is kept unless another node is faster by more
+ * than a given factor, so that the choice doesn't switch on jitter.
+ */
+final class ProximitySelector {
+
+    /** Denotes a round trip time that is not known. */
+    static final long UNKNOWN_ROUND_TRIP_TIME = -1;
+
+    /** Denotes that no node was selected. */
+    static final int NONE = -1;
+
+    private final long probe_timeout; // The time in nanoseconds allowed for the nodes to answer when their round trip times are measured.
+    private final double hysteresis; // The factor by which another node must be faster than the current choice to replace it.
+
+    // -------------------------------------------------------------------------------------------------------
+
+    ProximitySelector(final long probe_timeout, final double hysteresis) {
+
+        this.probe_timeout = probe_timeout;
+        this.hysteresis = hysteresis;
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Measures the round trip times to the given nodes concurrently, waiting at most a fixed time for them to answer.
+     *
+     * @param liveness_cache the cache through which the nodes are pinged
+     * @param candidates the nodes
+     * @return the round trip times in ns, each UNKNOWN_ROUND_TRIP_TIME if the node is recently known to have failed, or didn't answer in time
+     */
+    long[] measureRoundTripTimes(final LivenessCache liveness_cache, final List<IChordRemoteReference> candidates) {
+
+        final List<CompletableFuture<Long>> measurements = new ArrayList<CompletableFuture<Long>>();
+
+        for (final IChordRemoteReference candidate : candidates) {
+
+            if (liveness_cache.isKnownDead(candidate)) {
+                measurements.add(CompletableFuture.completedFuture(UNKNOWN_ROUND_TRIP_TIME));
+            }
+            else {
+                final long start = System.nanoTime();
+                measurements.add(liveness_cache.probe(candidate).handle(new BiFunction<Void, Throwable, Long>() {
+
+                    @Override
+                    public Long apply(final Void result, final Throwable error) {
+
+                        return error == null ? System.nanoTime() - start : UNKNOWN_ROUND_TRIP_TIME;
+                    }
+                }));
+            }
+        }
+
+        final long[] round_trip_times = new long[candidates.size()];
+        final long deadline = System.nanoTime() + probe_timeout;
+
+        for (int i = 0; i < round_trip_times.length; i++) {
+            try {
+                round_trip_times[i] = measurements.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                round_trip_times[i] = UNKNOWN_ROUND_TRIP_TIME;
+            }
+            catch (final ExecutionException e) {
+                round_trip_times[i] = UNKNOWN_ROUND_TRIP_TIME;
+            }
+            catch (final TimeoutException e) {
+                round_trip_times[i] = UNKNOWN_ROUND_TRIP_TIME;
+            }
+        }
+        return round_trip_times;
+    }
+
+    /**
+     * Selects the node with the lowest known round trip time, unless the current choice is within the hysteresis factor of it.
+     *
+     * @param round_trip_times the round trip times to the nodes, as given by {@link #measureRoundTripTimes(LivenessCache, List)}
+     * @param current_index the index of the current choice, or NONE
+     * @return the index of the selected node, or NONE if no round trip time is known
+     */
+    int select(final long[] round_trip_times, final int current_index) {
+
+        int nearest_index = NONE;
+        for (int i = 0; i < round_trip_times.length; i++) {
+            if (round_trip_times[i] != UNKNOWN_ROUND_TRIP_TIME && (nearest_index == NONE || round_trip_times[i] < round_trip_times[nearest_index])) {
+                nearest_index = i;
+            }
+        }
+
+        if (nearest_index == NONE) { return NONE; }
+
+        final long current_round_trip_time = current_index != NONE ? round_trip_times[current_index] : UNKNOWN_ROUND_TRIP_TIME;
+        if (current_round_trip_time != UNKNOWN_ROUND_TRIP_TIME && current_round_trip_time <= round_trip_times[nearest_index] * hysteresis) { return current_index; }
+
+        return nearest_index;
+    }
+}
@@ -0,0 +1,182 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import uk.ac.standrews.cs.nds.p2p.interfaces.IKey;
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+import uk.ac.standrews.cs.stachord.interfaces.IRangeLookup;
+import uk.ac.standrews.cs.stachord.interfaces.IRangeOwner;
+
+/**
+ * Iterates over the nodes responsible for a range of keys, in ring order starting with the owner of the first key in the range.
+ * Only the owner of the first key is found by routing; the rest are found by walking forward through successor lists, which are
+ * fetched one at a time as the iteration proceeds, so a wide range can be consumed incrementally.
+ */
+class RangeLookup implements IRangeLookup {
+
+    private final ChordNodeImpl node;
+    private final FixedWidthKey from;
+    private final FixedWidthKey last_key; // The last key in the range.
+
+    private final Deque<IChordRemoteReference> pending_successors; // Successors of the last owner returned, not yet returned themselves.
+    private Owner next_owner; // The owner to be returned next, or null if it hasn't been found yet.
+    private Owner last_owner; // The owner most recently returned, or null if none has been.
+    private boolean finished;
+
+    /**
+     * Starts a range lookup.
+     *
+     * @param node the node performing the lookup
+     * @param from the first key in the range
+     * @param to the key after the last key in the range; if equal to the first key, the range covers the whole ring
+     * @throws RPCException if the owner of the first key cannot be found
+     */
+    RangeLookup(final ChordNodeImpl node, final IKey from, final IKey to) throws RPCException {
+
+        this.node = node;
+        this.from = FixedWidthKey.valueOf(from);
+        last_key = new FixedWidthKey(to.keyValue().subtract(BigInteger.ONE));
+        pending_successors = new ArrayDeque<IChordRemoteReference>();
+
+        final IChordRemoteReference first_owner = node.lookup(from);
+        final IChordRemoteReference first_owner_predecessor = isLocal(first_owner) ? node.getPredecessor() : first_owner.getRemote().getPredecessor();
+
+        // If the first owner's predecessor isn't known, its interval is taken to start at the start of the range.
+        final IKey first_interval_start = first_owner_predecessor != null ? first_owner_predecessor.getCachedKey() : new FixedWidthKey(from.keyValue().subtract(BigInteger.ONE)).toKey();
+
+        next_owner = new Owner(first_owner, first_interval_start, FixedWidthKey.of(first_owner));
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    @Override
+    public boolean hasNext() throws RPCException {
+
+        if (next_owner == null && !finished) {
+            next_owner = findNextOwner();
+            finished = next_owner == null;
+        }
+        return next_owner != null;
+    }
+
+    @Override
+    public IRangeOwner next() throws RPCException {
+
+        if (!hasNext()) { throw new NoSuchElementException(); }
+
+        last_owner = next_owner;
+        next_owner = null;
+
+        // The range is exhausted once an owner's interval reaches the last key in it.
+        finished = FixedWidthKey.compareDistances(from, last_key, last_owner.interval_end) <= 0;
+
+        return last_owner;
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the successor of the last owner returned, or null if the walk has come back round to the start of the range.
+     */
+    private Owner findNextOwner() throws RPCException {
+
+        if (pending_successors.isEmpty()) {
+            fetchSuccessors();
+        }
+
+        if (pending_successors.isEmpty()) { return null; }
+
+        final IChordRemoteReference successor = pending_successors.removeFirst();
+        final FixedWidthKey successor_key = FixedWidthKey.of(successor);
+
+        // Owners get further from the start of the range until the walk passes it.
+        if (FixedWidthKey.compareDistances(from, successor_key, last_owner.interval_end) <= 0) { return null; }
+
+        return new Owner(successor, last_owner.interval_end.toKey(), successor_key);
+    }
+
+    /**
+     * Fetches the successor list of the last owner returned. If that fails, the owner's successor is found by routing instead.
+     */
+    private void fetchSuccessors() throws RPCException {
+
+        final IChordRemoteReference last_owner_node = last_owner.owner;
+
+        try {
+            final List<IChordRemoteReference> successors = isLocal(last_owner_node) ? node.getSuccessorList() : last_owner_node.getRemote().getSuccessorList();
+            pending_successors.addAll(successors);
+        }
+        catch (final RPCException e) {
+            node.notifyFailure(last_owner_node);
+            pending_successors.add(node.lookup(new FixedWidthKey(last_owner.interval_end.keyValue().add(BigInteger.ONE)).toKey()));
+        }
+    }
+
+    private boolean isLocal(final IChordRemoteReference reference) throws RPCException {
+
+        return reference.getCachedKey().equals(node.getKey());
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    private static final class Owner implements IRangeOwner {
+
+        private final IChordRemoteReference owner;
+        private final IKey interval_start;
+        private final FixedWidthKey interval_end;
+
+        Owner(final IChordRemoteReference owner, final IKey interval_start, final FixedWidthKey interval_end) {
+
+            this.owner = owner;
+            this.interval_start = interval_start;
+            this.interval_end = interval_end;
+        }
+
+        @Override
+        public IChordRemoteReference getOwner() {
+
+            return owner;
+        }
+
+        @Override
+        public IKey getIntervalStart() {
+
+            return interval_start;
+        }
+
+        @Override
+        public IKey getIntervalEnd() {
+
+            return interval_end.toKey();
+        }
+    }
+}
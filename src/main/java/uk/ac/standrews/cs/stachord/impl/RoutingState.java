@@ -0,0 +1,219 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+
+package uk.ac.standrews.cs.stachord.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+
+/**
+ * An immutable snapshot of a node's routing state: its predecessor, successor, successor list and fingers. The keys of the predecessor
+ * and successor are resolved when the snapshot is created, and the fingers and live successors are combined into a single index for routing,
+ * so reading a snapshot never involves remote calls. A changed snapshot is derived by the {@code with} methods, leaving the original unchanged.
+ */
+final class RoutingState {
+
+    private final FixedWidthKey node_key;
+
+    private final IChordRemoteReference predecessor;
+    private final FixedWidthKey predecessor_key; // Null if there is no predecessor or its key couldn't be accessed.
+
+    private final IChordRemoteReference successor;
+    private final FixedWidthKey successor_key; // Null if there is no successor or its key couldn't be accessed.
+
+    private final List<IChordRemoteReference> successor_list;
+    private final List<IChordRemoteReference> live_successors; // The successor list less any successors suspected to have failed.
+
+    private final IChordRemoteReference[] fingers;
+    private final int finger_version; // Identifies the version of the finger table from which the fingers were taken.
+
+    private final PrecedingNodeIndex routing_index; // The fingers and live successors, sorted by distance from this node.
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Creates the routing state of a node that has no neighbours.
+     *
+     * @param node_key the node's key
+     */
+    RoutingState(final FixedWidthKey node_key) {
+
+        this(node_key, null, null, null, null, Collections.<IChordRemoteReference> emptyList(), Collections.<IChordRemoteReference> emptyList(), new IChordRemoteReference[0], 0, null);
+    }
+
+    private RoutingState(final FixedWidthKey node_key, final IChordRemoteReference predecessor, final FixedWidthKey predecessor_key, final IChordRemoteReference successor, final FixedWidthKey successor_key, final List<IChordRemoteReference> successor_list, final List<IChordRemoteReference> live_successors,
+                    final IChordRemoteReference[] fingers, final int finger_version, final PrecedingNodeIndex routing_index) {
+
+        this.node_key = node_key;
+        this.predecessor = predecessor;
+        this.predecessor_key = predecessor_key;
+        this.successor = successor;
+        this.successor_key = successor_key;
+        this.successor_list = successor_list;
+        this.live_successors = live_successors;
+        this.fingers = fingers;
+        this.finger_version = finger_version;
+        this.routing_index = routing_index != null ? routing_index : buildRoutingIndex(node_key, fingers, live_successors);
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    RoutingState withPredecessor(final IChordRemoteReference new_predecessor) {
+
+        return new RoutingState(node_key, new_predecessor, resolveKey(new_predecessor), successor, successor_key, successor_list, live_successors, fingers, finger_version, routing_index);
+    }
+
+    RoutingState withSuccessor(final IChordRemoteReference new_successor) {
+
+        return new RoutingState(node_key, predecessor, predecessor_key, new_successor, resolveKey(new_successor), successor_list, live_successors, fingers, finger_version, routing_index);
+    }
+
+    RoutingState withSuccessorList(final List<IChordRemoteReference> new_successor_list) {
+
+        final List<IChordRemoteReference> list = Collections.unmodifiableList(new ArrayList<IChordRemoteReference>(new_successor_list));
+        return new RoutingState(node_key, predecessor, predecessor_key, successor, successor_key, list, list, fingers, finger_version, null);
+    }
+
+    /**
+     * Returns a snapshot in which a successor suspected to have failed is not used for routing. It remains in the successor list until
+     * the list is next changed.
+     *
+     * @param failed_key the key of the failed successor
+     * @return the new snapshot, or this one if the failed node is not a live successor
+     */
+    RoutingState withoutLiveSuccessor(final FixedWidthKey failed_key) {
+
+        final List<IChordRemoteReference> new_live_successors = new ArrayList<IChordRemoteReference>();
+        for (final IChordRemoteReference live_successor : live_successors) {
+            if (!failed_key.equals(resolveKey(live_successor))) {
+                new_live_successors.add(live_successor);
+            }
+        }
+
+        if (new_live_successors.size() == live_successors.size()) { return this; }
+        return new RoutingState(node_key, predecessor, predecessor_key, successor, successor_key, successor_list, Collections.unmodifiableList(new_live_successors), fingers, finger_version, null);
+    }
+
+    /**
+     * Returns a snapshot with the given fingers, unless this snapshot already has fingers from the same or a later version of the finger table.
+     *
+     * @param new_fingers the fingers
+     * @param new_finger_version the version of the finger table from which the fingers were taken
+     * @return the new snapshot, or this one if its fingers are at least as recent
+     */
+    RoutingState withFingers(final IChordRemoteReference[] new_fingers, final int new_finger_version) {
+
+        if (new_finger_version <= finger_version) { return this; }
+        return new RoutingState(node_key, predecessor, predecessor_key, successor, successor_key, successor_list, live_successors, new_fingers.clone(), new_finger_version, null);
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    IChordRemoteReference getPredecessor() {
+
+        return predecessor;
+    }
+
+    /**
+     * Returns the predecessor's key.
+     * @return the predecessor's key, or null if there is no predecessor
+     * @throws RPCException if the key wasn't resolved when this snapshot was created and can't be accessed now
+     */
+    FixedWidthKey getPredecessorKey() throws RPCException {
+
+        return predecessor_key != null || predecessor == null ? predecessor_key : FixedWidthKey.of(predecessor);
+    }
+
+    IChordRemoteReference getSuccessor() {
+
+        return successor;
+    }
+
+    /**
+     * Returns the successor's key.
+     * @return the successor's key, or null if there is no successor
+     * @throws RPCException if the key wasn't resolved when this snapshot was created and can't be accessed now
+     */
+    FixedWidthKey getSuccessorKey() throws RPCException {
+
+        return successor_key != null || successor == null ? successor_key : FixedWidthKey.of(successor);
+    }
+
+    List<IChordRemoteReference> getSuccessorList() {
+
+        return successor_list;
+    }
+
+    /**
+     * Returns the finger or live successor that extends the furthest round the ring from the node without passing the given key.
+     *
+     * @param k the target key
+     * @return the closest preceding node
+     * @throws NoPrecedingNodeException if no finger or live successor precedes the key
+     */
+    IChordRemoteReference closestPrecedingNode(final FixedWidthKey k) throws NoPrecedingNodeException {
+
+        final IChordRemoteReference closest_preceding_node = routing_index.closestPrecedingNode(k);
+
+        if (closest_preceding_node == null) { throw new NoPrecedingNodeException(); }
+        return closest_preceding_node;
+    }
+
+    /**
+     * Adds the fingers and live successors that precede the given key to a list, starting with the closest preceding node.
+     *
+     * @param k the target key
+     * @param max_nodes the maximum number of nodes to add
+     * @param preceding_nodes the list to which the nodes are added
+     */
+    void addPrecedingNodes(final FixedWidthKey k, final int max_nodes, final List<IChordRemoteReference> preceding_nodes) {
+
+        routing_index.addPrecedingNodes(k, max_nodes, preceding_nodes);
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    private static PrecedingNodeIndex buildRoutingIndex(final FixedWidthKey node_key, final IChordRemoteReference[] fingers, final List<IChordRemoteReference> live_successors) {
+
+        final List<IChordRemoteReference> candidates = new ArrayList<IChordRemoteReference>(live_successors);
+        Collections.addAll(candidates, fingers);
+
+        return new PrecedingNodeIndex(node_key, candidates.toArray(new IChordRemoteReference[candidates.size()]));
+    }
+
+    private static FixedWidthKey resolveKey(final IChordRemoteReference node) {
+
+        try {
+            return node != null ? FixedWidthKey.of(node) : null;
+        }
+        catch (final RPCException e) {
+            return null;
+        }
+    }
+}
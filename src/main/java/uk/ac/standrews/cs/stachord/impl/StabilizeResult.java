@@ -0,0 +1,81 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import java.util.Collections;
+import java.util.List;
+
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+
+/**
+ * Binds together the predecessor and successor list of a node, as returned to a node that has notified it during stabilization,
+ * together with the node's recent membership deltas.
+ */
+public class StabilizeResult {
+
+    private final IChordRemoteReference predecessor;
+    private final List<IChordRemoteReference> successor_list;
+    private final List<MembershipDelta> membership_deltas;
+
+    /**
+     * Constructs a new record.
+     * @param predecessor the predecessor, or null if there is none
+     * @param successor_list the successor list
+     * @param membership_deltas the node's recent membership deltas
+     */
+    public StabilizeResult(final IChordRemoteReference predecessor, final List<IChordRemoteReference> successor_list, final List<MembershipDelta> membership_deltas) {
+
+        this.predecessor = predecessor;
+        this.successor_list = Collections.unmodifiableList(successor_list);
+        this.membership_deltas = Collections.unmodifiableList(membership_deltas);
+    }
+
+    /**
+     * Returns the predecessor.
+     * @return the predecessor, or null if there is none
+     */
+    public IChordRemoteReference getPredecessor() {
+
+        return predecessor;
+    }
+
+    /**
+     * Returns the successor list.
+     * @return the successor list
+     */
+    public List<IChordRemoteReference> getSuccessorList() {
+
+        return successor_list;
+    }
+
+    /**
+     * Returns the membership deltas.
+     * @return the membership deltas, which may be empty
+     */
+    public List<MembershipDelta> getMembershipDeltas() {
+
+        return membership_deltas;
+    }
+}
@@ -25,51 +25,90 @@
 
 package uk.ac.standrews.cs.stachord.impl;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import uk.ac.standrews.cs.nds.p2p.keys.Key;
 import uk.ac.standrews.cs.nds.rpc.RPCException;
 import uk.ac.standrews.cs.stachord.interfaces.IChordNode;
 import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
 
 /**
- * Successor list implementation.
+ * Successor list implementation. The list itself is held in the node's routing state snapshot, and replaced as a whole when it changes.
  *
  * @author Graham Kirby (graham.kirby@st-andrews.ac.uk)
  */
 class SuccessorList {
 
+    private static final long PROBE_DEADLINE = TimeUnit.SECONDS.toNanos(5); // The time allowed for successors to answer when searching for a working node.
+
     private final ChordNodeImpl node;
-    private final ArrayList<IChordRemoteReference> successor_list;
 
     // -------------------------------------------------------------------------------------------------------
 
     public SuccessorList(final ChordNodeImpl local_node) {
 
         node = local_node;
-        successor_list = new ArrayList<IChordRemoteReference>();
     }
 
     // -------------------------------------------------------------------------------------------------------
 
     /**
-     * Searches the successor list for a working node.
+     * Searches the successor list for a working node. The successors are probed concurrently, so that each failed successor doesn't cost
+     * a full timeout in turn, and the probe outcomes are recorded in the node's liveness cache. Successors that recently failed to answer
+     * are passed over, unless that would leave none. The search takes no longer than the probe deadline; probes still running then are
+     * left to complete in the background, and only update the liveness cache.
      *
-     * @return the first working node in the successor list
+     * @return the first node in the successor list to answer within the probe deadline
      * @throws NoReachableNodeException if no working node is found
      */
     protected IChordRemoteReference findFirstWorkingNode() throws NoReachableNodeException {
 
-        for (final IChordRemoteReference next : successor_list) {
-            try {
-                next.ping();
-                return next;
+        final LivenessCache liveness_cache = node.getLivenessCache();
+        final List<IChordRemoteReference> successors = node.getRoutingState().getSuccessorList();
+
+        List<IChordRemoteReference> candidates = new ArrayList<IChordRemoteReference>();
+        for (final IChordRemoteReference successor : successors) {
+            if (!liveness_cache.isKnownDead(successor)) {
+                candidates.add(successor);
             }
-            catch (final RPCException e) {
-                // Ignore.
+        }
+        if (candidates.isEmpty()) {
+            candidates = successors;
+        }
+
+        final List<CompletableFuture<Void>> probes = new ArrayList<CompletableFuture<Void>>();
+        for (final IChordRemoteReference candidate : candidates) {
+            probes.add(liveness_cache.probe(candidate));
+        }
+
+        // Take the first live node in ring order, passing over any that haven't answered by the deadline. Once the deadline has passed,
+        // later probes are only checked for having already answered.
+        final long deadline = System.nanoTime() + PROBE_DEADLINE;
+
+        try {
+            for (int i = 0; i < candidates.size(); i++) {
+                try {
+                    probes.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    return candidates.get(i);
+                }
+                catch (final ExecutionException e) {
+                    // Ignore.
+                }
+                catch (final TimeoutException e) {
+                    // Ignore.
+                }
             }
         }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
         throw new NoReachableNodeException();
     }
 
@@ -79,7 +118,35 @@ class SuccessorList {
      */
     protected List<IChordRemoteReference> getList() {
 
-        return new CopyOnWriteArrayList<IChordRemoteReference>(successor_list);
+        return new CopyOnWriteArrayList<IChordRemoteReference>(node.getRoutingState().getSuccessorList());
+    }
+
+    /**
+     * Estimates the number of nodes in the ring from the density of this node's successors in the key space.
+     *
+     * @return the estimated ring size
+     * @throws RPCException if an error occurs when accessing a successor's key
+     */
+    protected int estimateRingSize() throws RPCException {
+
+        final List<IChordRemoteReference> successors = getList();
+        final int number_of_successors = successors.size();
+
+        if (number_of_successors == 0) { return 1; }
+
+        final BigInteger last_successor_key = successors.get(number_of_successors - 1).getCachedKey().keyValue();
+        final BigInteger span = last_successor_key.subtract(node.getKey().keyValue()).mod(Key.KEYSPACE_SIZE);
+
+        // The successors are known to be distinct nodes, so the ring contains at least those plus this node.
+        final int minimum_size = number_of_successors + 1;
+
+        if (span.signum() == 0) { return minimum_size; }
+
+        // The successors occupy the span of key space following this node, so the whole key space is expected to hold
+        // the same number of nodes per unit of span.
+        final BigInteger estimate = Key.KEYSPACE_SIZE.multiply(BigInteger.valueOf(number_of_successors)).divide(span);
+
+        return Math.max(minimum_size, estimate.min(BigInteger.valueOf(Integer.MAX_VALUE)).intValue());
     }
 
     /**
@@ -87,13 +154,14 @@ class SuccessorList {
      */
     protected void clear() {
 
-        successor_list.clear();
+        node.publishSuccessorList(new ArrayList<IChordRemoteReference>());
     }
 
     /**
      * Constructs a new successor list which consists of this node's successor
      * followed by the first (MAX_SIZE-1) elements of the successor's successor list.
      *
+     * @return true if the successor list was changed
      * @throws RPCException if an error occurs when accessing this node's successor's key
      */
     protected boolean refreshList(final List<IChordRemoteReference> successor_list_of_successor) throws RPCException {
@@ -122,14 +190,7 @@ class SuccessorList {
         // Add the successor at the front of the new list.
         new_list.add(0, successor);
 
-        if (!new_list.equals(successor_list)) {
-
-            successor_list.clear();
-            successor_list.addAll(new_list);
-            return true;
-        }
-
-        return false;
+        return node.publishSuccessorList(new_list);
     }
 
     // -------------------------------------------------------------------------------------------------------
@@ -140,6 +201,8 @@ class SuccessorList {
         final StringBuilder buffer = new StringBuilder();
         buffer.append("\n");
 
+        final List<IChordRemoteReference> successor_list = node.getRoutingState().getSuccessorList();
+
         if (successor_list.isEmpty()) {
             buffer.append("empty");
         }
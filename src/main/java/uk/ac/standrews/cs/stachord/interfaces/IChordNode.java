@@ -26,12 +26,17 @@
 package uk.ac.standrews.cs.stachord.interfaces;
 
 import java.net.InetSocketAddress;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Observer;
+import java.util.concurrent.CompletableFuture;
 
 import uk.ac.standrews.cs.nds.events.Event;
 import uk.ac.standrews.cs.nds.events.IEvent;
 import uk.ac.standrews.cs.nds.p2p.interfaces.IKey;
 import uk.ac.standrews.cs.nds.rpc.RPCException;
+import uk.ac.standrews.cs.utilities.archive.Duration;
 
 /**
  * Defines locally accessible Chord node functionality.
@@ -76,10 +81,20 @@ public interface IChordNode extends Observer {
     int MAX_SUCCESSOR_LIST_SIZE = 5;
 
     /**
-     * The ratio between successive finger target keys in the finger table.
+     * The default ratio between the finger target spacings of successive levels of the finger table.
      */
     int INTER_FINGER_RATIO = 2;
 
+    /**
+     * The default number of fingers in each level of the finger table.
+     */
+    int FINGERS_PER_LEVEL = 1;
+
+    /**
+     * The default number of candidates to which each hop of an iterative lookup is issued in parallel.
+     */
+    int LOOKUP_PARALLELISM = 1;
+
     // -------------------------------------------------------------------------------------------------------
 
     // Shared functionality with IChordRemote.
@@ -101,6 +116,78 @@ public interface IChordNode extends Observer {
      */
     IChordRemoteReference lookup(IKey key) throws RPCException;
 
+    /**
+     * Finds the node to which a key maps, together with the nodes that follow it round the ring, such as may hold replicas of the data stored
+     * under the key. Up to a successor list's worth of nodes are returned by the final hop of the lookup; any more are found by walking forward
+     * through successor lists. The nodes are read from successor lists as last refreshed by maintenance, without being contacted, so shortly after
+     * a change to the ring the result may include a node that has failed, or omit one that has joined.
+     *
+     * @param key a key to be routed to
+     * @param number_of_replicas the number of nodes required, including the owner
+     * @return the owner followed by its successors, in ring order; fewer than requested if the ring is smaller or the walk reaches a node that can't be contacted
+     * @throws RPCException if an error occurs during the routing protocol
+     */
+    List<IChordRemoteReference> lookupReplicas(IKey key, int number_of_replicas) throws RPCException;
+
+    /**
+     * Executes the routing protocol recursively, with each node on the route forwarding the lookup to its own next hop.
+     *
+     * @param key a key to be routed to
+     * @return the node to which the key maps
+     * @throws RPCException if an error occurs during the routing protocol
+     */
+    IChordRemoteReference lookupRecursive(IKey key) throws RPCException;
+
+    /**
+     * Executes the routing protocol without blocking the calling thread. The remote calls made for each hop still block, so they are offloaded
+     * to a bounded number of threads belonging to this node, and hops of concurrent asynchronous lookups may wait for a thread.
+     * Cancelling the returned future stops the routing before the next hop is contacted, but does not abort a call already in progress.
+     * An error during routing completes the future exceptionally, with an {@link RPCException} as the cause.
+     *
+     * @param key a key to be routed to
+     * @return a future completed with the node to which the key maps
+     */
+    CompletableFuture<IChordRemoteReference> lookupAsync(IKey key);
+
+    /**
+     * Executes the routing protocol without blocking the calling thread, abandoning the routing if it does not complete within
+     * the given timeout. In that case the future is completed exceptionally with a {@link java.util.concurrent.TimeoutException}.
+     *
+     * @param key a key to be routed to
+     * @param timeout the maximum time allowed for the routing
+     * @return a future completed with the node to which the key maps
+     */
+    CompletableFuture<IChordRemoteReference> lookupAsync(IKey key, Duration timeout);
+
+    /**
+     * Executes the routing protocol for a set of keys. Keys that share a next hop are routed together, with a single remote call per hop.
+     *
+     * @param keys the keys to be routed to
+     * @return a map from each key to the node to which it maps
+     * @throws RPCException if an error occurs during the routing protocol
+     */
+    Map<IKey, IChordRemoteReference> lookupAll(Collection<IKey> keys) throws RPCException;
+
+    /**
+     * Finds the nodes responsible for the keys from one key (inclusive) up to another (exclusive). The owner of the first key is found by routing,
+     * and the remaining nodes by walking forward through successor lists, several nodes per remote call. The walk proceeds as the result is iterated.
+     *
+     * @param from the first key in the range
+     * @param to the key after the last key in the range; if equal to the first key, the range covers the whole ring
+     * @return the nodes responsible for the range, in ring order, with their key intervals
+     * @throws RPCException if an error occurs in finding the owner of the first key
+     */
+    IRangeLookup lookupRange(IKey from, IKey to) throws RPCException;
+
+    /**
+     * Executes the routing protocol iteratively, recording the route taken. Learned ownership intervals are not used, so that the route is always observed.
+     *
+     * @param key a key to be routed to
+     * @return a trace of the lookup, including the node to which the key maps and the hops visited
+     * @throws RPCException if an error occurs during the routing protocol
+     */
+    ILookupTrace lookupTraced(IKey key) throws RPCException;
+
     /**
      * Returns this node's successor in the key space.
      * @return this node's successor in the key space
@@ -151,4 +238,76 @@ public interface IChordNode extends Observer {
      * @throws RPCException if an error occurs in accessing this node's predecessor's key
      */
     boolean inLocalKeyRange(final IKey k) throws RPCException;
+
+    /**
+     * Returns the measured round trip times to the fingers, in the same order as {@link IChordRemote#getFingerList()}.
+     *
+     * @return the round trip times, with null entries for fingers whose round trip time is not known
+     */
+    List<Duration> getFingerRoundTripTimes();
+
+    /**
+     * Sets the range of the interval between checks that this node's predecessor is alive. The interval starts at the floor, doubles each time a check finds nothing to change,
+     * up to the ceiling, and returns to the floor when changes or failures are seen.
+     *
+     * @param floor the shortest interval
+     * @param ceiling the longest interval, at least the floor
+     */
+    void setPredecessorMaintenanceInterval(Duration floor, Duration ceiling);
+
+    /**
+     * Sets the range of the interval between rounds of the stabilization protocol. As for {@link #setPredecessorMaintenanceInterval(Duration, Duration)},
+     * the interval lengthens while stabilization finds the ring unchanged.
+     *
+     * @param floor the shortest interval
+     * @param ceiling the longest interval, at least the floor
+     */
+    void setStabilizationInterval(Duration floor, Duration ceiling);
+
+    /**
+     * Sets the range of the interval between checks of successive fingers. As for {@link #setPredecessorMaintenanceInterval(Duration, Duration)},
+     * the interval lengthens while the fingers are found to be correct.
+     *
+     * @param floor the shortest interval
+     * @param ceiling the longest interval, at least the floor
+     */
+    void setFingerTableMaintenanceInterval(Duration floor, Duration ceiling);
+
+    /**
+     * Controls whether {@link #lookup(IKey)} should use recursive rather than iterative routing.
+     *
+     * @param enabled true if lookups should be routed recursively
+     */
+    void enableRecursiveLookup(boolean enabled);
+
+    /**
+     * Controls whether this node should piggyback its recent membership deltas (joins, failures and address changes) on the stabilization
+     * and routing calls between nodes, and apply those received from other nodes to its routing state. Disabled by default.
+     *
+     * @param enabled true if membership deltas should be exchanged
+     */
+    void enableMembershipPiggybacking(boolean enabled);
+
+    /**
+     * Sets the number of candidates to which each hop of an iterative {@link #lookup(IKey)} is issued in parallel. The lookup proceeds
+     * with the first valid answer, so a slow or failed node on the route doesn't stall the lookup, at the cost of additional messages.
+     *
+     * @param parallelism the number of candidates, at least 1
+     */
+    void setLookupParallelism(int parallelism);
+
+    /**
+     * Sets the proportion of iterative lookups for which a trace is recorded. The most recent traces are retained, and can be
+     * retrieved with {@link #getSampledLookupTraces()}. Lookups with parallel hops are not traced.
+     *
+     * @param sampling_rate the proportion of lookups to be traced, between 0 and 1, where 0 disables sampling
+     */
+    void setLookupTraceSamplingRate(double sampling_rate);
+
+    /**
+     * Returns the most recent sampled lookup traces.
+     *
+     * @return the traces, oldest first
+     */
+    List<ILookupTrace> getSampledLookupTraces();
 }
@@ -31,6 +31,8 @@ import java.util.List;
 import uk.ac.standrews.cs.nds.p2p.interfaces.IKey;
 import uk.ac.standrews.cs.nds.rpc.RPCException;
 import uk.ac.standrews.cs.stachord.impl.NextHopResult;
+import uk.ac.standrews.cs.stachord.impl.MembershipDelta;
+import uk.ac.standrews.cs.stachord.impl.StabilizeResult;
 
 /**
  * Defines remotely accessible Chord node functionality.
@@ -39,6 +41,17 @@ import uk.ac.standrews.cs.stachord.impl.NextHopResult;
  */
 public interface IChordRemote {
 
+    /**
+     * The version of the remote protocol implemented by this release.
+     */
+    int PROTOCOL_VERSION = 2;
+
+    /**
+     * The version of the remote protocol implemented by nodes that predate {@link #getProtocolVersion()}. Such nodes support only the calls
+     * that aren't documented as needing a later version.
+     */
+    int BASELINE_PROTOCOL_VERSION = 1;
+
     /**
      * Returns this node's key.
      *
@@ -55,6 +68,14 @@ public interface IChordRemote {
      */
     InetSocketAddress getAddress() throws RPCException;
 
+    /**
+     * Returns the version of the remote protocol implemented by this node. Nodes of {@link #BASELINE_PROTOCOL_VERSION} don't support this call.
+     *
+     * @return the version of the remote protocol implemented by this node
+     * @throws RPCException if an error occurs during the remote call
+     */
+    int getProtocolVersion() throws RPCException;
+
     /**
      * Executes the routing protocol.
      *
@@ -64,6 +85,28 @@ public interface IChordRemote {
      */
     IChordRemoteReference lookup(IKey key) throws RPCException;
 
+    /**
+     * Finds the node to which a key maps, together with the nodes that follow it round the ring, such as may hold replicas of the data stored
+     * under the key. Up to a successor list's worth of nodes are returned by the final hop of the lookup; any more are found by walking forward
+     * through successor lists. The nodes are read from successor lists as last refreshed by maintenance, without being contacted, so shortly after
+     * a change to the ring the result may include a node that has failed, or omit one that has joined.
+     *
+     * @param key a key to be routed to
+     * @param number_of_replicas the number of nodes required, including the owner
+     * @return the owner followed by its successors, in ring order; fewer than requested if the ring is smaller or the walk reaches a node that can't be contacted
+     * @throws RPCException if an error occurs during the remote call
+     */
+    List<IChordRemoteReference> lookupReplicas(IKey key, int number_of_replicas) throws RPCException;
+
+    /**
+     * Executes the routing protocol recursively, with each node on the route forwarding the lookup to its own next hop.
+     *
+     * @param key a key to be routed to
+     * @return the node to which the key maps
+     * @throws RPCException if an error occurs during the remote call
+     */
+    IChordRemoteReference lookupRecursive(IKey key) throws RPCException;
+
     /**
      * Returns this node's successor in the key space.
      *
@@ -88,6 +131,19 @@ public interface IChordRemote {
      */
     void notify(IChordRemoteReference potential_predecessor) throws RPCException;
 
+    /**
+     * Notifies this node that a given node may be its predecessor, as for {@link #notify(IChordRemoteReference)}, and returns this node's
+     * resulting predecessor and its successor list, so that the calling node can stabilize in a single call. The calling node's recent
+     * membership deltas are passed in, and this node's are returned, in each case empty unless the sending node has piggybacking enabled.
+     * Not supported by nodes of {@link #BASELINE_PROTOCOL_VERSION}.
+     *
+     * @param potential_predecessor a node that may be this node's most suitable predecessor
+     * @param membership_deltas the calling node's recent membership deltas
+     * @return this node's predecessor, successor list and recent membership deltas
+     * @throws RPCException if an error occurs during the remote call
+     */
+    StabilizeResult stabilize(IChordRemoteReference potential_predecessor, List<MembershipDelta> membership_deltas) throws RPCException;
+
     /**
      * Joins this node to the ring of which the specified node is a member.
      *
@@ -113,7 +169,8 @@ public interface IChordRemote {
     List<IChordRemoteReference> getFingerList() throws RPCException;
 
     /**
-     * Returns the next hop towards the successor node of a given key.
+     * Returns the next hop towards the successor node of a given key. When the call is made remotely the result has no alternatives or membership
+     * deltas, so that nodes of every protocol version can read it.
      *
      * @param key a key
      * @return the next hop towards the successor of the specified key
@@ -121,6 +178,26 @@ public interface IChordRemote {
      */
     NextHopResult nextHop(IKey key) throws RPCException;
 
+    /**
+     * Returns the next hop towards the successor node of a given key, as for {@link #nextHop(IKey)}, with alternative next hops and this node's
+     * recent membership deltas. Not supported by nodes of {@link #BASELINE_PROTOCOL_VERSION}.
+     *
+     * @param key a key
+     * @return the next hop towards the successor of the specified key, with alternatives and membership deltas
+     * @throws RPCException if an error occurs during the remote call
+     */
+    NextHopResult nextHopDetailed(IKey key) throws RPCException;
+
+    /**
+     * Returns the next hops towards the successor nodes of the given keys, each as for {@link #nextHopDetailed(IKey)}.
+     * Not supported by nodes of {@link #BASELINE_PROTOCOL_VERSION}.
+     *
+     * @param keys a list of keys
+     * @return a list containing the next hop towards the successor of each key, in the same order as the keys
+     * @throws RPCException if an error occurs during the remote call
+     */
+    List<NextHopResult> nextHops(List<IKey> keys) throws RPCException;
+
     /**
      * Controls whether predecessor maintenance should be performed.
      *
@@ -0,0 +1,60 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.interfaces;
+
+import java.net.InetSocketAddress;
+
+import uk.ac.standrews.cs.nds.p2p.interfaces.IKey;
+import uk.ac.standrews.cs.utilities.archive.Duration;
+
+/**
+ * A single remote hop of a traced lookup.
+ */
+public interface ILookupHop {
+
+    /**
+     * Returns the key of the node contacted.
+     * @return the key, or null if it was not known
+     */
+    IKey getKey();
+
+    /**
+     * Returns the address of the node contacted.
+     * @return the address
+     */
+    InetSocketAddress getAddress();
+
+    /**
+     * Returns the latency of the remote call, or the time until the failure was detected.
+     * @return the latency
+     */
+    Duration getLatency();
+
+    /**
+     * Returns true if the hop failed.
+     * @return true if the hop failed
+     */
+    boolean hasFailed();
+}
@@ -0,0 +1,72 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.interfaces;
+
+import java.util.List;
+
+import uk.ac.standrews.cs.nds.p2p.interfaces.IKey;
+import uk.ac.standrews.cs.utilities.archive.Duration;
+
+/**
+ * A record of how a lookup was routed: the remote hops visited in order, including any that failed, with the latency of each.
+ */
+public interface ILookupTrace {
+
+    /**
+     * Returns the key that was looked up.
+     * @return the key that was looked up
+     */
+    IKey getKey();
+
+    /**
+     * Returns the node found to own the key.
+     * @return the owner, or null if the lookup failed
+     */
+    IChordRemoteReference getOwner();
+
+    /**
+     * Returns the remote hops, in the order in which they were made.
+     * @return the remote hops
+     */
+    List<ILookupHop> getHops();
+
+    /**
+     * Returns the hops that failed.
+     * @return the failed hops
+     */
+    List<ILookupHop> getFailedHops();
+
+    /**
+     * Returns the total time taken by the lookup.
+     * @return the total time
+     */
+    Duration getTotalTime();
+
+    /**
+     * Returns the time spent waiting for remote hops, including failed ones. The rest of the total time was spent routing locally.
+     * @return the time spent in remote hops
+     */
+    Duration getRemoteRoutingTime();
+}
@@ -0,0 +1,52 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.interfaces;
+
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+
+/**
+ * The result of a range lookup: the nodes responsible for a range of keys, in ring order starting with the owner of the first key in the range.
+ * The nodes after the first are found as the result is iterated, so each step may make remote calls. For that reason this isn't a
+ * {@link java.util.Iterator}: a step that fails throws {@link RPCException}, and may be retried by calling the same method again.
+ */
+public interface IRangeLookup {
+
+    /**
+     * Checks whether there are further nodes responsible for part of the range.
+     *
+     * @return true if there are further nodes
+     * @throws RPCException if the next node cannot be found
+     */
+    boolean hasNext() throws RPCException;
+
+    /**
+     * Returns the next node responsible for part of the range.
+     *
+     * @return the next node, with its key interval
+     * @throws RPCException if the next node cannot be found
+     * @throws java.util.NoSuchElementException if there are no further nodes
+     */
+    IRangeOwner next() throws RPCException;
+}
@@ -0,0 +1,52 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.interfaces;
+
+import uk.ac.standrews.cs.nds.p2p.interfaces.IKey;
+
+/**
+ * A node responsible for part of a range of keys, with the interval of keys that it owns.
+ */
+public interface IRangeOwner {
+
+    /**
+     * Returns the node.
+     * @return the node
+     */
+    IChordRemoteReference getOwner();
+
+    /**
+     * Returns the key that precedes the node's interval, which is the key of its predecessor. For the first node in a range whose predecessor
+     * is not known, this is instead the key that precedes the range, so that the interval is the part of the range that the node owns.
+     * @return the key that precedes the node's interval
+     */
+    IKey getIntervalStart();
+
+    /**
+     * Returns the last key in the node's interval, which is the node's own key.
+     * @return the last key in the node's interval
+     */
+    IKey getIntervalEnd();
+}
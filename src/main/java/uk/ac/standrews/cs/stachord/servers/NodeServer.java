@@ -61,6 +61,7 @@ public final class NodeServer {
     private static final ChordNodeFactory factory;
     private static final String NULL = "null";
     private static final char AT_SIGN = '@';
+    private static final String USAGE = "Usage: -shost:port [-khost:port] [-xkey] [-rratio] [-ffingers] [-aparallelism] [-Dlevel]";
     private final Properties properties;
     private IKey node_key;
     private InetSocketAddress local_address;
@@ -86,6 +87,12 @@ public final class NodeServer {
      * <dd>Specifies the address and port of an existing Chord node, via which the new node should join the ring.</dd>
      * <dt>-xkey (optional)</dt>
      * <dd>Specifies the key for the new Chord node.</dd>
+     * <dt>-rratio (optional)</dt>
+     * <dd>Specifies the routing base: the ratio between the finger target spacings of successive levels of the finger table.</dd>
+     * <dt>-ffingers (optional)</dt>
+     * <dd>Specifies the number of fingers in each level of the finger table, between 1 and one less than the routing base.</dd>
+     * <dt>-aparallelism (optional)</dt>
+     * <dd>Specifies the number of candidates to which each hop of a lookup is issued in parallel.</dd>
      * <dt>-Dlevel (optional)</dt>
      * <dd>Specifies a diagnostic level from 0 (most detailed) to 6 (least detailed).</dd>
      * </dl>
@@ -143,6 +150,8 @@ public final class NodeServer {
         configureLocalAddress(arguments);
         configureJoinAddress(arguments);
         configureNodeKey(arguments);
+        configureRoutingBase(arguments);
+        configureLookupParallelism(arguments);
     }
 
     protected void deploy(final String... args) throws UndefinedDiagnosticLevelException, UnknownHostException, InterruptedException, RegistryUnavailableException, RPCException, AlreadyBoundException, TimeoutException {
@@ -161,7 +170,12 @@ public final class NodeServer {
 
     private void usage() {
 
-        ErrorHandling.hardError("Usage: -shost:port [-khost:port] [-xkey] [-Dlevel]");
+        ErrorHandling.hardError(USAGE);
+    }
+
+    private void usage(final String problem) {
+
+        ErrorHandling.hardError(problem + "\n" + USAGE);
     }
 
     private void configureDiagnostics(final Map<String, String> arguments) throws UndefinedDiagnosticLevelException {
@@ -193,4 +207,47 @@ public final class NodeServer {
             node_key = new Key(server_key_parameter);
         }
     }
+
+    private void configureRoutingBase(final Map<String, String> arguments) {
+
+        final String ratio_parameter = arguments.get("-r"); // Ratio between finger levels.
+        final String fingers_per_level_parameter = arguments.get("-f"); // Fingers per level.
+
+        if (ratio_parameter != null || fingers_per_level_parameter != null) {
+
+            // The two are checked together, since the number of fingers per level is limited by the ratio.
+            final int inter_finger_ratio = ratio_parameter != null ? parseIntParameter("-r", ratio_parameter) : IChordNode.INTER_FINGER_RATIO;
+            final int fingers_per_level = fingers_per_level_parameter != null ? parseIntParameter("-f", fingers_per_level_parameter) : IChordNode.FINGERS_PER_LEVEL;
+            try {
+                factory.setRoutingBase(inter_finger_ratio, fingers_per_level);
+            }
+            catch (final IllegalArgumentException e) {
+                usage(e.getMessage());
+            }
+        }
+    }
+
+    private void configureLookupParallelism(final Map<String, String> arguments) {
+
+        final String parallelism_parameter = arguments.get("-a"); // Lookup parallelism.
+        if (parallelism_parameter != null) {
+            try {
+                factory.setLookupParallelism(parseIntParameter("-a", parallelism_parameter));
+            }
+            catch (final IllegalArgumentException e) {
+                usage(e.getMessage());
+            }
+        }
+    }
+
+    private int parseIntParameter(final String flag, final String parameter) {
+
+        try {
+            return Integer.parseInt(parameter);
+        }
+        catch (final NumberFormatException e) {
+            usage("Not a number for " + flag + ": " + parameter);
+            return 0; // Not reached, since usage() exits.
+        }
+    }
 }
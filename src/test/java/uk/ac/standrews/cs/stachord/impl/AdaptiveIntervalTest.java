@@ -0,0 +1,120 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests of the interval between rounds of a maintenance task.
+ */
+public class AdaptiveIntervalTest {
+
+    /**
+     * Tests whether the interval doubles on each back-off until it reaches the ceiling, and stays there.
+     */
+    @Test
+    public void backOffDoublesUpToCeiling() {
+
+        final AdaptiveInterval interval = new AdaptiveInterval(1000, 5000);
+        assertThat(interval.getInterval(), is(equalTo(1000L)));
+
+        interval.backOff();
+        assertThat(interval.getInterval(), is(equalTo(2000L)));
+
+        interval.backOff();
+        assertThat(interval.getInterval(), is(equalTo(4000L)));
+
+        interval.backOff();
+        assertThat(interval.getInterval(), is(equalTo(5000L)));
+
+        interval.backOff();
+        assertThat(interval.getInterval(), is(equalTo(5000L)));
+    }
+
+    /**
+     * Tests whether backing off near the largest representable interval reaches the ceiling without overflowing.
+     */
+    @Test
+    public void backOffDoesNotOverflow() {
+
+        final AdaptiveInterval interval = new AdaptiveInterval(Long.MAX_VALUE / 2 + 1, Long.MAX_VALUE);
+
+        interval.backOff();
+        assertThat(interval.getInterval(), is(equalTo(Long.MAX_VALUE)));
+    }
+
+    /**
+     * Tests whether a reset returns the interval to the floor.
+     */
+    @Test
+    public void resetReturnsToFloor() {
+
+        final AdaptiveInterval interval = new AdaptiveInterval(1000, 5000);
+        interval.backOff();
+        interval.backOff();
+
+        interval.reset();
+        assertThat(interval.getInterval(), is(equalTo(1000L)));
+    }
+
+    /**
+     * Tests whether setting the bounds returns the interval to the new floor, and a fixed range gives a fixed interval.
+     */
+    @Test
+    public void setBoundsReturnsToNewFloor() {
+
+        final AdaptiveInterval interval = new AdaptiveInterval(1000, 5000);
+        interval.backOff();
+
+        interval.setBounds(3000, 3000);
+        assertThat(interval.getFloor(), is(equalTo(3000L)));
+        assertThat(interval.getInterval(), is(equalTo(3000L)));
+
+        interval.backOff();
+        assertThat(interval.getInterval(), is(equalTo(3000L)));
+    }
+
+    /**
+     * Tests whether a ceiling below the floor is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void ceilingBelowFloorRejected() {
+
+        new AdaptiveInterval(5000, 1000);
+    }
+
+    /**
+     * Tests whether a floor of zero is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroFloorRejected() {
+
+        new AdaptiveInterval(0, 1000);
+    }
+}
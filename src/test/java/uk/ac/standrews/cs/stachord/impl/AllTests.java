@@ -34,7 +34,7 @@ import org.junit.runners.Suite;
  * @author Graham Kirby (graham.kirby@st-andrews.ac.uk)
  */
 @RunWith(Suite.class)
-@Suite.SuiteClasses({ChordLocalTest.class})
+@Suite.SuiteClasses({ChordLocalTest.class, ChordRingTest.class, OwnershipCacheTest.class, ParallelLookupTest.class, ParallelLookupFailureTest.class, LatencyTrackerTest.class, LookupBackOffTest.class, RoutingStateTest.class, FixedWidthKeyTest.class, NeighbourCacheTest.class, AdaptiveIntervalTest.class, FingerTableBootstrapTest.class, FingerBootstrapTest.class, ProximitySelectorTest.class, FingerTableResizeTest.class, RoutingBaseTest.class, ProtocolCompatibilityTest.class, MembershipDeltaLogTest.class, SharedMaintenanceTest.class, ChordMaintenanceTest.class})
 public class AllTests {
     // Empty.
 }
@@ -0,0 +1,45 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A server that answers only the calls of the baseline protocol, standing in for a node that predates the later calls.
+ */
+class BaselineChordRemoteServer extends ChordRemoteServer {
+
+    private static final Set<String> BASELINE_METHODS = new HashSet<String>(Arrays.asList("getKey", "getAddress", "lookup", "getSuccessor", "getPredecessor", "notify", "join",
+            "getSuccessorList", "getFingerList", "nextHop", "enablePredecessorMaintenance", "enableStabilization", "enablePeerStateMaintenance", "notifyFailure",
+            "toStringDetailed", "toStringTerse", "hashCode", "toString"));
+
+    BaselineChordRemoteServer(final ChordNodeImpl chord_node) {
+
+        super(chord_node);
+        handler_map.keySet().retainAll(BASELINE_METHODS);
+    }
+}
@@ -0,0 +1,96 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import org.junit.Test;
+import uk.ac.standrews.cs.nds.p2p.keys.Key;
+import uk.ac.standrews.cs.utilities.archive.NetworkUtil;
+
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests of the adaptive intervals between rounds of node maintenance.
+ */
+public class ChordMaintenanceTest {
+
+    private static final int PORT = 10210;
+    private static final long FLOOR = TimeUnit.SECONDS.toNanos(1);
+    private static final long BACK_OFF_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+    private static final long POLL_INTERVAL = 50;
+
+    /**
+     * Tests whether the intervals lengthen while a stable node's maintenance finds nothing to do, and return to the 1 s floor as soon as a change is seen.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void backsOffAndReturnsToFloorOnActivity() throws Exception {
+
+        final ChordNodeImpl node = (ChordNodeImpl) new ChordNodeFactory().createNode(new InetSocketAddress(NetworkUtil.getLocalIPv4Address(), PORT), new Key(new BigInteger("3")));
+
+        // A separate maintenance object on the same node, so that the node's own maintenance can't report activity to it.
+        final ChordMaintenance maintenance = new ChordMaintenance(node, null);
+
+        try {
+            assertAtFloor(maintenance);
+
+            // The first round is performed at once; a single node ring doesn't change, so each task backs off.
+            maintenance.start();
+
+            final long deadline = System.currentTimeMillis() + BACK_OFF_TIMEOUT;
+            while (!backedOff(maintenance)) {
+
+                assertThat("intervals backed off in time", System.currentTimeMillis() < deadline, is(true));
+                Thread.sleep(POLL_INTERVAL);
+            }
+
+            maintenance.activityDetected();
+            assertAtFloor(maintenance);
+        }
+        finally {
+            maintenance.shutdown();
+            node.shutDown();
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    private static boolean backedOff(final ChordMaintenance maintenance) {
+
+        return maintenance.getPredecessorMaintenanceInterval().getInterval() > FLOOR && maintenance.getStabilizationInterval().getInterval() > FLOOR && maintenance.getFingerTableMaintenanceInterval().getInterval() > FLOOR;
+    }
+
+    private static void assertAtFloor(final ChordMaintenance maintenance) {
+
+        assertThat(maintenance.getPredecessorMaintenanceInterval().getInterval(), is(equalTo(FLOOR)));
+        assertThat(maintenance.getStabilizationInterval().getInterval(), is(equalTo(FLOOR)));
+        assertThat(maintenance.getFingerTableMaintenanceInterval().getInterval(), is(equalTo(FLOOR)));
+    }
+}
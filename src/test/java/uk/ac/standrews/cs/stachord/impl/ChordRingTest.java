@@ -0,0 +1,327 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.ac.standrews.cs.nds.p2p.interfaces.IKey;
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+import uk.ac.standrews.cs.stachord.interfaces.IChordNode;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemote;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+import uk.ac.standrews.cs.stachord.interfaces.ILookupTrace;
+import uk.ac.standrews.cs.stachord.interfaces.IRangeLookup;
+import uk.ac.standrews.cs.stachord.interfaces.IRangeOwner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Chord tests on a ring of several nodes within a single process.
+ */
+public class ChordRingTest {
+
+    private static final int FIRST_PORT = 10100;
+    private static final int RING_SIZE = 6;
+    private static final int SAMPLED_LOOKUPS = 200;
+
+    private static LocalRing ring;
+
+    /**
+     * Sets up test, creating a ring of nodes and waiting for it to become stable.
+     * @throws Exception if the test cannot be set up.
+     */
+    @BeforeClass
+    public static void setup() throws Exception {
+
+        ring = new LocalRing(FIRST_PORT, RING_SIZE);
+    }
+
+    /**
+     * Cleans up test.
+     */
+    @AfterClass
+    public static void teardown() {
+
+        if (ring != null) {
+            ring.shutDown();
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Tests whether recursive lookups from every node resolve each key to its owner.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void recursiveLookup() throws Exception {
+
+        for (int i = 0; i < ring.size(); i++) {
+
+            final IChordNode node = ring.getNode(i);
+            for (final IKey k : ring.testKeys()) {
+                assertThat(node.lookupRecursive(k).getCachedKey(), is(equalTo(ring.expectedOwner(k))));
+            }
+        }
+    }
+
+    /**
+     * Tests whether asynchronous lookups from every node, all issued before any is awaited, resolve each key to its owner.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void asynchronousLookup() throws Exception {
+
+        final List<IKey> keys = ring.testKeys();
+
+        for (int i = 0; i < ring.size(); i++) {
+
+            final List<CompletableFuture<IChordRemoteReference>> lookups = new ArrayList<CompletableFuture<IChordRemoteReference>>();
+            for (final IKey k : keys) {
+                lookups.add(ring.getNode(i).lookupAsync(k));
+            }
+
+            for (int j = 0; j < keys.size(); j++) {
+                assertThat(lookups.get(j).get().getCachedKey(), is(equalTo(ring.expectedOwner(keys.get(j)))));
+            }
+        }
+    }
+
+    /**
+     * Tests whether batch lookups from every node resolve each key to its owner.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void batchLookup() throws Exception {
+
+        final List<IKey> keys = ring.testKeys();
+
+        for (int i = 0; i < ring.size(); i++) {
+
+            final Map<IKey, IChordRemoteReference> owners = ring.getNode(i).lookupAll(keys);
+
+            assertThat(owners.size(), is(equalTo(keys.size())));
+            for (final IKey k : keys) {
+                assertThat(owners.get(k).getCachedKey(), is(equalTo(ring.expectedOwner(k))));
+            }
+        }
+    }
+
+    /**
+     * Tests whether lookups from every node still resolve each key to its owner when repeated, by which time the owners are cached.
+     * The keys include node keys, whose final hops can come from nodes other than the owner's predecessor.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void repeatedLookup() throws Exception {
+
+        for (int i = 0; i < ring.size(); i++) {
+            for (int repetition = 0; repetition < 2; repetition++) {
+                for (final IKey k : ring.testKeys()) {
+                    assertThat(ring.getNode(i).lookup(k).getCachedKey(), is(equalTo(ring.expectedOwner(k))));
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests whether a traced lookup records the remote hops taken, ending with the owner's predecessor, which gives the final hop.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void tracedLookup() throws Exception {
+
+        // A key owned by a node three places round the ring from the first node isn't resolved locally.
+        final ILookupTrace trace = ring.getNode(0).lookupTraced(ring.keyAfter(2));
+
+        assertThat(trace.getOwner().getCachedKey(), is(equalTo(ring.nodeKey(3))));
+        assertThat(trace.getHops().isEmpty(), is(false));
+        assertThat(trace.getFailedHops().isEmpty(), is(true));
+        assertThat(trace.getHops().get(trace.getHops().size() - 1).getKey(), is(equalTo(ring.nodeKey(2))));
+
+        // A key in the node's own range needs no remote hops.
+        final ILookupTrace local_trace = ring.getNode(0).lookupTraced(ring.nodeKey(0));
+
+        assertThat(local_trace.getOwner().getCachedKey(), is(equalTo(ring.nodeKey(0))));
+        assertThat(local_trace.getHops().isEmpty(), is(true));
+    }
+
+    /**
+     * Tests whether sampled lookups are traced when sampling is enabled and not otherwise, and whether only the most recent traces are retained.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void sampledLookupTraces() throws Exception {
+
+        final ChordNodeImpl node = (ChordNodeImpl) ring.getNode(0);
+        final FixedWidthKey remote_key = FixedWidthKey.valueOf(ring.keyAfter(2));
+
+        try {
+            // Every lookup is traced at a sampling rate of 1.
+            node.setLookupTraceSamplingRate(1);
+            node.lookupUncached(remote_key);
+
+            final ILookupTrace trace = last(node.getSampledLookupTraces());
+
+            assertThat(trace.getKey(), is(equalTo(remote_key.toKey())));
+            assertThat(trace.getOwner().getCachedKey(), is(equalTo(ring.nodeKey(3))));
+            assertThat(trace.getHops().isEmpty(), is(false));
+
+            // The number of traces retained is bounded.
+            for (int i = 0; i < SAMPLED_LOOKUPS; i++) {
+                node.lookupUncached(remote_key);
+            }
+            final int retained = node.getSampledLookupTraces().size();
+            assertThat(retained < SAMPLED_LOOKUPS, is(true));
+
+            node.lookupUncached(remote_key);
+            assertThat(node.getSampledLookupTraces().size(), is(equalTo(retained)));
+
+            // No lookups are traced at a sampling rate of 0, so the most recent trace is unchanged.
+            node.setLookupTraceSamplingRate(0);
+            final ILookupTrace most_recent = last(node.getSampledLookupTraces());
+
+            for (int i = 0; i < SAMPLED_LOOKUPS; i++) {
+                node.lookupUncached(remote_key);
+            }
+            assertThat(last(node.getSampledLookupTraces()) == most_recent, is(true));
+
+            boolean rejected = false;
+            try {
+                node.setLookupTraceSamplingRate(2);
+            }
+            catch (final IllegalArgumentException e) {
+                rejected = true;
+            }
+            assertThat(rejected, is(true));
+        }
+        finally {
+            node.setLookupTraceSamplingRate(0);
+        }
+    }
+
+    /**
+     * Tests whether range lookups return each owner of part of the range in ring order, with contiguous intervals, including a range
+     * that wraps round the ring.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void rangeLookup() throws Exception {
+
+        // From half way between the first two nodes to half way between the fourth and fifth.
+        checkRange(ring.getNode(0).lookupRange(ring.keyAfter(0), ring.keyAfter(3)), 1, 4);
+
+        // From half way between the last two nodes, round the ring to half way between the first two.
+        checkRange(ring.getNode(2).lookupRange(ring.keyAfter(4), ring.keyAfter(0)), 5, 1);
+    }
+
+    /**
+     * Tests whether a range lookup covering the whole ring returns every node once, walking on past the end of the first owner's successor list.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void wholeRingRangeLookup() throws Exception {
+
+        // The first owner's successor list holds fewer nodes than the rest of the ring.
+        assertThat(RING_SIZE > IChordNode.MAX_SUCCESSOR_LIST_SIZE, is(true));
+
+        for (int i = 0; i < ring.size(); i++) {
+            checkRange(ring.getNode(i).lookupRange(ring.keyAfter(i), ring.keyAfter(i)), (i + 1) % ring.size(), i);
+        }
+    }
+
+    private static ILookupTrace last(final List<ILookupTrace> traces) {
+
+        return traces.get(traces.size() - 1);
+    }
+
+    /**
+     * Checks that a range lookup returns the nodes from the first index to the last index in ring order, each with its predecessor's key as
+     * the start of its interval and its own key as the end.
+     */
+    private static void checkRange(final IRangeLookup range_lookup, final int first_index, final int last_index) throws RPCException {
+
+        int index = first_index;
+        while (true) {
+
+            assertThat(range_lookup.hasNext(), is(true));
+            final IRangeOwner owner = range_lookup.next();
+
+            assertThat(owner.getOwner().getCachedKey(), is(equalTo(ring.nodeKey(index))));
+            assertThat(owner.getIntervalStart(), is(equalTo(ring.nodeKey((index + ring.size() - 1) % ring.size()))));
+            assertThat(owner.getIntervalEnd(), is(equalTo(ring.nodeKey(index))));
+
+            if (index == last_index) {
+                break;
+            }
+            index = (index + 1) % ring.size();
+        }
+
+        assertThat(range_lookup.hasNext(), is(false));
+    }
+
+    /**
+     * Tests whether replica lookups from every node, made both locally and through a remote reference, return the owner of each key followed
+     * by its successors, and whether a request for more replicas than there are nodes returns each node once.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void replicaLookup() throws Exception {
+
+        for (int i = 0; i < ring.size(); i++) {
+
+            final IChordNode node = ring.getNode(i);
+            final IChordRemote remote = node.getSelfReference().getRemote();
+
+            for (final IKey k : ring.testKeys()) {
+
+                final int owner_index = ring.nodeIndex(ring.expectedOwner(k));
+
+                checkReplicas(node.lookupReplicas(k, 3), owner_index, 3);
+                checkReplicas(node.lookupReplicas(k, ring.size() + 2), owner_index, ring.size());
+                checkReplicas(remote.lookupReplicas(k, 3), owner_index, 3);
+            }
+        }
+    }
+
+    /**
+     * Checks that the given replicas are the given number of nodes in ring order, starting with the node at the given index.
+     */
+    private static void checkReplicas(final List<IChordRemoteReference> replicas, final int owner_index, final int expected_number) throws RPCException {
+
+        assertThat(replicas.size(), is(equalTo(expected_number)));
+        for (int i = 0; i < expected_number; i++) {
+            assertThat(replicas.get(i).getCachedKey(), is(equalTo(ring.nodeKey((owner_index + i) % ring.size()))));
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import org.junit.Test;
+import uk.ac.standrews.cs.nds.p2p.keys.Key;
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests of the rounds of lookups made to fill a finger table after joining. The nodes referred to aren't running, but their keys are known so
+ * no remote calls are made, and lookups are answered from a fixed list of nodes.
+ */
+public class FingerBootstrapTest {
+
+    private static final int FIRST_PORT = 10700;
+
+    private final IChordRemoteReference node_100 = node(100);
+    private final IChordRemoteReference node_300 = node(300);
+    private final IChordRemoteReference node_500 = node(500);
+    private final IChordRemoteReference node_700 = node(700);
+
+    private final List<IChordRemoteReference> ring = Arrays.asList(node_100, node_300, node_500, node_700);
+
+    /**
+     * Tests whether each round looks up only the first target of each group with the same estimated owner, resolving the rest of the group from
+     * its result, and whether the owners found are used to estimate in later rounds.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void groupsResolvedFromFirstTarget() throws Exception {
+
+        final FixedWidthKey[] targets = keys(110, 120, 150, 320, 600, 650);
+        final List<FixedWidthKey> lookups = new ArrayList<FixedWidthKey>();
+
+        final IChordRemoteReference[] owners = new FingerBootstrap(targets, Collections.singletonList(node_100), lookup(lookups, 0), 4).start().get();
+
+        assertThat(Arrays.asList(owners), is(equalTo(Arrays.asList(node_300, node_300, node_300, node_500, node_700, node_700))));
+        assertThat(lookups, is(equalTo(Arrays.asList(targets[0], targets[3], targets[4]))));
+    }
+
+    /**
+     * Tests whether a target whose lookup fails is looked up again in the next round.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void failedTargetRetried() throws Exception {
+
+        final FixedWidthKey[] targets = keys(110, 150);
+        final List<FixedWidthKey> lookups = new ArrayList<FixedWidthKey>();
+
+        final IChordRemoteReference[] owners = new FingerBootstrap(targets, Collections.singletonList(node_100), lookup(lookups, 1), 4).start().get();
+
+        assertThat(Arrays.asList(owners), is(equalTo(Arrays.asList(node_300, node_300))));
+        assertThat(lookups, is(equalTo(Arrays.asList(targets[0], targets[0]))));
+    }
+
+    /**
+     * Tests whether targets that can't be resolved within the maximum number of rounds are left without owners, rather than given their estimates.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void unresolvedTargetsHaveNoOwner() throws Exception {
+
+        final FixedWidthKey[] targets = keys(110, 150);
+        final List<FixedWidthKey> lookups = new ArrayList<FixedWidthKey>();
+
+        final IChordRemoteReference[] owners = new FingerBootstrap(targets, Collections.singletonList(node_300), lookup(lookups, Integer.MAX_VALUE), 2).start().get();
+
+        assertThat(owners[0], is(nullValue()));
+        assertThat(owners[1], is(nullValue()));
+        assertThat(lookups.size(), is(equalTo(2)));
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a lookup that records the targets looked up, fails the given number of lookups and then answers with the first node in the ring
+     * at or after each target.
+     */
+    private Function<FixedWidthKey, CompletableFuture<IChordRemoteReference>> lookup(final List<FixedWidthKey> lookups, final int number_of_failures) {
+
+        return new Function<FixedWidthKey, CompletableFuture<IChordRemoteReference>>() {
+
+            @Override
+            public CompletableFuture<IChordRemoteReference> apply(final FixedWidthKey target) {
+
+                lookups.add(target);
+
+                final CompletableFuture<IChordRemoteReference> result = new CompletableFuture<IChordRemoteReference>();
+                if (lookups.size() <= number_of_failures) {
+                    result.completeExceptionally(new RPCException("lookup failed"));
+                }
+                else {
+                    result.complete(owner(target));
+                }
+                return result;
+            }
+        };
+    }
+
+    private IChordRemoteReference owner(final FixedWidthKey target) {
+
+        for (final IChordRemoteReference node : ring) {
+            try {
+                if (node.getCachedKey().keyValue().compareTo(target.keyValue()) >= 0) { return node; }
+            }
+            catch (final RPCException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return ring.get(0);
+    }
+
+    private static FixedWidthKey[] keys(final int... values) {
+
+        final FixedWidthKey[] keys = new FixedWidthKey[values.length];
+        for (int i = 0; i < values.length; i++) {
+            keys[i] = FixedWidthKey.valueOf(new Key(BigInteger.valueOf(values[i])));
+        }
+        return keys;
+    }
+
+    private static IChordRemoteReference node(final int key) {
+
+        return new ChordRemoteReference(new Key(BigInteger.valueOf(key)), new InetSocketAddress(InetAddress.getLoopbackAddress(), FIRST_PORT + key / 100));
+    }
+}
@@ -0,0 +1,130 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.ac.standrews.cs.nds.p2p.interfaces.IKey;
+import uk.ac.standrews.cs.nds.p2p.keys.Key;
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+import uk.ac.standrews.cs.stachord.interfaces.IChordNode;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+import uk.ac.standrews.cs.utilities.archive.NetworkUtil;
+
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests of filling the finger table when a node joins a ring of nodes within a single process.
+ */
+public class FingerTableBootstrapTest {
+
+    private static final int FIRST_PORT = 10130;
+    private static final int RING_SIZE = 6;
+    private static final long FINGER_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+    private static final long POLL_INTERVAL = 100;
+
+    private static LocalRing ring;
+    private static IChordNode joining_node;
+
+    /**
+     * Sets up test, creating a ring of nodes.
+     * @throws Exception if the test cannot be set up.
+     */
+    @BeforeClass
+    public static void setup() throws Exception {
+
+        ring = new LocalRing(FIRST_PORT, RING_SIZE);
+    }
+
+    /**
+     * Cleans up test.
+     */
+    @AfterClass
+    public static void teardown() {
+
+        if (joining_node != null) {
+            joining_node.shutDown();
+        }
+        if (ring != null) {
+            ring.shutDown();
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Tests whether a node that joins with finger table maintenance disabled gets a full finger table, with the owner of the furthest
+     * finger target as its last finger and the fingers in increasing order of distance, as they would be after maintenance.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void joiningNodeFillsFingerTable() throws Exception {
+
+        final IKey joining_key = ring.keyAfter(2);
+        joining_node = new ChordNodeFactory().createNode(new InetSocketAddress(NetworkUtil.getLocalIPv4Address(), FIRST_PORT + RING_SIZE), joining_key);
+        joining_node.getSelfReference().getRemote().enablePeerStateMaintenance(false);
+
+        joining_node.join(ring.getNode(0).getSelfReference());
+
+        final List<IChordRemoteReference> fingers = waitForFullFingerTable();
+
+        // The furthest finger target is half way round the ring.
+        final IKey furthest_target = new Key(joining_key.keyValue().add(BigInteger.ONE.shiftLeft(Key.KEY_LENGTH - 1)));
+        assertThat(fingers.get(fingers.size() - 1).getCachedKey(), is(equalTo(ring.expectedOwner(furthest_target))));
+
+        for (int i = 1; i < fingers.size(); i++) {
+            assertThat(distanceFromJoiningNode(fingers.get(i - 1)).compareTo(distanceFromJoiningNode(fingers.get(i))) <= 0, is(true));
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    private static List<IChordRemoteReference> waitForFullFingerTable() throws Exception {
+
+        final long deadline = System.currentTimeMillis() + FINGER_TIMEOUT;
+
+        while (true) {
+
+            final List<IChordRemoteReference> fingers = joining_node.getSelfReference().getRemote().getFingerList();
+            if (!fingers.isEmpty() && !fingers.contains(null)) { return fingers; }
+
+            assertThat("finger table filled in time", System.currentTimeMillis() < deadline, is(true));
+            Thread.sleep(POLL_INTERVAL);
+        }
+    }
+
+    private static BigInteger distanceFromJoiningNode(final IChordRemoteReference finger) throws RPCException {
+
+        return finger.getCachedKey().keyValue().subtract(joining_node.getKey().keyValue()).mod(BigInteger.ONE.shiftLeft(Key.KEY_LENGTH));
+    }
+}
@@ -0,0 +1,190 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.ac.standrews.cs.nds.p2p.keys.Key;
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests of resizing the finger table of a node in a ring within a single process. The node's own finger table maintenance is disabled,
+ * so that the tests control when fingers are fixed.
+ */
+public class FingerTableResizeTest {
+
+    private static final int FIRST_PORT = 10160;
+    private static final int RING_SIZE = 4;
+    private static final int SMALL_RING_SIZE_ESTIMATE = RING_SIZE;
+    private static final int LARGE_RING_SIZE_ESTIMATE = 1 << 20;
+    private static final long CONCURRENT_RESIZING_TIME = TimeUnit.SECONDS.toMillis(2);
+    private static final long RESIZE_INTERVAL = 5;
+
+    private static LocalRing ring;
+    private static ChordNodeImpl node;
+    private static FingerTable finger_table;
+
+    /**
+     * Sets up test, creating a ring of nodes.
+     * @throws Exception if the test cannot be set up.
+     */
+    @BeforeClass
+    public static void setup() throws Exception {
+
+        ring = new LocalRing(FIRST_PORT, RING_SIZE);
+
+        node = (ChordNodeImpl) ring.getNode(0);
+        node.enablePeerStateMaintenance(false);
+        finger_table = node.getFingerTable();
+    }
+
+    /**
+     * Cleans up test.
+     */
+    @AfterClass
+    public static void teardown() {
+
+        if (ring != null) {
+            ring.shutDown();
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Tests whether growing the table keeps the existing fingers, moved up by the number of new fingers, and shrinking it again keeps the fingers
+     * of the remaining levels.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void resizingKeepsFingers() throws Exception {
+
+        // Growing and then shrinking the table gives the size required for the small estimate, whatever the size was before.
+        finger_table.adjustSize(LARGE_RING_SIZE_ESTIMATE);
+        finger_table.adjustSize(SMALL_RING_SIZE_ESTIMATE);
+        final List<IChordRemoteReference> fingers = fillTable();
+
+        assertThat(finger_table.adjustSize(LARGE_RING_SIZE_ESTIMATE), is(true));
+
+        final List<IChordRemoteReference> grown_fingers = finger_table.getFingers();
+        final int shift = grown_fingers.size() - fingers.size();
+        assertThat(shift > 0, is(true));
+
+        for (int i = 0; i < shift; i++) {
+            assertThat(grown_fingers.get(i), is(nullValue()));
+        }
+        for (int i = 0; i < fingers.size(); i++) {
+            assertThat(grown_fingers.get(i + shift), is(equalTo(fingers.get(i))));
+        }
+
+        assertThat(finger_table.adjustSize(SMALL_RING_SIZE_ESTIMATE), is(true));
+        assertThat(finger_table.getFingers(), is(equalTo(fingers)));
+    }
+
+    /**
+     * Tests whether fixing fingers while the table is repeatedly resized fails on neither side, and leaves a table that is filled correctly.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void resizingWhileFixingFingers() throws Exception {
+
+        final AtomicBoolean stopped = new AtomicBoolean(false);
+        final AtomicReference<Throwable> fixing_error = new AtomicReference<Throwable>();
+
+        final Thread fixing_thread = new Thread() {
+
+            @Override
+            public void run() {
+
+                try {
+                    while (!stopped.get()) {
+                        finger_table.fixNextFinger();
+                    }
+                }
+                catch (final Throwable t) {
+                    fixing_error.set(t);
+                }
+            }
+        };
+        fixing_thread.start();
+
+        try {
+            final long end_time = System.currentTimeMillis() + CONCURRENT_RESIZING_TIME;
+            boolean large = true;
+
+            while (System.currentTimeMillis() < end_time && fixing_error.get() == null) {
+                finger_table.adjustSize(large ? LARGE_RING_SIZE_ESTIMATE : SMALL_RING_SIZE_ESTIMATE);
+                large = !large;
+                Thread.sleep(RESIZE_INTERVAL);
+            }
+        }
+        finally {
+            stopped.set(true);
+            fixing_thread.join();
+        }
+
+        assertThat(fixing_error.get(), is(nullValue()));
+
+        final List<IChordRemoteReference> fingers = fillTable();
+        assertThat(finger_table.getFingerRoundTripTimes().size(), is(equalTo(fingers.size())));
+
+        for (int i = 1; i < fingers.size(); i++) {
+            assertThat(distanceFromNode(fingers.get(i - 1)).compareTo(distanceFromNode(fingers.get(i))) <= 0, is(true));
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    private static List<IChordRemoteReference> fillTable() {
+
+        final int number_of_fingers = finger_table.getFingers().size();
+        for (int i = 0; i < number_of_fingers; i++) {
+            finger_table.fixNextFinger();
+        }
+
+        final List<IChordRemoteReference> fingers = finger_table.getFingers();
+        assertThat(fingers.size(), is(equalTo(number_of_fingers)));
+        assertThat(fingers.contains(null), is(false));
+        return fingers;
+    }
+
+    private static BigInteger distanceFromNode(final IChordRemoteReference finger) throws RPCException {
+
+        return finger.getCachedKey().keyValue().subtract(node.getKey().keyValue()).mod(BigInteger.ONE.shiftLeft(Key.KEY_LENGTH));
+    }
+}
@@ -0,0 +1,212 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import org.junit.Test;
+import uk.ac.standrews.cs.nds.p2p.keys.Key;
+import uk.ac.standrews.cs.nds.p2p.keys.RingArithmetic;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests of the word-based ring arithmetic on fixed-width keys, against RingArithmetic and against the same arithmetic on BigInteger values.
+ */
+public class FixedWidthKeyTest {
+
+    private static final int RANDOM_SEED = 23948572;
+    private static final int NUMBER_OF_TRIALS = 100000;
+
+    private static final BigInteger KEYSPACE_SIZE = BigInteger.ONE.shiftLeft(Key.KEY_LENGTH);
+
+    // Values either side of the word boundaries, and at the ends of the key space.
+    private static final List<BigInteger> BOUNDARY_VALUES = boundaryValues();
+
+    private final Random random = new Random(RANDOM_SEED);
+
+    /**
+     * Tests whether segment membership agrees with RingArithmetic for random keys, many of them at or near word boundaries.
+     */
+    @Test
+    public void inSegmentAgreesWithRingArithmetic() {
+
+        for (int i = 0; i < NUMBER_OF_TRIALS; i++) {
+
+            final BigInteger start = randomValue();
+            final BigInteger k = randomValue();
+            final BigInteger end = randomValue();
+
+            final boolean expected = RingArithmetic.inSegment(new Key(start), new Key(k), new Key(end));
+            assertThat(describe(start, k, end), FixedWidthKey.inSegment(key(start), key(k), key(end)), is(equalTo(expected)));
+        }
+    }
+
+    /**
+     * Tests whether distance comparisons agree with RingArithmetic and with the distances computed on BigInteger values, for random keys,
+     * many of them at or near word boundaries.
+     */
+    @Test
+    public void compareDistancesAgreesWithRingArithmetic() {
+
+        for (int i = 0; i < NUMBER_OF_TRIALS; i++) {
+
+            final BigInteger origin = randomValue();
+            final BigInteger k1 = randomValue();
+            final BigInteger k2 = randomValue();
+
+            final int comparison = FixedWidthKey.compareDistances(key(origin), key(k1), key(k2));
+
+            assertThat(describe(origin, k1, k2), Integer.signum(comparison), is(equalTo(distance(origin, k1).compareTo(distance(origin, k2)))));
+            assertThat(describe(origin, k1, k2), comparison > 0, is(equalTo(RingArithmetic.ringDistanceFurther(new Key(origin), new Key(k1), new Key(k2)))));
+        }
+    }
+
+    /**
+     * Tests whether every pair of boundary values gives the correct distance comparison and segment membership, in each position.
+     */
+    @Test
+    public void boundaryValueCombinations() {
+
+        for (final BigInteger first : BOUNDARY_VALUES) {
+            for (final BigInteger second : BOUNDARY_VALUES) {
+                for (final BigInteger third : BOUNDARY_VALUES) {
+
+                    final int comparison = FixedWidthKey.compareDistances(key(first), key(second), key(third));
+                    assertThat(describe(first, second, third), Integer.signum(comparison), is(equalTo(distance(first, second).compareTo(distance(first, third)))));
+
+                    final boolean in_segment = first.equals(third) || !first.equals(second) && distance(first, second).compareTo(distance(first, third)) <= 0;
+                    assertThat(describe(first, second, third), FixedWidthKey.inSegment(key(first), key(second), key(third)), is(equalTo(in_segment)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests whether a segment that starts and ends at the same key is the whole ring.
+     */
+    @Test
+    public void segmentWithEqualEndsIsWholeRing() {
+
+        for (final BigInteger end : BOUNDARY_VALUES) {
+            for (final BigInteger k : BOUNDARY_VALUES) {
+                assertThat(describe(end, k, end), FixedWidthKey.inSegment(key(end), key(k), key(end)), is(true));
+            }
+        }
+    }
+
+    /**
+     * Tests whether values are reduced modulo the key space size, so that the largest key is followed by zero.
+     */
+    @Test
+    public void valuesWrapRound() {
+
+        final FixedWidthKey largest = key(KEYSPACE_SIZE.subtract(BigInteger.ONE));
+
+        assertThat(key(KEYSPACE_SIZE).keyValue(), is(equalTo(BigInteger.ZERO)));
+        assertThat(FixedWidthKey.compareDistances(largest, key(BigInteger.ZERO), key(BigInteger.ONE)) < 0, is(true));
+        assertThat(FixedWidthKey.inSegment(largest, key(BigInteger.ZERO), key(BigInteger.ONE)), is(true));
+        assertThat(FixedWidthKey.inSegment(key(BigInteger.ZERO), largest, key(BigInteger.ONE)), is(false));
+    }
+
+    /**
+     * Tests whether converted keys keep their values, retain the keys they were converted from, and are equal and ordered by value alone.
+     */
+    @Test
+    public void conversionPreservesValue() {
+
+        for (final BigInteger value : BOUNDARY_VALUES) {
+
+            final Key original = new Key(value.mod(KEYSPACE_SIZE));
+            final FixedWidthKey converted = FixedWidthKey.valueOf(original);
+
+            assertThat(converted.keyValue(), is(equalTo(original.keyValue())));
+            assertThat(converted.toKey() == original, is(true));
+            assertThat(converted, is(equalTo(key(value))));
+            assertThat(converted.hashCode(), is(equalTo(key(value).hashCode())));
+            assertThat(key(value).toKey(), is(equalTo((Object) original)));
+        }
+
+        final BigInteger middle_word_high_bit = BigInteger.ONE.shiftLeft(127);
+        assertThat(key(middle_word_high_bit).compareTo(key(middle_word_high_bit.subtract(BigInteger.ONE))) > 0, is(true));
+        assertThat(key(KEYSPACE_SIZE.subtract(BigInteger.ONE)).compareTo(key(BigInteger.ZERO)) > 0, is(true));
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a boundary value, a value a small random amount either side of one, or a uniformly random value, with equal probability.
+     */
+    private BigInteger randomValue() {
+
+        switch (random.nextInt(3)) {
+            case 0:
+                return BOUNDARY_VALUES.get(random.nextInt(BOUNDARY_VALUES.size()));
+            case 1:
+                final BigInteger offset = BigInteger.valueOf(random.nextInt(1000) - 500);
+                return BOUNDARY_VALUES.get(random.nextInt(BOUNDARY_VALUES.size())).add(offset).mod(KEYSPACE_SIZE);
+            default:
+                return new BigInteger(Key.KEY_LENGTH, random);
+        }
+    }
+
+    private static List<BigInteger> boundaryValues() {
+
+        final List<BigInteger> values = new ArrayList<BigInteger>();
+
+        for (final int word_boundary : new int[]{0, 32, 63, 64, 96, 127, 128, 159, 160}) {
+
+            final BigInteger power = BigInteger.ONE.shiftLeft(word_boundary);
+
+            for (final BigInteger value : new BigInteger[]{power.subtract(BigInteger.ONE), power, power.add(BigInteger.ONE)}) {
+                final BigInteger reduced_value = value.mod(KEYSPACE_SIZE);
+                if (!values.contains(reduced_value)) {
+                    values.add(reduced_value);
+                }
+            }
+        }
+        return values;
+    }
+
+    private static FixedWidthKey key(final BigInteger value) {
+
+        return new FixedWidthKey(value);
+    }
+
+    private static BigInteger distance(final BigInteger from, final BigInteger to) {
+
+        return to.subtract(from).mod(KEYSPACE_SIZE);
+    }
+
+    private static String describe(final BigInteger first, final BigInteger second, final BigInteger third) {
+
+        return first.toString(16) + ", " + second.toString(16) + ", " + third.toString(16);
+    }
+}
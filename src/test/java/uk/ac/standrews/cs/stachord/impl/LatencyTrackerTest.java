@@ -0,0 +1,96 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests of the latency percentiles used to decide when to hedge a lookup hop.
+ */
+public class LatencyTrackerTest {
+
+    /**
+     * Tests whether no estimate is given until enough latencies have been recorded.
+     */
+    @Test
+    public void unknownUntilEnoughSamples() {
+
+        final LatencyTracker tracker = new LatencyTracker();
+
+        for (int i = 1; i < 10; i++) {
+            tracker.record(i);
+            assertThat(tracker.getPercentile(0.95), is(equalTo(LatencyTracker.UNKNOWN_LATENCY)));
+        }
+
+        tracker.record(10);
+        assertThat(tracker.getPercentile(0.95), is(equalTo(10L)));
+    }
+
+    /**
+     * Tests whether percentiles are taken from the recorded latencies regardless of the order in which they were recorded.
+     */
+    @Test
+    public void percentiles() {
+
+        final LatencyTracker tracker = new LatencyTracker();
+
+        // Record 1 to 20 in a scrambled order.
+        for (int i = 0; i < 20; i++) {
+            tracker.record(i * 7 % 20 + 1);
+        }
+
+        assertThat(tracker.getPercentile(0.0), is(equalTo(1L)));
+        assertThat(tracker.getPercentile(0.5), is(equalTo(10L)));
+        assertThat(tracker.getPercentile(0.95), is(equalTo(19L)));
+        assertThat(tracker.getPercentile(1.0), is(equalTo(20L)));
+    }
+
+    /**
+     * Tests whether only the most recent 64 latencies contribute to the estimate, so that it follows a change in latency.
+     */
+    @Test
+    public void onlyRecentSamplesUsed() {
+
+        final LatencyTracker tracker = new LatencyTracker();
+
+        for (int i = 1; i <= 100; i++) {
+            tracker.record(i);
+        }
+
+        // The window holds 37 to 100.
+        assertThat(tracker.getPercentile(0.0), is(equalTo(37L)));
+        assertThat(tracker.getPercentile(0.5), is(equalTo(68L)));
+        assertThat(tracker.getPercentile(0.95), is(equalTo(97L)));
+
+        for (int i = 0; i < 64; i++) {
+            tracker.record(1000);
+        }
+        assertThat(tracker.getPercentile(0.0), is(equalTo(1000L)));
+    }
+}
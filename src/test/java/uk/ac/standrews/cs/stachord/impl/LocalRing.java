@@ -0,0 +1,214 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import uk.ac.standrews.cs.nds.p2p.interfaces.IKey;
+import uk.ac.standrews.cs.nds.p2p.keys.Key;
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+import uk.ac.standrews.cs.stachord.interfaces.IChordNode;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+import uk.ac.standrews.cs.utilities.archive.Duration;
+import uk.ac.standrews.cs.utilities.archive.NetworkUtil;
+
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A ring of Chord nodes within a single process, with keys spread evenly round the key space.
+ */
+class LocalRing {
+
+    private static final BigInteger KEY_SPACE_SIZE = BigInteger.ONE.shiftLeft(Key.KEY_LENGTH);
+    private static final long STABILIZATION_TIMEOUT = TimeUnit.SECONDS.toMillis(120);
+    private static final long POLL_INTERVAL = 100;
+
+    // Short maintenance intervals, so that the ring becomes stable quickly.
+    private static final Duration MAINTENANCE_FLOOR = new Duration(100, TimeUnit.MILLISECONDS);
+    private static final Duration MAINTENANCE_CEILING = new Duration(1, TimeUnit.SECONDS);
+
+    private final BigInteger key_spacing;
+    private final IChordNode[] nodes;
+
+    /**
+     * Creates a ring of nodes listening on consecutive ports, and waits for it to become stable.
+     * Node i has key (i + 1) * s, where s is the size of the key space divided by one more than the number of nodes.
+     *
+     * @param first_port the port of the first node
+     * @param size the number of nodes
+     * @throws Exception if the ring cannot be created or does not become stable
+     */
+    LocalRing(final int first_port, final int size) throws Exception {
+
+        this(first_port, size, new ChordNodeFactory());
+    }
+
+    /**
+     * Creates a ring as above, of nodes created by the given factory.
+     *
+     * @param first_port the port of the first node
+     * @param size the number of nodes
+     * @param factory the factory used to create the nodes
+     * @throws Exception if the ring cannot be created or does not become stable
+     */
+    LocalRing(final int first_port, final int size, final ChordNodeFactory factory) throws Exception {
+
+        key_spacing = KEY_SPACE_SIZE.divide(BigInteger.valueOf(size + 1));
+        nodes = new IChordNode[size];
+
+        try {
+            for (int i = 0; i < size; i++) {
+
+                final IKey key = new Key(key_spacing.multiply(BigInteger.valueOf(i + 1)));
+                nodes[i] = factory.createNode(new InetSocketAddress(NetworkUtil.getLocalIPv4Address(), first_port + i), key);
+
+                nodes[i].setPredecessorMaintenanceInterval(MAINTENANCE_FLOOR, MAINTENANCE_CEILING);
+                nodes[i].setStabilizationInterval(MAINTENANCE_FLOOR, MAINTENANCE_CEILING);
+                nodes[i].setFingerTableMaintenanceInterval(MAINTENANCE_FLOOR, MAINTENANCE_CEILING);
+
+                if (i > 0) {
+                    nodes[i].join(nodes[0].getSelfReference());
+                }
+            }
+
+            waitForStableRing();
+        }
+        catch (final Exception e) {
+            shutDown();
+            throw e;
+        }
+    }
+
+    IChordNode getNode(final int index) {
+
+        return nodes[index];
+    }
+
+    int size() {
+
+        return nodes.length;
+    }
+
+    IKey nodeKey(final int index) {
+
+        return nodes[index].getKey();
+    }
+
+    int nodeIndex(final IKey node_key) {
+
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodeKey(i).equals(node_key)) { return i; }
+        }
+        throw new IllegalArgumentException("no node with key " + node_key);
+    }
+
+    /**
+     * Returns the key half way between the node at the given index and its successor, which is owned by the successor.
+     */
+    IKey keyAfter(final int index) {
+
+        return new Key(nodeKey(index).keyValue().add(key_spacing.divide(BigInteger.valueOf(2))));
+    }
+
+    /**
+     * Returns the key of the node that should own the given key: the first node at or after it, wrapping round to the first node.
+     */
+    IKey expectedOwner(final IKey k) {
+
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodeKey(i).keyValue().compareTo(k.keyValue()) >= 0) { return nodeKey(i); }
+        }
+        return nodeKey(0);
+    }
+
+    /**
+     * Returns keys that are equal to node keys, just after node keys, between node keys, and either side of the point where the ring wraps round.
+     */
+    List<IKey> testKeys() {
+
+        final List<IKey> keys = new ArrayList<IKey>();
+
+        keys.add(new Key(BigInteger.ZERO));
+        keys.add(new Key(KEY_SPACE_SIZE.subtract(BigInteger.ONE)));
+        keys.add(new Key(KEY_SPACE_SIZE.shiftRight(1)));
+
+        for (int i = 0; i < nodes.length; i++) {
+
+            keys.add(nodeKey(i));
+            keys.add(new Key(nodeKey(i).keyValue().add(BigInteger.ONE)));
+            keys.add(keyAfter(i));
+        }
+        return keys;
+    }
+
+    /**
+     * Waits until each node has the correct successor, predecessor and successor list.
+     *
+     * @throws TimeoutException if the ring does not become stable in time
+     * @throws InterruptedException if interrupted while waiting
+     * @throws RPCException if a node's state can't be accessed
+     */
+    void waitForStableRing() throws TimeoutException, InterruptedException, RPCException {
+
+        final long deadline = System.currentTimeMillis() + STABILIZATION_TIMEOUT;
+
+        while (!isStable()) {
+            if (System.currentTimeMillis() > deadline) { throw new TimeoutException("ring did not become stable"); }
+            Thread.sleep(POLL_INTERVAL);
+        }
+    }
+
+    void shutDown() {
+
+        for (final IChordNode node : nodes) {
+            if (node != null) {
+                node.shutDown();
+            }
+        }
+    }
+
+    private boolean isStable() throws RPCException {
+
+        for (int i = 0; i < nodes.length; i++) {
+
+            final IChordRemoteReference successor = nodes[i].getSuccessor();
+            final IChordRemoteReference predecessor = nodes[i].getPredecessor();
+
+            if (successor == null || !successor.getCachedKey().equals(nodeKey((i + 1) % nodes.length))) { return false; }
+            if (predecessor == null || !predecessor.getCachedKey().equals(nodeKey((i + nodes.length - 1) % nodes.length))) { return false; }
+
+            final List<IChordRemoteReference> successor_list = nodes[i].getSelfReference().getRemote().getSuccessorList();
+            if (successor_list.size() != Math.min(IChordNode.MAX_SUCCESSOR_LIST_SIZE, nodes.length - 1)) { return false; }
+
+            for (int j = 0; j < successor_list.size(); j++) {
+                if (!successor_list.get(j).getCachedKey().equals(nodeKey((i + j + 1) % nodes.length))) { return false; }
+            }
+        }
+        return true;
+    }
+}
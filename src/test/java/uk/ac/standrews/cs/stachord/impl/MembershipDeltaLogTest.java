@@ -0,0 +1,148 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import org.junit.Test;
+import uk.ac.standrews.cs.nds.p2p.keys.Key;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests of the membership delta log. The nodes referred to aren't running, but their keys are known so no remote calls are made.
+ */
+public class MembershipDeltaLogTest {
+
+    private static final int FIRST_PORT = 10190;
+    private static final int CAPACITY = 2;
+    private static final long LIFETIME = TimeUnit.MINUTES.toNanos(1);
+    private static final long SHORT_LIFETIME = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final int INITIAL_HOPS = 3;
+    private static final int SEND_BUDGET = 2;
+
+    private final IChordRemoteReference node_a = node(100);
+    private final IChordRemoteReference node_b = node(200);
+    private final IChordRemoteReference node_c = node(300);
+
+    /**
+     * Tests whether a locally observed delta is piggybacked with the initial number of hops, on a fixed number of calls.
+     */
+    @Test
+    public void recordedDeltaSentWithinBudget() {
+
+        final MembershipDeltaLog log = new MembershipDeltaLog(CAPACITY, LIFETIME, INITIAL_HOPS, SEND_BUDGET);
+        log.record(MembershipDelta.Kind.JOINED, node_a);
+
+        for (int i = 0; i < SEND_BUDGET; i++) {
+
+            final List<MembershipDelta> deltas = log.piggyback();
+
+            assertThat(deltas.size(), is(equalTo(1)));
+            assertThat(deltas.get(0).getNode(), is(equalTo(node_a)));
+            assertThat(deltas.get(0).getHopsRemaining(), is(equalTo(INITIAL_HOPS)));
+        }
+
+        assertThat(log.piggyback().isEmpty(), is(true));
+    }
+
+    /**
+     * Tests whether a received delta is relayed with one fewer hop, a repeated copy of it isn't accepted, and a delta received with its last hop
+     * is recognised but not relayed.
+     */
+    @Test
+    public void receivedDeltaRelayedWithOneFewerHop() {
+
+        final MembershipDeltaLog log = new MembershipDeltaLog(CAPACITY, LIFETIME, INITIAL_HOPS, SEND_BUDGET);
+
+        assertThat(log.receive(new MembershipDelta(MembershipDelta.Kind.JOINED, node_a, 2)), is(true));
+        assertThat(log.receive(new MembershipDelta(MembershipDelta.Kind.JOINED, node_a, 2)), is(false));
+
+        final List<MembershipDelta> deltas = log.piggyback();
+        assertThat(deltas.size(), is(equalTo(1)));
+        assertThat(deltas.get(0).getHopsRemaining(), is(equalTo(1)));
+
+        final MembershipDelta last_hop = new MembershipDelta(MembershipDelta.Kind.FAILED, node_b, 1);
+        assertThat(log.receive(last_hop), is(true));
+        assertThat(log.isKnown(last_hop), is(true));
+
+        for (final MembershipDelta delta : log.piggyback()) {
+            assertThat(delta.getNode(), is(equalTo(node_a)));
+        }
+    }
+
+    /**
+     * Tests whether deltas are no longer sent or recognised once they have expired.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void deltasExpire() throws Exception {
+
+        final MembershipDeltaLog log = new MembershipDeltaLog(CAPACITY, SHORT_LIFETIME, INITIAL_HOPS, SEND_BUDGET);
+        log.record(MembershipDelta.Kind.FAILED, node_a);
+
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(SHORT_LIFETIME) * 2);
+
+        assertThat(log.isKnown(new MembershipDelta(MembershipDelta.Kind.FAILED, node_a, INITIAL_HOPS)), is(false));
+        assertThat(log.piggyback().isEmpty(), is(true));
+    }
+
+    /**
+     * Tests whether, when the log is full, the oldest delta is evicted, and a later delta for the same node replaces the earlier one.
+     */
+    @Test
+    public void oldestDeltaEvictedAndLaterDeltaReplaces() {
+
+        final MembershipDeltaLog log = new MembershipDeltaLog(CAPACITY, LIFETIME, INITIAL_HOPS, SEND_BUDGET);
+        log.record(MembershipDelta.Kind.JOINED, node_a);
+        log.record(MembershipDelta.Kind.JOINED, node_b);
+        log.record(MembershipDelta.Kind.FAILED, node_a);
+        log.record(MembershipDelta.Kind.JOINED, node_c);
+
+        assertThat(log.isKnown(new MembershipDelta(MembershipDelta.Kind.JOINED, node_b, INITIAL_HOPS)), is(false));
+        assertThat(log.isKnown(new MembershipDelta(MembershipDelta.Kind.JOINED, node_a, INITIAL_HOPS)), is(false));
+        assertThat(log.isKnown(new MembershipDelta(MembershipDelta.Kind.FAILED, node_a, INITIAL_HOPS)), is(true));
+
+        // Most recent first.
+        final List<MembershipDelta> deltas = log.piggyback();
+        assertThat(deltas.size(), is(equalTo(2)));
+        assertThat(deltas.get(0).getNode(), is(equalTo(node_c)));
+        assertThat(deltas.get(1).getKind(), is(equalTo(MembershipDelta.Kind.FAILED)));
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    private static IChordRemoteReference node(final int key) {
+
+        return new ChordRemoteReference(new Key(BigInteger.valueOf(key)), new InetSocketAddress(InetAddress.getLoopbackAddress(), FIRST_PORT + key / 100));
+    }
+}
@@ -0,0 +1,147 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import org.junit.Test;
+import uk.ac.standrews.cs.nds.p2p.keys.Key;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests of the cache of nodes learned in passing. The nodes referred to aren't running, but their keys are known so no remote calls are made.
+ */
+public class NeighbourCacheTest {
+
+    private static final int FIRST_PORT = 10400;
+    private static final long LONG_LIFETIME = TimeUnit.MINUTES.toNanos(10);
+    private static final long SHORT_LIFETIME = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final IChordRemoteReference node_100 = node(100);
+    private final IChordRemoteReference node_300 = node(300);
+    private final IChordRemoteReference node_500 = node(500);
+    private final IChordRemoteReference node_700 = node(700);
+
+    /**
+     * Tests whether the closest preceding node is the nearest cached node at or before the key, provided that it lies after the origin,
+     * including when the search wraps round the ring.
+     */
+    @Test
+    public void floorLookup() {
+
+        final NeighbourCache cache = new NeighbourCache(key(500), 10, LONG_LIFETIME);
+        cache.learn(node_100);
+        cache.learn(node_300);
+        cache.learn(node_700);
+
+        assertThat(cache.closestPrecedingNode(key(350)), is(equalTo(node_300)));
+        assertThat(cache.closestPrecedingNode(key(300)), is(equalTo(node_300)));
+        assertThat(cache.closestPrecedingNode(key(800)), is(equalTo(node_700)));
+
+        // No cached node at or before the key, so the search wraps round to the last node.
+        assertThat(cache.closestPrecedingNode(key(50)), is(equalTo(node_700)));
+
+        // The nearest cached node before the key lies before the origin, so doesn't help.
+        assertThat(cache.closestPrecedingNode(key(600)), is(nullValue()));
+    }
+
+    /**
+     * Tests whether the origin is never cached and removed nodes are no longer returned.
+     */
+    @Test
+    public void originAndRemovedNodesNotReturned() {
+
+        final NeighbourCache cache = new NeighbourCache(key(500), 10, LONG_LIFETIME);
+        cache.learn(node_500);
+        cache.learn(node_700);
+
+        assertThat(cache.size(), is(equalTo(1)));
+
+        cache.remove(key(700));
+
+        assertThat(cache.size(), is(equalTo(0)));
+        assertThat(cache.closestPrecedingNode(key(800)), is(nullValue()));
+    }
+
+    /**
+     * Tests whether expired nodes are not returned, and are removed when found.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void expiredNodesNotReturned() throws Exception {
+
+        final NeighbourCache cache = new NeighbourCache(key(500), 10, SHORT_LIFETIME);
+        cache.learn(node_100);
+        cache.learn(node_700);
+
+        assertThat(cache.closestPrecedingNode(key(800)), is(equalTo(node_700)));
+
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(SHORT_LIFETIME * 2));
+        cache.learn(node_300);
+
+        // The expired nodes at or before the key are removed in turn until an unexpired one is found.
+        assertThat(cache.closestPrecedingNode(key(800)), is(nullValue()));
+        assertThat(cache.closestPrecedingNode(key(250)), is(nullValue()));
+        assertThat(cache.closestPrecedingNode(key(400)), is(equalTo(node_300)));
+        assertThat(cache.size(), is(equalTo(1)));
+    }
+
+    /**
+     * Tests whether the least recently learned node is evicted when the cache is full, counting a refreshed node as newly learned.
+     */
+    @Test
+    public void leastRecentlyLearnedEvicted() {
+
+        final NeighbourCache cache = new NeighbourCache(key(0), 2, LONG_LIFETIME);
+        cache.learn(node_100);
+        cache.learn(node_300);
+        cache.learn(node_100);
+        cache.learn(node_700);
+
+        assertThat(cache.size(), is(equalTo(2)));
+        assertThat(cache.closestPrecedingNode(key(350)), is(equalTo(node_100)));
+        assertThat(cache.closestPrecedingNode(key(800)), is(equalTo(node_700)));
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    private static FixedWidthKey key(final int value) {
+
+        return FixedWidthKey.valueOf(new Key(BigInteger.valueOf(value)));
+    }
+
+    private static IChordRemoteReference node(final int key) {
+
+        return new ChordRemoteReference(key(key).toKey(), new InetSocketAddress(InetAddress.getLoopbackAddress(), FIRST_PORT + key / 100));
+    }
+}
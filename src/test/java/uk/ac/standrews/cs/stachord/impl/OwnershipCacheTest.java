@@ -0,0 +1,177 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import org.junit.Test;
+import uk.ac.standrews.cs.nds.p2p.keys.Key;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests of the ownership cache. The nodes referred to aren't running, but their keys are known so no remote calls are made.
+ */
+public class OwnershipCacheTest {
+
+    private static final int FIRST_PORT = 10600;
+
+    private final IChordRemoteReference node_a = node(100);
+    private final IChordRemoteReference node_b = node(200);
+    private final IChordRemoteReference node_c = node(300);
+
+    /**
+     * Tests whether an interval gives its owner for keys after the predecessor key up to and including the owner key, and no owner otherwise.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void intervalExcludesPredecessorAndIncludesOwner() throws Exception {
+
+        final OwnershipCache cache = new OwnershipCache(10);
+        cache.put(key(100), key(200), node_b);
+
+        assertThat(cache.getOwner(key(100)), is(nullValue()));
+        assertThat(cache.getOwner(key(101)), is(equalTo(node_b)));
+        assertThat(cache.getOwner(key(200)), is(equalTo(node_b)));
+        assertThat(cache.getOwner(key(201)), is(nullValue()));
+        assertThat(cache.getOwner(key(50)), is(nullValue()));
+    }
+
+    /**
+     * Tests whether an interval that wraps round the ring gives its owner for keys either side of zero.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void intervalWrapsRoundRing() throws Exception {
+
+        final OwnershipCache cache = new OwnershipCache(10);
+        cache.put(key(300), key(100), node_a);
+        cache.put(key(100), key(200), node_b);
+
+        assertThat(cache.getOwner(key(301)), is(equalTo(node_a)));
+        assertThat(cache.getOwner(key(0)), is(equalTo(node_a)));
+        assertThat(cache.getOwner(key(100)), is(equalTo(node_a)));
+        assertThat(cache.getOwner(key(150)), is(equalTo(node_b)));
+        assertThat(cache.getOwner(key(250)), is(nullValue()));
+    }
+
+    /**
+     * Tests whether recording a new interval for an owner replaces its previous interval.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void newIntervalReplacesOld() throws Exception {
+
+        final OwnershipCache cache = new OwnershipCache(10);
+        cache.put(key(100), key(300), node_c);
+        cache.put(key(200), key(300), node_c);
+
+        assertThat(cache.getOwner(key(150)), is(nullValue()));
+        assertThat(cache.getOwner(key(250)), is(equalTo(node_c)));
+    }
+
+    /**
+     * Tests whether, when the cache is full, the least recently used interval is evicted, counting lookups as uses.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void leastRecentlyUsedIntervalIsEvicted() throws Exception {
+
+        final OwnershipCache cache = new OwnershipCache(2);
+        cache.put(key(0), key(100), node_a);
+        cache.put(key(100), key(200), node_b);
+
+        // Using the first interval leaves the second as the least recently used.
+        assertThat(cache.getOwner(key(50)), is(equalTo(node_a)));
+        cache.put(key(200), key(300), node_c);
+
+        assertThat(cache.getOwner(key(50)), is(equalTo(node_a)));
+        assertThat(cache.getOwner(key(150)), is(nullValue()));
+        assertThat(cache.getOwner(key(250)), is(equalTo(node_c)));
+    }
+
+    /**
+     * Tests whether removing an owner, and clearing the cache, remove the corresponding intervals.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void removeAndClear() throws Exception {
+
+        final OwnershipCache cache = new OwnershipCache(10);
+        cache.put(key(0), key(100), node_a);
+        cache.put(key(100), key(200), node_b);
+
+        cache.remove(key(100));
+        assertThat(cache.getOwner(key(50)), is(nullValue()));
+        assertThat(cache.getOwner(key(150)), is(equalTo(node_b)));
+
+        cache.clear();
+        assertThat(cache.getOwner(key(150)), is(nullValue()));
+    }
+
+    /**
+     * Tests whether a new node invalidates only the intervals that it splits, keeping its own interval and those elsewhere on the ring,
+     * including when the split interval wraps round the ring.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void newNodeInvalidatesOnlySplitIntervals() throws Exception {
+
+        final OwnershipCache cache = new OwnershipCache(10);
+        cache.put(key(300), key(100), node_a);
+        cache.put(key(100), key(200), node_b);
+        cache.put(key(200), key(300), node_c);
+
+        cache.invalidate(key(150));
+        assertThat(cache.getOwner(key(120)), is(nullValue()));
+        assertThat(cache.getOwner(key(50)), is(equalTo(node_a)));
+        assertThat(cache.getOwner(key(250)), is(equalTo(node_c)));
+
+        cache.invalidate(key(300));
+        assertThat(cache.getOwner(key(250)), is(equalTo(node_c)));
+
+        cache.invalidate(key(350));
+        assertThat(cache.getOwner(key(50)), is(nullValue()));
+        assertThat(cache.getOwner(key(250)), is(equalTo(node_c)));
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    private static FixedWidthKey key(final int value) {
+
+        return FixedWidthKey.valueOf(new Key(BigInteger.valueOf(value)));
+    }
+
+    private static IChordRemoteReference node(final int key) {
+
+        return new ChordRemoteReference(key(key).toKey(), new InetSocketAddress(InetAddress.getLoopbackAddress(), FIRST_PORT + key / 100));
+    }
+}
@@ -0,0 +1,113 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.ac.standrews.cs.nds.p2p.interfaces.IKey;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemote;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests of lookups that issue each hop to several candidates in parallel when one of the candidates has failed, on a ring of nodes within a
+ * single process in which maintenance has been stopped so that the failure isn't repaired.
+ */
+public class ParallelLookupFailureTest {
+
+    private static final int FIRST_PORT = 10140;
+    private static final int RING_SIZE = 10;
+    private static final int PARALLELISM = 3;
+
+    // With ten evenly spaced nodes, this node is the furthest finger of the first node, so is a candidate next hop for many lookups.
+    private static final int FAILED_NODE_INDEX = 6;
+
+    private static LocalRing ring;
+
+    /**
+     * Sets up test, creating a ring of nodes that each issue lookup hops to several candidates, stopping maintenance on all of them and then
+     * shutting down one node.
+     * @throws Exception if the test cannot be set up.
+     */
+    @BeforeClass
+    public static void setup() throws Exception {
+
+        ring = new LocalRing(FIRST_PORT, RING_SIZE);
+
+        for (int i = 0; i < ring.size(); i++) {
+
+            ring.getNode(i).setLookupParallelism(PARALLELISM);
+
+            final IChordRemote node = ring.getNode(i).getSelfReference().getRemote();
+
+            node.enablePredecessorMaintenance(false);
+            node.enableStabilization(false);
+            node.enablePeerStateMaintenance(false);
+        }
+
+        ring.getNode(FAILED_NODE_INDEX).shutDown();
+    }
+
+    /**
+     * Cleans up test.
+     */
+    @AfterClass
+    public static void teardown() {
+
+        if (ring != null) {
+            ring.shutDown();
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Tests whether parallel lookups from every remaining node resolve each key to its owner, where the owner is neither the failed node nor its
+     * successor, which without maintenance can only be found through the failed node or its predecessor.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void parallelLookupAvoidsFailedCandidate() throws Exception {
+
+        final IKey failed_node_key = ring.nodeKey(FAILED_NODE_INDEX);
+        final IKey failed_node_successor_key = ring.nodeKey((FAILED_NODE_INDEX + 1) % ring.size());
+
+        for (int i = 0; i < ring.size(); i++) {
+            if (i != FAILED_NODE_INDEX) {
+
+                for (final IKey k : ring.testKeys()) {
+
+                    final IKey expected_owner = ring.expectedOwner(k);
+                    if (!expected_owner.equals(failed_node_key) && !expected_owner.equals(failed_node_successor_key)) {
+                        assertThat(ring.getNode(i).lookup(k).getCachedKey(), is(equalTo(expected_owner)));
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.ac.standrews.cs.nds.p2p.interfaces.IKey;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests of lookups that issue each hop to several candidates in parallel, on a ring of nodes within a single process.
+ */
+public class ParallelLookupTest {
+
+    private static final int FIRST_PORT = 10110;
+    private static final int RING_SIZE = 6;
+    private static final int PARALLELISM = 3;
+
+    private static LocalRing ring;
+
+    /**
+     * Sets up test, creating a ring of nodes that each issue lookup hops to several candidates.
+     * @throws Exception if the test cannot be set up.
+     */
+    @BeforeClass
+    public static void setup() throws Exception {
+
+        ring = new LocalRing(FIRST_PORT, RING_SIZE);
+
+        for (int i = 0; i < ring.size(); i++) {
+            ring.getNode(i).setLookupParallelism(PARALLELISM);
+        }
+    }
+
+    /**
+     * Cleans up test.
+     */
+    @AfterClass
+    public static void teardown() {
+
+        if (ring != null) {
+            ring.shutDown();
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Tests whether parallel lookups from every node resolve each key to its owner.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void parallelLookup() throws Exception {
+
+        for (int i = 0; i < ring.size(); i++) {
+            for (final IKey k : ring.testKeys()) {
+                assertThat(ring.getNode(i).lookup(k).getCachedKey(), is(equalTo(ring.expectedOwner(k))));
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import org.junit.Test;
+import uk.ac.standrews.cs.nds.p2p.interfaces.IKey;
+import uk.ac.standrews.cs.nds.p2p.keys.Key;
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+import uk.ac.standrews.cs.stachord.interfaces.IChordNode;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemote;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+import uk.ac.standrews.cs.utilities.archive.NetworkUtil;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests of calls between nodes implementing different versions of the remote protocol, where the older node is stood in for by a server that
+ * answers only the baseline calls.
+ */
+public class ProtocolCompatibilityTest {
+
+    private static final int FIRST_PORT = 10180;
+    private static final IKey FIRST_KEY = new Key(BigInteger.valueOf(1000));
+    private static final IKey SECOND_KEY = new Key(BigInteger.ONE.shiftLeft(100));
+    private static final long RING_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+    private static final long POLL_INTERVAL = 100;
+
+    /**
+     * Tests whether a node reports the current protocol version through its own server, and is taken to implement the baseline protocol
+     * when reached through a server that doesn't answer the version call.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void versionsReported() throws Exception {
+
+        final ChordNodeImpl node = createNode(FIRST_PORT, FIRST_KEY);
+        final BaselineChordRemoteServer baseline_server = startBaselineServer(node, FIRST_PORT + 1);
+        final ChordNodeImpl other_node = createNode(FIRST_PORT + 2, SECOND_KEY);
+
+        try {
+            assertThat(other_node.protocolVersionOf(remoteReference(FIRST_KEY, FIRST_PORT)), is(equalTo(IChordRemote.PROTOCOL_VERSION)));
+            assertThat(other_node.protocolVersionOf(remoteReference(FIRST_KEY, FIRST_PORT + 1)), is(equalTo(IChordRemote.BASELINE_PROTOCOL_VERSION)));
+        }
+        finally {
+            shutDown(baseline_server, node, other_node);
+        }
+    }
+
+    /**
+     * Tests whether the combined stabilize call notifies the node called and returns its resulting predecessor and its successor list.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void combinedStabilizeCall() throws Exception {
+
+        final ChordNodeImpl node = createNode(FIRST_PORT + 3, FIRST_KEY);
+        final ChordNodeImpl other_node = createNode(FIRST_PORT + 4, SECOND_KEY);
+
+        try {
+            final IChordRemote remote = remoteReference(FIRST_KEY, FIRST_PORT + 3).getRemote();
+            final StabilizeResult result = remote.stabilize(remoteReference(SECOND_KEY, FIRST_PORT + 4), new ArrayList<MembershipDelta>());
+
+            assertThat(result.getPredecessor().getCachedKey(), is(equalTo(SECOND_KEY)));
+            assertThat(node.getPredecessor().getCachedKey(), is(equalTo(SECOND_KEY)));
+            assertThat(result.getSuccessorList().size(), is(equalTo(node.getSuccessorList().size())));
+        }
+        finally {
+            shutDown(null, node, other_node);
+        }
+    }
+
+    /**
+     * Tests whether a node that joins the ring through a server answering only the baseline calls stabilizes with those calls, so that the ring forms.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void ringFormsThroughBaselineServer() throws Exception {
+
+        final ChordNodeImpl node = createNode(FIRST_PORT + 5, FIRST_KEY);
+        final BaselineChordRemoteServer baseline_server = startBaselineServer(node, FIRST_PORT + 6);
+        final ChordNodeImpl joining_node = createNode(FIRST_PORT + 7, SECOND_KEY);
+
+        try {
+            final IChordRemoteReference baseline_reference = remoteReference(FIRST_KEY, FIRST_PORT + 6);
+            joining_node.join(baseline_reference);
+
+            assertThat(joining_node.protocolVersionOf(baseline_reference), is(equalTo(IChordRemote.BASELINE_PROTOCOL_VERSION)));
+
+            final long deadline = System.currentTimeMillis() + RING_TIMEOUT;
+            while (!isRing(node, joining_node)) {
+
+                assertThat("ring formed in time", System.currentTimeMillis() < deadline, is(true));
+                Thread.sleep(POLL_INTERVAL);
+            }
+        }
+        finally {
+            shutDown(baseline_server, node, joining_node);
+        }
+    }
+
+    /**
+     * Tests whether a replica lookup, made both locally and through a remote reference, returns the owner and its successor when the final hop
+     * is to a server answering only the baseline calls, whose next hop result carries no successors.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void replicaLookupThroughBaselineServer() throws Exception {
+
+        final ChordNodeImpl node = createNode(FIRST_PORT + 10, FIRST_KEY);
+        final BaselineChordRemoteServer baseline_server = startBaselineServer(node, FIRST_PORT + 11);
+        final ChordNodeImpl joining_node = createNode(FIRST_PORT + 12, SECOND_KEY);
+
+        try {
+            joining_node.join(remoteReference(FIRST_KEY, FIRST_PORT + 11));
+
+            // Replicas are read from successor lists, which are refreshed some time after the ring forms.
+            final long deadline = System.currentTimeMillis() + RING_TIMEOUT;
+            while (!isRing(node, joining_node) || node.getSuccessorList().isEmpty()) {
+
+                assertThat("ring formed in time", System.currentTimeMillis() < deadline, is(true));
+                Thread.sleep(POLL_INTERVAL);
+            }
+
+            // The first node owns its own key, so the joining node's lookup ends with a hop to its successor, reached through the baseline server.
+            checkReplicas(joining_node.lookupReplicas(FIRST_KEY, 2));
+            checkReplicas(remoteReference(SECOND_KEY, FIRST_PORT + 12).getRemote().lookupReplicas(FIRST_KEY, 2));
+        }
+        finally {
+            shutDown(baseline_server, node, joining_node);
+        }
+    }
+
+    /**
+     * Tests whether a delta sent on the combined stabilize call is received with one fewer hop, and is returned by the detailed next hop call but
+     * not by the next hop call, whose result nodes of every protocol version can read.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void membershipDeltasRoundTrip() throws Exception {
+
+        final ChordNodeImpl node = createNode(FIRST_PORT + 8, FIRST_KEY);
+        final ChordNodeImpl other_node = createNode(FIRST_PORT + 9, SECOND_KEY);
+        node.enableMembershipPiggybacking(true);
+
+        try {
+            final IChordRemote remote = remoteReference(FIRST_KEY, FIRST_PORT + 8).getRemote();
+            final List<MembershipDelta> sent_deltas = new ArrayList<MembershipDelta>();
+            sent_deltas.add(new MembershipDelta(MembershipDelta.Kind.JOINED, remoteReference(SECOND_KEY, FIRST_PORT + 9), 2));
+
+            remote.stabilize(remoteReference(SECOND_KEY, FIRST_PORT + 9), sent_deltas);
+
+            final NextHopResult next_hop = remote.nextHop(FIRST_KEY);
+            assertThat(next_hop.getAlternatives().isEmpty(), is(true));
+            assertThat(next_hop.getMembershipDeltas().isEmpty(), is(true));
+
+            final NextHopResult detailed_next_hop = remote.nextHopDetailed(FIRST_KEY);
+
+            MembershipDelta received = null;
+            for (final MembershipDelta delta : detailed_next_hop.getMembershipDeltas()) {
+                if (delta.getNode().getCachedKey().equals(SECOND_KEY)) {
+                    received = delta;
+                }
+            }
+            assertThat(received != null, is(true));
+            assertThat(received.getKind(), is(equalTo(MembershipDelta.Kind.JOINED)));
+            assertThat(received.getNode().getCachedAddress().getPort(), is(equalTo(FIRST_PORT + 9)));
+            assertThat(received.getHopsRemaining(), is(equalTo(1)));
+        }
+        finally {
+            shutDown(null, node, other_node);
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    private static ChordNodeImpl createNode(final int port, final IKey key) throws Exception {
+
+        return (ChordNodeImpl) new ChordNodeFactory().createNode(new InetSocketAddress(NetworkUtil.getLocalIPv4Address(), port), key);
+    }
+
+    private static BaselineChordRemoteServer startBaselineServer(final ChordNodeImpl node, final int port) throws Exception {
+
+        final BaselineChordRemoteServer server = new BaselineChordRemoteServer(node);
+        server.setLocalAddress(NetworkUtil.getLocalIPv4Address());
+        server.setPort(port);
+        server.startWithNoRegistry();
+        return server;
+    }
+
+    private static IChordRemoteReference remoteReference(final IKey key, final int port) throws Exception {
+
+        return new ChordRemoteReference(key, new InetSocketAddress(NetworkUtil.getLocalIPv4Address(), port));
+    }
+
+    private static void checkReplicas(final List<IChordRemoteReference> replicas) throws RPCException {
+
+        assertThat(replicas.size(), is(equalTo(2)));
+        assertThat(replicas.get(0).getCachedKey(), is(equalTo(FIRST_KEY)));
+        assertThat(replicas.get(1).getCachedKey(), is(equalTo(SECOND_KEY)));
+    }
+
+    private static boolean isRing(final IChordNode first, final IChordNode second) throws RPCException {
+
+        return isSuccessor(first, second) && isSuccessor(second, first) && first.getPredecessor() != null && first.getPredecessor().getCachedKey().equals(second.getKey());
+    }
+
+    private static boolean isSuccessor(final IChordNode node, final IChordNode successor) throws RPCException {
+
+        return node.getSuccessor().getCachedKey().equals(successor.getKey());
+    }
+
+    private static void shutDown(final BaselineChordRemoteServer baseline_server, final IChordNode... nodes) throws IOException {
+
+        for (final IChordNode node : nodes) {
+            node.shutDown();
+        }
+        if (baseline_server != null) {
+            baseline_server.stop();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.ac.standrews.cs.nds.p2p.keys.Key;
+import uk.ac.standrews.cs.stachord.interfaces.IChordNode;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+import uk.ac.standrews.cs.utilities.archive.NetworkUtil;
+
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests of selecting nodes by proximity, for finger selection.
+ */
+public class ProximitySelectorTest {
+
+    private static final int FIRST_PORT = 10800;
+    private static final long UNKNOWN = ProximitySelector.UNKNOWN_ROUND_TRIP_TIME;
+    private static final long PROBE_TIMEOUT = TimeUnit.SECONDS.toNanos(2);
+    private static final long SHORT_PROBE_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long LONG_LIFETIME = TimeUnit.MINUTES.toNanos(10);
+    private static final double HYSTERESIS = 1.2;
+
+    private static IChordNode live_node;
+    private static ExecutorService probe_executor;
+
+    /**
+     * Sets up test, creating a single live node.
+     * @throws Exception if the test cannot be set up.
+     */
+    @BeforeClass
+    public static void setup() throws Exception {
+
+        live_node = new ChordNodeFactory().createNode(new InetSocketAddress(NetworkUtil.getLocalIPv4Address(), FIRST_PORT), new Key(BigInteger.valueOf(100)));
+        probe_executor = Executors.newFixedThreadPool(4, new DaemonThreadFactory("proximity test probe"));
+    }
+
+    /**
+     * Cleans up test.
+     */
+    @AfterClass
+    public static void teardown() {
+
+        if (live_node != null) {
+            live_node.shutDown();
+        }
+        if (probe_executor != null) {
+            probe_executor.shutdownNow();
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Tests whether the node with the lowest known round trip time is selected, ignoring nodes whose round trip times aren't known.
+     */
+    @Test
+    public void lowestRoundTripTimeSelected() {
+
+        final ProximitySelector selector = new ProximitySelector(PROBE_TIMEOUT, 1.0);
+
+        assertThat(selector.select(new long[]{300, 100, 200}, ProximitySelector.NONE), is(equalTo(1)));
+        assertThat(selector.select(new long[]{UNKNOWN, 200, 100, UNKNOWN}, ProximitySelector.NONE), is(equalTo(2)));
+        assertThat(selector.select(new long[]{300, 100, 200}, 0), is(equalTo(1)));
+        assertThat(selector.select(new long[]{UNKNOWN, UNKNOWN}, 0), is(equalTo(ProximitySelector.NONE)));
+        assertThat(selector.select(new long[0], ProximitySelector.NONE), is(equalTo(ProximitySelector.NONE)));
+    }
+
+    /**
+     * Tests whether a live node's round trip time is measured, and a node that doesn't answer is given no round trip time, then not pinged
+     * again while it is known to have failed.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void roundTripTimesMeasured() throws Exception {
+
+        final LivenessCache liveness_cache = new LivenessCache(10, LONG_LIFETIME, probe_executor);
+        final ProximitySelector selector = new ProximitySelector(PROBE_TIMEOUT, 1.0);
+
+        final IChordRemoteReference live = live_node.getSelfReference();
+        final IChordRemoteReference dead = new ChordRemoteReference(new Key(BigInteger.valueOf(200)), new InetSocketAddress(NetworkUtil.getLocalIPv4Address(), FIRST_PORT + 1));
+
+        final long[] round_trip_times = selector.measureRoundTripTimes(liveness_cache, Arrays.asList(dead, live));
+
+        assertThat(round_trip_times[0], is(equalTo(UNKNOWN)));
+        assertThat(round_trip_times[1] > 0, is(true));
+        assertThat(selector.select(round_trip_times, ProximitySelector.NONE), is(equalTo(1)));
+
+        assertThat(liveness_cache.isKnownDead(dead), is(true));
+        assertThat(liveness_cache.isKnownLive(live), is(true));
+        assertThat(selector.measureRoundTripTimes(liveness_cache, Arrays.asList(dead))[0], is(equalTo(UNKNOWN)));
+    }
+
+    /**
+     * Tests whether the current choice is kept unless another node is faster by more than the hysteresis factor, and is replaced if its own
+     * round trip time isn't known.
+     */
+    @Test
+    public void currentChoiceKeptWithinHysteresis() {
+
+        final ProximitySelector selector = new ProximitySelector(PROBE_TIMEOUT, HYSTERESIS);
+
+        assertThat(selector.select(new long[]{100, 115}, 1), is(equalTo(1)));
+        assertThat(selector.select(new long[]{100, 120}, 1), is(equalTo(1)));
+        assertThat(selector.select(new long[]{100, 125}, 1), is(equalTo(0)));
+        assertThat(selector.select(new long[]{100, UNKNOWN}, 1), is(equalTo(0)));
+        assertThat(selector.select(new long[]{100, 115}, ProximitySelector.NONE), is(equalTo(0)));
+    }
+
+    /**
+     * Tests whether measurement waits no longer than the probe timeout for a node that accepts connections but never answers,
+     * while still measuring a live node.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void measurementBoundedByTimeout() throws Exception {
+
+        final LivenessCache liveness_cache = new LivenessCache(10, LONG_LIFETIME, probe_executor);
+        final ProximitySelector selector = new ProximitySelector(SHORT_PROBE_TIMEOUT, HYSTERESIS);
+
+        final ServerSocket silent_server = new ServerSocket(FIRST_PORT + 2, 10, NetworkUtil.getLocalIPv4Address());
+        try {
+            final IChordRemoteReference silent = new ChordRemoteReference(new Key(BigInteger.valueOf(300)), new InetSocketAddress(NetworkUtil.getLocalIPv4Address(), FIRST_PORT + 2));
+
+            final long start = System.nanoTime();
+            final long[] round_trip_times = selector.measureRoundTripTimes(liveness_cache, Arrays.asList(silent, live_node.getSelfReference()));
+            final long elapsed = System.nanoTime() - start;
+
+            assertThat(round_trip_times[0], is(equalTo(UNKNOWN)));
+            assertThat(round_trip_times[1] > 0, is(true));
+            assertThat(elapsed < SHORT_PROBE_TIMEOUT * 2, is(true));
+        }
+        finally {
+            // Closing the server resets the unanswered connection, so the blocked ping doesn't outlive the test.
+            silent_server.close();
+        }
+    }
+}
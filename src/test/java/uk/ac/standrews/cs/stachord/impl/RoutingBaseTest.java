@@ -0,0 +1,209 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.ac.standrews.cs.nds.p2p.interfaces.IKey;
+import uk.ac.standrews.cs.nds.p2p.keys.Key;
+import uk.ac.standrews.cs.nds.rpc.RPCException;
+import uk.ac.standrews.cs.stachord.interfaces.IChordNode;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests of a ring of nodes within a single process whose finger tables have a routing base other than the default, with several fingers in each level.
+ */
+public class RoutingBaseTest {
+
+    private static final int FIRST_PORT = 10170;
+    private static final int RING_SIZE = 8;
+    private static final int INTER_FINGER_RATIO = 4;
+    private static final int FINGERS_PER_LEVEL = 3;
+    private static final BigInteger KEY_SPACE_SIZE = BigInteger.ONE.shiftLeft(Key.KEY_LENGTH);
+    private static final long FINGER_TIMEOUT = TimeUnit.SECONDS.toMillis(60);
+    private static final long POLL_INTERVAL = 100;
+
+    private static LocalRing ring;
+
+    /**
+     * Sets up test, creating a ring of nodes with the non-default routing base.
+     * @throws Exception if the test cannot be set up.
+     */
+    @BeforeClass
+    public static void setup() throws Exception {
+
+        final ChordNodeFactory factory = new ChordNodeFactory();
+        factory.setRoutingBase(INTER_FINGER_RATIO, FINGERS_PER_LEVEL);
+
+        ring = new LocalRing(FIRST_PORT, RING_SIZE, factory);
+    }
+
+    /**
+     * Cleans up test.
+     */
+    @AfterClass
+    public static void teardown() {
+
+        if (ring != null) {
+            ring.shutDown();
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    /**
+     * Tests whether the factory rejects a number of fingers per level that isn't less than the inter-finger ratio, whichever is set first,
+     * and leaves its routing base unchanged.
+     */
+    @Test
+    public void inconsistentRoutingBaseRejected() {
+
+        final ChordNodeFactory factory = new ChordNodeFactory();
+
+        assertThat(rejects(factory, INTER_FINGER_RATIO, INTER_FINGER_RATIO), is(true));
+        assertThat(rejects(factory, 1, 1), is(true));
+
+        factory.setInterFingerRatio(INTER_FINGER_RATIO);
+        factory.setFingersPerLevel(FINGERS_PER_LEVEL);
+
+        boolean rejected = false;
+        try {
+            factory.setInterFingerRatio(FINGERS_PER_LEVEL);
+        }
+        catch (final IllegalArgumentException e) {
+            rejected = true;
+        }
+        assertThat(rejected, is(true));
+    }
+
+    /**
+     * Tests whether every key is routed to its owner from every node.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void lookupsRoutedToOwners() throws Exception {
+
+        for (int i = 0; i < ring.size(); i++) {
+            for (final IKey k : ring.testKeys()) {
+                assertThat(ring.getNode(i).lookup(k).getCachedKey(), is(equalTo(ring.expectedOwner(k))));
+            }
+        }
+    }
+
+    /**
+     * Tests whether the finger table is made up of whole levels, and each finger is either the owner of its target or a node between its
+     * target and the next, where the targets in each level are evenly spread multiples of the level's spacing.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void fingersFollowMultiLevelTargets() throws Exception {
+
+        final IChordNode node = ring.getNode(0);
+        final List<IChordRemoteReference> fingers = waitForFullFingerTable(node);
+
+        assertThat(fingers.size() % FINGERS_PER_LEVEL, is(equalTo(0)));
+
+        final BigInteger[] target_distances = targetDistances(fingers.size());
+
+        // The top level's targets are a quarter, a half and three quarters of the way round the ring.
+        for (int position = 0; position < FINGERS_PER_LEVEL; position++) {
+            final BigInteger expected = KEY_SPACE_SIZE.divide(BigInteger.valueOf(INTER_FINGER_RATIO)).multiply(BigInteger.valueOf(position + 1));
+            assertThat(target_distances[fingers.size() - FINGERS_PER_LEVEL + position], is(equalTo(expected)));
+        }
+
+        for (int i = 0; i < fingers.size(); i++) {
+
+            final IKey target = new Key(node.getKey().keyValue().add(target_distances[i]).mod(KEY_SPACE_SIZE));
+            final IKey finger_key = fingers.get(i).getCachedKey();
+
+            final BigInteger finger_distance = distance(node.getKey(), finger_key);
+            final BigInteger next_target_distance = i < fingers.size() - 1 ? target_distances[i + 1] : KEY_SPACE_SIZE;
+            final boolean in_interval = finger_distance.compareTo(target_distances[i]) >= 0 && finger_distance.compareTo(next_target_distance) < 0;
+
+            assertThat("finger " + i, finger_key.equals(ring.expectedOwner(target)) || in_interval, is(true));
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    private static boolean rejects(final ChordNodeFactory factory, final int inter_finger_ratio, final int fingers_per_level) {
+
+        try {
+            factory.setRoutingBase(inter_finger_ratio, fingers_per_level);
+            return false;
+        }
+        catch (final IllegalArgumentException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Returns the distances of the finger targets from the node, for a table of the given size: the spacing of the level that is l levels from
+     * the top is the key space size divided by the ratio to the power l, and the fingers in a level are at evenly spread multiples of the spacing.
+     */
+    private static BigInteger[] targetDistances(final int number_of_fingers) {
+
+        final int number_of_levels = number_of_fingers / FINGERS_PER_LEVEL;
+        final BigInteger[] distances = new BigInteger[number_of_fingers];
+
+        for (int i = 0; i < number_of_fingers; i++) {
+
+            final int levels_from_top = number_of_levels - i / FINGERS_PER_LEVEL;
+            final BigInteger spacing = KEY_SPACE_SIZE.divide(BigInteger.valueOf(INTER_FINGER_RATIO).pow(levels_from_top));
+            final int multiple = 1 + i % FINGERS_PER_LEVEL * (INTER_FINGER_RATIO - 1) / FINGERS_PER_LEVEL;
+
+            distances[i] = spacing.multiply(BigInteger.valueOf(multiple));
+        }
+        return distances;
+    }
+
+    private static List<IChordRemoteReference> waitForFullFingerTable(final IChordNode node) throws Exception {
+
+        final long deadline = System.currentTimeMillis() + FINGER_TIMEOUT;
+
+        while (true) {
+
+            final List<IChordRemoteReference> fingers = node.getSelfReference().getRemote().getFingerList();
+            if (!fingers.isEmpty() && !fingers.contains(null)) { return fingers; }
+
+            assertThat("finger table filled in time", System.currentTimeMillis() < deadline, is(true));
+            Thread.sleep(POLL_INTERVAL);
+        }
+    }
+
+    private static BigInteger distance(final IKey from, final IKey to) throws RPCException {
+
+        return to.keyValue().subtract(from.keyValue()).mod(KEY_SPACE_SIZE);
+    }
+}
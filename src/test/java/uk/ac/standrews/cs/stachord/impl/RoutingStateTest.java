@@ -0,0 +1,152 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import org.junit.Test;
+import uk.ac.standrews.cs.nds.p2p.keys.Key;
+import uk.ac.standrews.cs.stachord.interfaces.IChordRemoteReference;
+
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests of routing state snapshots. The nodes referred to aren't running, but their keys are known so no remote calls are made.
+ */
+public class RoutingStateTest {
+
+    private static final int FIRST_PORT = 10300;
+
+    private final IChordRemoteReference node_a = node(100);
+    private final IChordRemoteReference node_b = node(200);
+    private final IChordRemoteReference node_c = node(300);
+    private final IChordRemoteReference node_d = node(400);
+
+    /**
+     * Tests whether deriving a snapshot leaves the original unchanged, with the keys of its neighbours resolved.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void derivedSnapshotLeavesOriginalUnchanged() throws Exception {
+
+        final RoutingState original = new RoutingState(key(0)).withPredecessor(node_d).withSuccessor(node_a).withSuccessorList(Arrays.asList(node_a, node_b));
+        final RoutingState derived = original.withPredecessor(node_c).withSuccessor(node_b).withSuccessorList(Arrays.asList(node_b, node_c));
+
+        assertThat(original.getPredecessor(), is(equalTo(node_d)));
+        assertThat(original.getPredecessorKey(), is(equalTo(key(400))));
+        assertThat(original.getSuccessor(), is(equalTo(node_a)));
+        assertThat(original.getSuccessorKey(), is(equalTo(key(100))));
+        assertThat(original.getSuccessorList(), is(equalTo(Arrays.asList(node_a, node_b))));
+        assertThat(original.closestPrecedingNode(key(250)), is(equalTo(node_b)));
+
+        assertThat(derived.getPredecessorKey(), is(equalTo(key(300))));
+        assertThat(derived.getSuccessorKey(), is(equalTo(key(200))));
+        assertThat(derived.getSuccessorList(), is(equalTo(Arrays.asList(node_b, node_c))));
+        assertThat(derived.closestPrecedingNode(key(350)), is(equalTo(node_c)));
+    }
+
+    /**
+     * Tests whether a snapshot is unaffected by later changes to the lists and arrays from which it was made.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void snapshotCopiesItsInputs() throws Exception {
+
+        final List<IChordRemoteReference> successor_list = new ArrayList<IChordRemoteReference>(Arrays.asList(node_a));
+        final IChordRemoteReference[] fingers = new IChordRemoteReference[]{node_b, null};
+
+        final RoutingState state = new RoutingState(key(0)).withSuccessorList(successor_list).withFingers(fingers, 1);
+
+        successor_list.add(node_c);
+        fingers[1] = node_d;
+
+        assertThat(state.getSuccessorList(), is(equalTo(Arrays.asList(node_a))));
+        assertThat(state.closestPrecedingNode(key(450)), is(equalTo(node_b)));
+    }
+
+    /**
+     * Tests whether fingers from an older version of the finger table than those already in a snapshot are ignored.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void staleFingersIgnored() throws Exception {
+
+        final RoutingState state = new RoutingState(key(0)).withFingers(new IChordRemoteReference[]{node_c}, 2);
+
+        assertThat(state.withFingers(new IChordRemoteReference[]{node_d}, 1), is(equalTo(state)));
+        assertThat(state.withFingers(new IChordRemoteReference[]{node_d}, 2), is(equalTo(state)));
+        assertThat(state.withFingers(new IChordRemoteReference[]{node_d}, 3).closestPrecedingNode(key(450)), is(equalTo(node_d)));
+    }
+
+    /**
+     * Tests whether a successor suspected to have failed is no longer used for routing but stays in the successor list.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void failedSuccessorNotUsedForRouting() throws Exception {
+
+        final RoutingState state = new RoutingState(key(0)).withSuccessorList(Arrays.asList(node_a, node_b, node_c));
+        final RoutingState without_b = state.withoutLiveSuccessor(key(200));
+
+        assertThat(state.closestPrecedingNode(key(250)), is(equalTo(node_b)));
+        assertThat(without_b.closestPrecedingNode(key(250)), is(equalTo(node_a)));
+        assertThat(without_b.getSuccessorList(), is(equalTo(Arrays.asList(node_a, node_b, node_c))));
+        assertThat(without_b.withoutLiveSuccessor(key(200)), is(equalTo(without_b)));
+    }
+
+    /**
+     * Tests whether a node with no neighbours has no predecessor or successor.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void initialStateHasNoNeighbours() throws Exception {
+
+        final RoutingState state = new RoutingState(key(0));
+
+        assertThat(state.getPredecessorKey(), is(nullValue()));
+        assertThat(state.getSuccessorKey(), is(nullValue()));
+        assertThat(state.getSuccessorList().isEmpty(), is(true));
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    private static FixedWidthKey key(final int value) {
+
+        return FixedWidthKey.valueOf(new Key(BigInteger.valueOf(value)));
+    }
+
+    private static IChordRemoteReference node(final int key) {
+
+        return new ChordRemoteReference(key(key).toKey(), new InetSocketAddress(InetAddress.getLoopbackAddress(), FIRST_PORT + key / 100));
+    }
+}
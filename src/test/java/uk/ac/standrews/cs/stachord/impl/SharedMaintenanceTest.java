@@ -0,0 +1,102 @@
+/***************************************************************************
+ *                                                                         *
+ * stachord Library                                                        *
+ * Copyright (C) 2004-2011 Distributed Systems Architecture Research Group *
+ * University of St Andrews, Scotland                                      *
+ * http://www-systems.cs.st-andrews.ac.uk/                                 *
+ *                                                                         *
+ * This file is part of stachord, an independent implementation of         *
+ * the Chord protocol (http://pdos.csail.mit.edu/chord/).                  *
+ *                                                                         *
+ * stachord is free software: you can redistribute it and/or modify        *
+ * it under the terms of the GNU General Public License as published by    *
+ * the Free Software Foundation, either version 3 of the License, or       *
+ * (at your option) any later version.                                     *
+ *                                                                         *
+ * stachord is distributed in the hope that it will be useful,             *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of          *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the           *
+ * GNU General Public License for more details.                            *
+ *                                                                         *
+ * You should have received a copy of the GNU General Public License       *
+ * along with stachord.  If not, see <http://www.gnu.org/licenses/>.       *
+ *                                                                         *
+ ***************************************************************************/
+package uk.ac.standrews.cs.stachord.impl;
+
+import org.junit.Test;
+import uk.ac.standrews.cs.nds.p2p.interfaces.IKey;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests of nodes performing their maintenance on a pool of threads shared between them.
+ */
+public class SharedMaintenanceTest {
+
+    private static final int FIRST_PORT = 10200;
+    private static final int RING_SIZE = 6;
+    private static final int WORKER_COUNT = 2;
+    private static final String SHARED_THREAD_PREFIX = "chord shared maintenance ";
+    private static final String DEDICATED_THREAD_PREFIX = "chord maintenance ";
+    private static final long SHUTDOWN_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+    private static final long POLL_INTERVAL = 100;
+
+    /**
+     * Tests whether a ring of nodes sharing a pool of maintenance threads becomes stable and routes correctly with no per-node maintenance threads,
+     * and whether the pool's threads stop once it has been shut down.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void nodesShareMaintenanceThreads() throws Exception {
+
+        final ChordNodeFactory factory = new ChordNodeFactory();
+        factory.useSharedMaintenance(WORKER_COUNT);
+
+        // The ring constructor waits for the ring to become stable, which depends on maintenance.
+        final LocalRing ring = new LocalRing(FIRST_PORT, RING_SIZE, factory);
+
+        try {
+            for (int i = 0; i < ring.size(); i++) {
+                for (final IKey k : ring.testKeys()) {
+                    assertThat(ring.getNode(i).lookup(k).getCachedKey(), is(equalTo(ring.expectedOwner(k))));
+                }
+            }
+
+            final int shared_threads = countThreads(SHARED_THREAD_PREFIX);
+            assertThat(shared_threads > 0 && shared_threads <= WORKER_COUNT, is(true));
+
+            for (int i = 0; i < ring.size(); i++) {
+                assertThat(countThreads(DEDICATED_THREAD_PREFIX + ring.nodeKey(i)), is(equalTo(0)));
+            }
+        }
+        finally {
+            ring.shutDown();
+            factory.shutDownSharedMaintenance();
+        }
+
+        final long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT;
+        while (countThreads(SHARED_THREAD_PREFIX) > 0) {
+
+            assertThat("shared threads stopped in time", System.currentTimeMillis() < deadline, is(true));
+            Thread.sleep(POLL_INTERVAL);
+        }
+    }
+
+    // -------------------------------------------------------------------------------------------------------
+
+    private static int countThreads(final String name_prefix) {
+
+        int count = 0;
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && thread.getName().startsWith(name_prefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}